@@ -0,0 +1,154 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Tests that the rollup tables return to their previous state after a Session has been written
+ * and removed again, even if its stream contained duplicate timestamps.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class RollupTablesTest {
+
+    private static final long START = 1_544_191_952_000L;
+
+
+    private SQLiteDatabase mDatabase;
+
+
+    @Before
+    public void createDatabase() {
+        mDatabase = SQLiteDatabase.create(null);
+        SessionDatabase.createSchema(mDatabase);
+
+        // Another Session sharing some of the minutes
+        Session other = new Session(1, SessionType.RUN, "Other");
+        for (int i = 0; i < 600; i++) {
+            other.getMeasurements().add(START + i * 1000L, 60, 53.55, 9.99, 90 + i % 40);
+        }
+        write(other, StorageFormat.ROWS);
+    }
+
+    @After
+    public void closeDatabase() {
+        mDatabase.close();
+    }
+
+
+    @Test
+    public void removesRowsWithDuplicates() {
+        writeAndRemoveDuplicates(StorageFormat.ROWS);
+    }
+
+    @Test
+    public void removesChunksWithDuplicates() {
+        writeAndRemoveDuplicates(StorageFormat.PACKED);
+    }
+
+    @Test
+    public void removesReimportedSession() {
+        List<String> before = snapshot();
+
+        write(createDuplicates(), StorageFormat.ROWS);
+        write(createDuplicates(), StorageFormat.ROWS);
+        remove(2);
+
+        assertEquals(before, snapshot());
+    }
+
+
+    private void writeAndRemoveDuplicates(StorageFormat format) {
+        List<String> before = snapshot();
+
+        write(createDuplicates(), format);
+        assertNotEquals(before, snapshot());
+
+        // Only the last measurement of every timestamp is kept
+        MeasurementSeries stored = new MeasurementSeries();
+        MeasurementStore.read(mDatabase, 2, Long.MIN_VALUE, Long.MAX_VALUE, -1, stored);
+        assertEquals(900, stored.size());
+
+        remove(2);
+        assertEquals(before, snapshot());
+    }
+
+    /*
+     * 900 distinct timestamps, the first 300 of them streamed twice with different heartrates
+     */
+    private static Session createDuplicates() {
+        Session session = new Session(2, SessionType.WALK, "Duplicates");
+        MeasurementSeries series = session.getMeasurements();
+        for (int i = 0; i < 900; i++) {
+            series.add(START + 300_000L + i * 1000L, 60, 53.56, 9.98, 60 + i % 100);
+        }
+        for (int i = 0; i < 300; i++) {
+            series.add(START + 300_000L + i * 1000L, 60, 53.56, 9.98, 170 - i % 50);
+        }
+        return session;
+    }
+
+    private void write(Session session, StorageFormat format) {
+        mDatabase.beginTransaction();
+        try (SessionWriter writer = new SessionWriter(mDatabase, format)) {
+            writer.write(session);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private void remove(int sessionId) {
+        mDatabase.beginTransaction();
+        try {
+            RollupTables.removeSession(mDatabase, sessionId);
+            MeasurementStore.delete(mDatabase, sessionId);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private List<String> snapshot() {
+        List<String> rows = new ArrayList<>();
+        for (Rollup.Resolution resolution : Rollup.Resolution.values()) {
+            try (Cursor cursor = mDatabase.rawQuery("SELECT * FROM " + resolution.table
+                    + " ORDER BY 1;", null)) {
+
+                while (cursor.moveToNext()) {
+                    StringBuilder row = new StringBuilder(resolution.name());
+                    for (int c = 0; c < cursor.getColumnCount(); c++) {
+                        row.append(' ').append(cursor.getString(c));
+                    }
+                    rows.add(row.toString());
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.HEARTRATE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.LATITUDE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.LONGITUDE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS_SESSION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TIMESTAMP;
+import static de.haukesomm.healthdemo.data.SessionDatabase.UTC_OFFSET;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class compares the {@link StorageFormat}s by the disk space a series of measurements takes
+ * up and by how fast it is read back into a {@link MeasurementSeries}. For the chunked formats it
+ * also measures how fast it is written, to keep the overhead of {@link StorageFormat#ENCRYPTED}
+ * over {@link StorageFormat#PACKED} visible.<br>
+ * All formats are written into separate in-memory databases, so the results contain the actual
+ * B-tree overhead of each format but are not distorted by other tables or the file system. The
+ * encrypted chunks use a fresh key outside of the key store, like the data key of the database
+ * once it has been decrypted.
+ * </p>
+ */
+public class StorageBenchmark {
+
+    private static final int SESSION_ID = 1;
+
+
+    /**
+     * Number of measurements
+     */
+    public final int measurements;
+
+    /**
+     * Size of the measurements in row format in bytes
+     */
+    public final long rowBytes;
+
+    /**
+     * Size of the measurements in packed format in bytes
+     */
+    public final long packedBytes;
+
+    /**
+     * Size of the measurements in encrypted format in bytes
+     */
+    public final long encryptedBytes;
+
+    /**
+     * Average time reading all measurements in row format took in nanoseconds
+     */
+    public final long rowReadNanos;
+
+    /**
+     * Average time reading and decoding all measurements in packed format took in nanoseconds
+     */
+    public final long packedReadNanos;
+
+    /**
+     * Average time reading, decrypting and decoding all measurements in encrypted format took in
+     * nanoseconds
+     */
+    public final long encryptedReadNanos;
+
+    /**
+     * Average time encoding and writing all measurements in packed format took in nanoseconds
+     */
+    public final long packedWriteNanos;
+
+    /**
+     * Average time encoding, encrypting and writing all measurements in encrypted format took in
+     * nanoseconds
+     */
+    public final long encryptedWriteNanos;
+
+
+    private StorageBenchmark(int measurements, long rowBytes, long packedBytes,
+                             long encryptedBytes, long rowReadNanos, long packedReadNanos,
+                             long encryptedReadNanos, long packedWriteNanos,
+                             long encryptedWriteNanos) {
+        this.measurements = measurements;
+        this.rowBytes = rowBytes;
+        this.packedBytes = packedBytes;
+        this.encryptedBytes = encryptedBytes;
+        this.rowReadNanos = rowReadNanos;
+        this.packedReadNanos = packedReadNanos;
+        this.encryptedReadNanos = encryptedReadNanos;
+        this.packedWriteNanos = packedWriteNanos;
+        this.encryptedWriteNanos = encryptedWriteNanos;
+    }
+
+
+    /**
+     * Runs the benchmark for the given measurements. This takes a while, so do not call it on the
+     * UI thread.
+     *
+     * @param series        Measurements to store
+     * @param iterations    Number of times the measurements are written and read in each format
+     * @return              Results
+     */
+    public static StorageBenchmark run(MeasurementSeries series, int iterations) {
+        ChunkCipher cipher = new ChunkCipher(createKey());
+
+        SQLiteDatabase rows = SQLiteDatabase.create(null);
+        SQLiteDatabase packed = SQLiteDatabase.create(null);
+        SQLiteDatabase encrypted = SQLiteDatabase.create(null);
+
+        try {
+            SessionDatabase.createMeasurementTable(rows, TABLE_MEASUREMENTS);
+            MeasurementStore.create(packed);
+            MeasurementStore.create(encrypted);
+
+            long rowBaseline = getSize(rows);
+            long packedBaseline = getSize(packed);
+            long encryptedBaseline = getSize(encrypted);
+
+            writeRows(rows, series);
+
+            long packedWriteNanos = 0L;
+            long encryptedWriteNanos = 0L;
+            long rowNanos = 0L;
+            long packedNanos = 0L;
+            long encryptedNanos = 0L;
+            for (int i = 0; i < iterations; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                writeChunks(packed, series, null);
+                packedWriteNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+                start = SystemClock.elapsedRealtimeNanos();
+                writeChunks(encrypted, series, cipher);
+                encryptedWriteNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+                MeasurementSeries out = new MeasurementSeries();
+                start = SystemClock.elapsedRealtimeNanos();
+                MeasurementStore.readRows(rows, SESSION_ID, Long.MIN_VALUE, Long.MAX_VALUE, -1,
+                        out);
+                rowNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+                out = new MeasurementSeries();
+                start = SystemClock.elapsedRealtimeNanos();
+                MeasurementStore.readChunks(packed, SESSION_ID, Long.MIN_VALUE, Long.MAX_VALUE,
+                        Integer.MAX_VALUE, out, null);
+                packedNanos += SystemClock.elapsedRealtimeNanos() - start;
+
+                out = new MeasurementSeries();
+                start = SystemClock.elapsedRealtimeNanos();
+                MeasurementStore.readChunks(encrypted, SESSION_ID, Long.MIN_VALUE,
+                        Long.MAX_VALUE, Integer.MAX_VALUE, out, cipher);
+                encryptedNanos += SystemClock.elapsedRealtimeNanos() - start;
+            }
+
+            if (iterations <= 0) {
+                writeChunks(packed, series, null);
+                writeChunks(encrypted, series, cipher);
+            }
+
+            long rowBytes = getSize(rows) - rowBaseline;
+            long packedBytes = getSize(packed) - packedBaseline;
+            long encryptedBytes = getSize(encrypted) - encryptedBaseline;
+
+            int runs = Math.max(iterations, 1);
+            return new StorageBenchmark(series.size(), rowBytes, packedBytes, encryptedBytes,
+                    rowNanos / runs, packedNanos / runs, encryptedNanos / runs,
+                    packedWriteNanos / runs, encryptedWriteNanos / runs);
+        } finally {
+            rows.close();
+            packed.close();
+            encrypted.close();
+        }
+    }
+
+    private static SecretKey createKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            return generator.generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("AES is not available", e);
+        }
+    }
+
+    private static void writeRows(SQLiteDatabase db, MeasurementSeries series) {
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO "
+                + TABLE_MEASUREMENTS + " (" + TABLE_MEASUREMENTS_SESSION + ", " + TIMESTAMP + ", "
+                + UTC_OFFSET + ", " + LATITUDE + ", " + LONGITUDE + ", " + HEARTRATE
+                + ") VALUES (?, ?, ?, ?, ?, ?);")) {
+
+            for (int i = 0; i < series.size(); i++) {
+                insert.bindLong(1, SESSION_ID);
+                insert.bindLong(2, series.getTimestamp(i));
+                insert.bindLong(3, series.getUtcOffset(i));
+                insert.bindDouble(4, series.getLatitude(i));
+                insert.bindDouble(5, series.getLongitude(i));
+                insert.bindLong(6, series.getHeartrate(i));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /*
+     * Replaces the chunks of the previous iteration, so every iteration writes the same amount
+     */
+    private static void writeChunks(SQLiteDatabase db, MeasurementSeries series,
+                                    ChunkCipher cipher) {
+        db.beginTransaction();
+        try (SQLiteStatement insert = MeasurementStore.compileInsertChunk(db)) {
+            MeasurementStore.writeChunks(insert, SESSION_ID, 0, series, 0, series.size(), cipher);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static long getSize(SQLiteDatabase db) {
+        try (Cursor count = db.rawQuery("PRAGMA page_count;", null);
+             Cursor size = db.rawQuery("PRAGMA page_size;", null)) {
+
+            count.moveToFirst();
+            size.moveToFirst();
+            return count.getLong(0) * size.getLong(0);
+        }
+    }
+
+
+    /**
+     * Returns the number of measurements read per second in row format.
+     *
+     * @return  Measurements per second
+     */
+    public double getRowThroughput() {
+        return rowReadNanos > 0 ? measurements * 1e9 / rowReadNanos : 0d;
+    }
+
+    /**
+     * Returns the number of measurements read and decoded per second in packed format.
+     *
+     * @return  Measurements per second
+     */
+    public double getPackedThroughput() {
+        return getThroughput(packedReadNanos);
+    }
+
+    /**
+     * Returns the number of measurements read, decrypted and decoded per second in encrypted
+     * format.
+     *
+     * @return  Measurements per second
+     */
+    public double getEncryptedThroughput() {
+        return getThroughput(encryptedReadNanos);
+    }
+
+    /**
+     * Returns the number of measurements encoded and written per second in packed format.
+     *
+     * @return  Measurements per second
+     */
+    public double getPackedWriteThroughput() {
+        return getThroughput(packedWriteNanos);
+    }
+
+    /**
+     * Returns the number of measurements encoded, encrypted and written per second in encrypted
+     * format.
+     *
+     * @return  Measurements per second
+     */
+    public double getEncryptedWriteThroughput() {
+        return getThroughput(encryptedWriteNanos);
+    }
+
+    private double getThroughput(long nanos) {
+        return nanos > 0 ? measurements * 1e9 / nanos : 0d;
+    }
+
+
+    // No JavaDoc
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d measurements: rows %d bytes (%.0f/s), "
+                        + "packed %d bytes (%.0f/s, written %.0f/s), %.1fx smaller, "
+                        + "encrypted %d bytes (%.0f/s, written %.0f/s)",
+                measurements, rowBytes, getRowThroughput(), packedBytes, getPackedThroughput(),
+                getPackedWriteThroughput(),
+                packedBytes > 0 ? (double) rowBytes / packedBytes : 0d,
+                encryptedBytes, getEncryptedThroughput(), getEncryptedWriteThroughput());
+    }
+}
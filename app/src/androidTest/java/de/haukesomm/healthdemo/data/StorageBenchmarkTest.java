@@ -0,0 +1,58 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Runs the {@link StorageBenchmark} on the device with a synthetic recording of a few hours and
+ * logs the results.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class StorageBenchmarkTest {
+
+    private static final int MEASUREMENTS = 20_000;
+
+    private static final int ITERATIONS = 5;
+
+
+    @Test
+    public void comparesStorageFormats() {
+        MeasurementSeries series = new MeasurementSeries(MEASUREMENTS);
+        Random random = new Random(42);
+        double latitude = 53.55;
+        double longitude = 9.99;
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            latitude += random.nextGaussian() * 2e-5;
+            longitude += random.nextGaussian() * 2e-5;
+            series.add(1_544_191_952_000L + i * 1000L, 60, latitude, longitude,
+                    80 + random.nextInt(100));
+        }
+
+        StorageBenchmark benchmark = StorageBenchmark.run(series, ITERATIONS);
+        Log.i("StorageBenchmarkTest", benchmark.toString());
+
+        assertTrue(benchmark.packedBytes < benchmark.rowBytes);
+        assertTrue(benchmark.encryptedBytes < benchmark.rowBytes);
+    }
+}
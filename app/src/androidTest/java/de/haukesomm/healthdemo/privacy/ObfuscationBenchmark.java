@@ -0,0 +1,143 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import android.os.SystemClock;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class measures the throughput of each strategy of an {@link ObfuscationEngine} on a
+ * synthetic route. The route is generated again before every iteration, so each run starts from
+ * the same input; only the strategies themselves are timed.
+ * </p>
+ */
+public class ObfuscationBenchmark {
+
+    /*
+     * Start of the synthetic route
+     */
+    private static final double START_LATITUDE = 53.55;
+
+    private static final double START_LONGITUDE = 9.99;
+
+    private static final long START_TIME = 1500000000000L;
+
+
+    /**
+     * Number of measurements of the route
+     */
+    public final int points;
+
+
+    private final List<ObfuscationStrategy> mStrategies;
+
+    private final long[] mNanos;
+
+
+    private ObfuscationBenchmark(int points, List<ObfuscationStrategy> strategies, long[] nanos) {
+        this.points = points;
+        mStrategies = strategies;
+        mNanos = nanos;
+    }
+
+
+    /**
+     * Runs the benchmark. This takes a while and allocates 24 bytes per point, so do not call it
+     * on the UI thread.
+     *
+     * @param engine        Engine whose strategies are measured
+     * @param points        Number of measurements of the route, e.g. a few million
+     * @param iterations    Number of times the route is obfuscated
+     * @return              Results
+     */
+    public static ObfuscationBenchmark run(ObfuscationEngine engine, int points, int iterations) {
+        List<ObfuscationStrategy> strategies = engine.getStrategies();
+        long[] nanos = new long[strategies.size()];
+
+        long[] timestamps = new long[points];
+        double[] latitudes = new double[points];
+        double[] longitudes = new double[points];
+
+        for (int i = 0; i < iterations; i++) {
+            generate(timestamps, latitudes, longitudes);
+
+            int count = points;
+            for (int s = 0; s < strategies.size(); s++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                count = strategies.get(s).apply(timestamps, latitudes, longitudes, count, i);
+                nanos[s] += SystemClock.elapsedRealtimeNanos() - start;
+            }
+        }
+
+        int runs = Math.max(iterations, 1);
+        for (int s = 0; s < nanos.length; s++) {
+            nanos[s] /= runs;
+        }
+
+        return new ObfuscationBenchmark(points, strategies, nanos);
+    }
+
+    /*
+     * A random walk with one measurement per second and up to about 10 meters between them
+     */
+    private static void generate(long[] timestamps, double[] latitudes, double[] longitudes) {
+        Random random = new Random(timestamps.length);
+        double latitude = START_LATITUDE;
+        double longitude = START_LONGITUDE;
+
+        for (int i = 0; i < timestamps.length; i++) {
+            latitude += (random.nextDouble() - 0.5) * 1e-4;
+            longitude += (random.nextDouble() - 0.5) * 1e-4;
+            timestamps[i] = START_TIME + i * 1000L;
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+        }
+    }
+
+
+    /**
+     * Returns the average time a strategy took for the whole route.
+     *
+     * @param strategy  Index of the strategy in the engine
+     * @return          Nanoseconds
+     */
+    public long getNanos(int strategy) {
+        return mNanos[strategy];
+    }
+
+    /**
+     * Returns the number of measurements obfuscated per second by a strategy.
+     *
+     * @param strategy  Index of the strategy in the engine
+     * @return          Measurements per second
+     */
+    public double getThroughput(int strategy) {
+        return mNanos[strategy] > 0 ? points * 1e9 / mNanos[strategy] : 0d;
+    }
+
+
+    // No JavaDoc
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder().append(points).append(" points:");
+        for (int s = 0; s < mNanos.length; s++) {
+            result.append(String.format(Locale.US, " %s %.0f/s",
+                    mStrategies.get(s).getClass().getSimpleName(), getThroughput(s)));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Runs the {@link ObfuscationBenchmark} on the device with the strategies of the default engine
+ * and logs the results.
+ * </p>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ObfuscationBenchmarkTest {
+
+    private static final int POINTS = 2_000_000;
+
+    private static final int ITERATIONS = 5;
+
+
+    @Test
+    public void measuresDefaultStrategies() {
+        ObfuscationEngine engine = ObfuscationEngine.createDefault();
+
+        ObfuscationBenchmark benchmark = ObfuscationBenchmark.run(engine, POINTS, ITERATIONS);
+        Log.i("ObfuscationBenchmarkTest", benchmark.toString());
+
+        for (int s = 0; s < engine.getStrategies().size(); s++) {
+            assertTrue(benchmark.getThroughput(s) > 0);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This is a data class describing a part of a Session passing through an area. Its time range
+ * covers all measurements of the matching segments, so it can be passed to
+ * {@link SessionDatabase#getMeasurements(int, long, long, int)} to load them.
+ * </p>
+ */
+public class AreaMatch {
+
+    /**
+     * ID of the Session
+     */
+    public final int sessionId;
+
+    /**
+     * Timestamp of the first measurement of the range (inclusive)
+     */
+    public final long fromTimestamp;
+
+    /**
+     * Timestamp of the last measurement of the range (inclusive)
+     */
+    public final long toTimestamp;
+
+
+    /**
+     * Creates a new AreaMatch from the given attributes.
+     *
+     * @param sessionId     ID of the Session
+     * @param fromTimestamp Timestamp of the first measurement
+     * @param toTimestamp   Timestamp of the last measurement
+     */
+    AreaMatch(int sessionId, long fromTimestamp, long toTimestamp) {
+        this.sessionId = sessionId;
+        this.fromTimestamp = fromTimestamp;
+        this.toTimestamp = toTimestamp;
+    }
+
+
+    // No JavaDoc
+    @Override
+    public String toString() {
+        return "Session " + sessionId + ": " + fromTimestamp + " - " + toTimestamp;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class encrypts and decrypts the chunks of Sessions stored as
+ * {@link StorageFormat#ENCRYPTED} using AES-GCM. Every chunk gets its own random IV, which is
+ * stored in front of the ciphertext, and is authenticated together with its Session ID and
+ * sequence number, so chunks can not be swapped between or within Sessions unnoticed.<br>
+ * The chunks are encrypted with a data key which itself is stored in the <code>chunk_keys</code>
+ * table, encrypted by a key of the Android key store that never leaves it. The data key is
+ * decrypted once per process, so the chunks do not need a call into the key store each.
+ * </p>
+ */
+final class ChunkCipher {
+
+    static final String TABLE = "chunk_keys";
+
+    static final String ID = "id";
+
+    static final String DATA = "data";
+
+
+    private static final String KEY_STORE = "AndroidKeyStore";
+
+    private static final String KEY_ALIAS = "session_database_chunk_key";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int KEY_ID = 1;
+
+    private static final int KEY_SIZE = 256;
+
+    private static final int IV_SIZE = 12;
+
+    private static final int TAG_SIZE = 128;
+
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final Object sLock = new Object();
+
+    private static SecretKey sDataKey;
+
+
+    private final SecretKey mKey;
+
+    private final Cipher mCipher;
+
+    private final byte[] mIv = new byte[IV_SIZE];
+
+    private final ByteBuffer mAad = ByteBuffer.allocate(8);
+
+
+    /**
+     * Creates a new ChunkCipher. Instances are not thread-safe.
+     *
+     * @param key   Data key
+     */
+    ChunkCipher(SecretKey key) {
+        mKey = key;
+        try {
+            mCipher = Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES-GCM is not available", e);
+        }
+    }
+
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                + ID    + " INTEGER NOT NULL PRIMARY KEY, "
+                + DATA  + " BLOB NOT NULL);");
+    }
+
+    /**
+     * Returns a ChunkCipher using the data key of the database. The key is created on the first
+     * call if the database does not have one yet.
+     *
+     * @param db    Database
+     * @return      ChunkCipher
+     * @throws IllegalStateException    If the key can not be created or decrypted, e.g. because
+     *                                  the database has been restored on another device
+     */
+    static ChunkCipher open(SQLiteDatabase db) throws IllegalStateException {
+        synchronized (sLock) {
+            if (sDataKey == null) {
+                try {
+                    sDataKey = loadDataKey(db, getKeyStoreKey());
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Unable to access the chunk key", e);
+                }
+            }
+            return new ChunkCipher(sDataKey);
+        }
+    }
+
+    private static SecretKey getKeyStoreKey() throws GeneralSecurityException {
+        KeyStore store = KeyStore.getInstance(KEY_STORE);
+        try {
+            store.load(null);
+        } catch (IOException e) {
+            throw new GeneralSecurityException(e);
+        }
+
+        if (store.containsAlias(KEY_ALIAS)) {
+            return (SecretKey) store.getKey(KEY_ALIAS, null);
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES,
+                KEY_STORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(KEY_SIZE)
+                .build());
+        return generator.generateKey();
+    }
+
+    /*
+     * The key store chooses the IV of its keys itself, so it is stored in front of the key
+     */
+    private static SecretKey loadDataKey(SQLiteDatabase db, SecretKey wrappingKey)
+            throws GeneralSecurityException {
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+
+        try (Cursor cursor = db.query(TABLE, new String[] { DATA }, ID + " = " + KEY_ID,
+                null, null, null, null)) {
+
+            if (cursor.moveToFirst()) {
+                byte[] wrapped = cursor.getBlob(0);
+                cipher.init(Cipher.DECRYPT_MODE, wrappingKey,
+                        new GCMParameterSpec(TAG_SIZE, wrapped, 0, IV_SIZE));
+                byte[] key = cipher.doFinal(wrapped, IV_SIZE, wrapped.length - IV_SIZE);
+                return new SecretKeySpec(key, "AES");
+            }
+        }
+
+        byte[] key = new byte[KEY_SIZE / 8];
+        RANDOM.nextBytes(key);
+
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey);
+        byte[] iv = cipher.getIV();
+        byte[] encrypted = cipher.doFinal(key);
+
+        byte[] wrapped = Arrays.copyOf(iv, iv.length + encrypted.length);
+        System.arraycopy(encrypted, 0, wrapped, iv.length, encrypted.length);
+        db.execSQL("INSERT INTO " + TABLE + " VALUES (?, ?);", new Object[] { KEY_ID, wrapped });
+
+        return new SecretKeySpec(key, "AES");
+    }
+
+
+    /**
+     * Encrypts a chunk.
+     *
+     * @param data      Encoded chunk
+     * @param sessionId ID of the Session
+     * @param sequence  Sequence number of the chunk
+     * @return          IV followed by the ciphertext and the authentication tag
+     */
+    byte[] encrypt(byte[] data, int sessionId, int sequence) {
+        RANDOM.nextBytes(mIv);
+
+        try {
+            mCipher.init(Cipher.ENCRYPT_MODE, mKey, new GCMParameterSpec(TAG_SIZE, mIv));
+            mCipher.updateAAD(getAad(sessionId, sequence));
+
+            byte[] out = new byte[IV_SIZE + mCipher.getOutputSize(data.length)];
+            System.arraycopy(mIv, 0, out, 0, IV_SIZE);
+            int length = mCipher.doFinal(data, 0, data.length, out, IV_SIZE);
+
+            return length + IV_SIZE == out.length ? out : Arrays.copyOf(out, IV_SIZE + length);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to encrypt chunk " + sequence
+                    + " of Session " + sessionId, e);
+        }
+    }
+
+    /**
+     * Decrypts a chunk and verifies that it has not been modified.
+     *
+     * @param data      IV followed by the ciphertext and the authentication tag
+     * @param sessionId ID of the Session
+     * @param sequence  Sequence number of the chunk
+     * @return          Encoded chunk
+     * @throws IllegalStateException    If the chunk has been modified or belongs somewhere else
+     */
+    byte[] decrypt(byte[] data, int sessionId, int sequence) throws IllegalStateException {
+        try {
+            mCipher.init(Cipher.DECRYPT_MODE, mKey,
+                    new GCMParameterSpec(TAG_SIZE, data, 0, IV_SIZE));
+            mCipher.updateAAD(getAad(sessionId, sequence));
+            return mCipher.doFinal(data, IV_SIZE, data.length - IV_SIZE);
+        } catch (AEADBadTagException e) {
+            throw new IllegalStateException("Chunk " + sequence + " of Session " + sessionId
+                    + " failed authentication", e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to decrypt chunk " + sequence
+                    + " of Session " + sessionId, e);
+        }
+    }
+
+    private byte[] getAad(int sessionId, int sequence) {
+        mAad.clear();
+        return mAad.putInt(sessionId).putInt(sequence).array();
+    }
+}
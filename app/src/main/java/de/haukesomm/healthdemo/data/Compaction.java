@@ -0,0 +1,436 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS_SESSION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_STORAGE;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class implements the compacted storage tier of the {@link SessionDatabase}. A compacted
+ * Session keeps the minimum, maximum and average heartrate of every minute in the
+ * <code>compact_buckets</code> table. Its stored measurements are reduced to the route simplified
+ * with the Douglas-Peucker algorithm plus the first measurement of every minute, carrying the
+ * average heartrate of their minute. They are written as {@link StorageFormat#PACKED} chunks,
+ * so compacted Sessions are read by the same code as all others.<br>
+ * Their summary, including the number of measurements, and their share of the rollup tables keep
+ * describing the recorded measurements. The number of stored ones is kept in the audit.<br>
+ * Sessions stored as {@link StorageFormat#ENCRYPTED} are never compacted, their chunks are compact
+ * already and the buckets would keep their heartrates in plain text.<br>
+ * Every compaction is recorded in the <code>compaction_audit</code> table together with the
+ * estimated number of bytes stored before and after.
+ * </p>
+ */
+final class Compaction {
+
+    static final String TABLE_BUCKETS = "compact_buckets";
+
+    static final String TABLE_AUDIT = "compaction_audit";
+
+    static final String SESSION = "session_id";
+
+    static final String BUCKET = "bucket";
+
+    static final String COUNT = "count";
+
+    static final String HEARTRATE_SUM = "heartrate_sum";
+
+    static final String HEARTRATE_MIN = "heartrate_min";
+
+    static final String HEARTRATE_MAX = "heartrate_max";
+
+    static final String COMPACTED = "compacted_at";
+
+    static final String POINTS_BEFORE = "points_before";
+
+    static final String POINTS_AFTER = "points_after";
+
+    static final String BYTES_BEFORE = "bytes_before";
+
+    static final String BYTES_AFTER = "bytes_after";
+
+
+    /**
+     * Size of the heartrate buckets. Bucket starts are local times, just like in the rollups.
+     */
+    static final Rollup.Resolution RESOLUTION = Rollup.Resolution.MINUTE;
+
+    /**
+     * Maximum distance of the simplified route from the recorded one in meters
+     */
+    static final double ROUTE_TOLERANCE = 10.0;
+
+
+    private static final double METERS_PER_DEGREE = 111_320.0;
+
+
+    /*
+     * Average space taken by a single row of each table including the B-tree overhead, measured
+     * with realistic data. Used to estimate the bytes stored per Session.
+     */
+    private static final long ROW_BYTES = 40;
+
+    private static final long CHUNK_KEY_BYTES = 32;
+
+    private static final long BUCKET_BYTES = 28;
+
+
+    /**
+     * This class represents a single row of the audit table.
+     */
+    static final class Audit {
+
+        final int pointsBefore;
+
+        final int pointsAfter;
+
+        final long bytesBefore;
+
+        final long bytesAfter;
+
+
+        Audit(int pointsBefore, int pointsAfter, long bytesBefore, long bytesAfter) {
+            this.pointsBefore = pointsBefore;
+            this.pointsAfter = pointsAfter;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+        }
+    }
+
+
+    private Compaction() {
+        // Static helper class
+    }
+
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_BUCKETS + " ("
+                + SESSION       + " INTEGER NOT NULL, "
+                + BUCKET        + " INTEGER NOT NULL, "
+                + COUNT         + " INTEGER NOT NULL, "
+                + HEARTRATE_SUM + " INTEGER NOT NULL, "
+                + HEARTRATE_MIN + " INTEGER NOT NULL, "
+                + HEARTRATE_MAX + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + SESSION + ", " + BUCKET + ")"
+                + ") WITHOUT ROWID;");
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_AUDIT + " ("
+                + SESSION       + " INTEGER NOT NULL PRIMARY KEY, "
+                + COMPACTED     + " INTEGER NOT NULL, "
+                + POINTS_BEFORE + " INTEGER NOT NULL, "
+                + POINTS_AFTER  + " INTEGER NOT NULL, "
+                + BYTES_BEFORE  + " INTEGER NOT NULL, "
+                + BYTES_AFTER   + " INTEGER NOT NULL);");
+    }
+
+    static void delete(SQLiteDatabase db, int sessionId) {
+        db.delete(TABLE_BUCKETS, SESSION + " = " + sessionId, null);
+        db.delete(TABLE_AUDIT, SESSION + " = " + sessionId, null);
+    }
+
+
+    /**
+     * Returns whether a Session has been compacted.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @return          true if the Session has been compacted
+     */
+    static boolean isCompacted(SQLiteDatabase db, int sessionId) {
+        try (Cursor cursor = db.rawQuery("SELECT 1 FROM " + TABLE_AUDIT + " WHERE " + SESSION
+                + " = " + sessionId + ";", null)) {
+
+            return cursor.moveToFirst();
+        }
+    }
+
+    /**
+     * Returns the IDs of all Sessions which ended before the given time, have not been compacted
+     * yet and are not stored as {@link StorageFormat#ENCRYPTED}.
+     *
+     * @param db        Database
+     * @param before    Time the Sessions have to end before (milliseconds since the epoch)
+     * @return          Session IDs, oldest first
+     */
+    static List<Integer> listCandidates(SQLiteDatabase db, long before) {
+        List<Integer> ids = new ArrayList<>();
+
+        try (Cursor cursor = db.rawQuery("SELECT " + SummaryTable.SESSION + " FROM "
+                + SummaryTable.TABLE + " WHERE " + SummaryTable.END + " < ? AND "
+                + SummaryTable.SESSION + " NOT IN (SELECT " + SESSION + " FROM " + TABLE_AUDIT
+                + ") AND " + SummaryTable.SESSION + " NOT IN (SELECT " + TABLE_SESSIONS_ID
+                + " FROM " + TABLE_SESSIONS + " WHERE " + TABLE_SESSIONS_STORAGE + " = "
+                + StorageFormat.ENCRYPTED.code + ") ORDER BY " + SummaryTable.START + ";",
+                new String[] { String.valueOf(before) })) {
+
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Compacts a Session and records it in the audit table. The whole Session is held in memory
+     * while it is being compacted. Call this within a transaction.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param now       Current time (milliseconds since the epoch)
+     * @return          Audit of the compaction, null if the Session does not exist or is
+     *                  encrypted
+     */
+    static Audit compact(SQLiteDatabase db, int sessionId, long now) {
+        SessionSummary summary;
+        try (Cursor cursor = db.rawQuery(SummaryTable.SELECT_JOINED + " WHERE s."
+                + TABLE_SESSIONS_ID + " = " + sessionId + ";", null)) {
+
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            summary = SummaryTable.read(cursor);
+        }
+
+        StorageFormat format = MeasurementStore.getFormat(db, sessionId);
+        if (format == StorageFormat.ENCRYPTED) {
+            return null;
+        }
+        long bytesBefore = getStoredBytes(db, sessionId, format);
+
+        MeasurementSeries series = new MeasurementSeries(summary.pointCount);
+        MeasurementStore.read(db, sessionId, Long.MIN_VALUE, Long.MAX_VALUE, -1, series);
+        int size = series.size();
+
+        // count, heartrate sum, minimum and maximum heartrate per bucket
+        Map<Long, long[]> buckets = new TreeMap<>();
+        long[] bucketOf = new long[size];
+        boolean[] keep = simplify(series);
+        for (int i = 0; i < size; i++) {
+            bucketOf[i] = RESOLUTION.bucketOf(series.getTimestamp(i)
+                    + series.getUtcOffset(i) * 60_000L);
+            int heartrate = series.getHeartrate(i);
+
+            long[] bucket = buckets.get(bucketOf[i]);
+            if (bucket == null) {
+                buckets.put(bucketOf[i], new long[] { 1, heartrate, heartrate, heartrate });
+                keep[i] = true;
+            } else {
+                bucket[0]++;
+                bucket[1] += heartrate;
+                bucket[2] = Math.min(bucket[2], heartrate);
+                bucket[3] = Math.max(bucket[3], heartrate);
+            }
+        }
+
+        Session compacted = new Session(summary.id, summary.type, summary.description);
+        MeasurementSeries kept = compacted.getMeasurements();
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) {
+                long[] bucket = buckets.get(bucketOf[i]);
+                kept.add(series.getTimestamp(i), series.getUtcOffset(i), series.getLatitude(i),
+                        series.getLongitude(i), (int) Math.round((double) bucket[1] / bucket[0]));
+            }
+        }
+
+        StorageFormat target = StorageFormat.PACKED;
+        String places = SearchIndex.getPlaces(db, sessionId);
+        // The rollups keep the recorded measurements, just like the buckets
+        try (SessionWriter writer = new SessionWriter(db, target, false)) {
+            writer.write(compacted);
+        }
+        if (places != null) {
+            SearchIndex.setPlaces(db, sessionId, places);
+        }
+
+        // The summary of the recorded measurements replaces the one just written
+        try (SQLiteStatement insert = SummaryTable.compileInsert(db)) {
+            SummaryTable.write(insert, new SessionSummary(summary.id, summary.type,
+                    summary.description, summary.startTime, summary.endTime, size,
+                    summary.minHeartrate, summary.maxHeartrate, summary.avgHeartrate,
+                    summary.distance, summary.minLatitude, summary.maxLatitude,
+                    summary.minLongitude, summary.maxLongitude), target);
+        }
+
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO "
+                + TABLE_BUCKETS + " VALUES (?, ?, ?, ?, ?, ?);")) {
+
+            insert.bindLong(1, sessionId);
+            for (Map.Entry<Long, long[]> entry : buckets.entrySet()) {
+                long[] bucket = entry.getValue();
+                insert.bindLong(2, entry.getKey());
+                insert.bindLong(3, bucket[0]);
+                insert.bindLong(4, bucket[1]);
+                insert.bindLong(5, bucket[2]);
+                insert.bindLong(6, bucket[3]);
+                insert.executeInsert();
+            }
+        }
+
+        Audit audit = new Audit(size, kept.size(), bytesBefore,
+                getStoredBytes(db, sessionId, target) + buckets.size() * BUCKET_BYTES);
+
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO "
+                + TABLE_AUDIT + " VALUES (?, ?, ?, ?, ?, ?);")) {
+
+            insert.bindLong(1, sessionId);
+            insert.bindLong(2, now);
+            insert.bindLong(3, audit.pointsBefore);
+            insert.bindLong(4, audit.pointsAfter);
+            insert.bindLong(5, audit.bytesBefore);
+            insert.bindLong(6, audit.bytesAfter);
+            insert.executeInsert();
+        }
+
+        return audit;
+    }
+
+
+    /**
+     * Returns the heartrate buckets of a compacted Session.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @return          Buckets in chronological order, empty if the Session is not compacted
+     */
+    static Rollup getBuckets(SQLiteDatabase db, int sessionId) {
+        try (Cursor cursor = db.query(TABLE_BUCKETS, new String[] {
+                BUCKET, COUNT, HEARTRATE_SUM, HEARTRATE_MIN, HEARTRATE_MAX },
+                SESSION + " = " + sessionId, null, null, null, BUCKET)) {
+
+            Rollup rollup = new Rollup(RESOLUTION, cursor.getCount());
+            while (cursor.moveToNext()) {
+                rollup.add(cursor.getLong(0), cursor.getInt(1), cursor.getLong(2),
+                        cursor.getInt(3), cursor.getInt(4));
+            }
+            return rollup;
+        }
+    }
+
+    /**
+     * Returns the total number of bytes saved by all compactions according to the audit table.
+     *
+     * @param db    Database
+     * @return      Saved bytes
+     */
+    static long getSavedBytes(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("SELECT TOTAL(" + BYTES_BEFORE + " - " + BYTES_AFTER
+                + ") FROM " + TABLE_AUDIT + ";", null)) {
+
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        }
+    }
+
+
+    private static long getStoredBytes(SQLiteDatabase db, int sessionId, StorageFormat format) {
+        String sql = format.chunked
+                ? "SELECT COUNT(*), TOTAL(length(" + MeasurementStore.CHUNK_DATA + ")) FROM "
+                        + MeasurementStore.TABLE_CHUNKS + " WHERE "
+                        + MeasurementStore.CHUNK_SESSION + " = " + sessionId + ";"
+                : "SELECT COUNT(*), 0 FROM " + TABLE_MEASUREMENTS + " WHERE "
+                        + TABLE_MEASUREMENTS_SESSION + " = " + sessionId + ";";
+
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            if (!cursor.moveToFirst()) {
+                return 0L;
+            }
+            return cursor.getLong(0) * (format.chunked ? CHUNK_KEY_BYTES : ROW_BYTES)
+                    + cursor.getLong(1);
+        }
+    }
+
+
+    /*
+     * Douglas-Peucker on an equirectangular projection around the first point, which is precise
+     * enough for the extent of a single Session. Uses an explicit stack, Sessions may contain
+     * hundreds of thousands of measurements.
+     */
+    private static boolean[] simplify(MeasurementSeries series) {
+        int size = series.size();
+        boolean[] keep = new boolean[size];
+        if (size == 0) {
+            return keep;
+        }
+        keep[0] = true;
+        keep[size - 1] = true;
+
+        double scale = Math.cos(Math.toRadians(series.getLatitude(0)));
+        double[] x = new double[size];
+        double[] y = new double[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = series.getLongitude(i) * scale * METERS_PER_DEGREE;
+            y[i] = series.getLatitude(i) * METERS_PER_DEGREE;
+        }
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            int farthest = -1;
+            double maxDistance = ROUTE_TOLERANCE;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceToSegment(x[i], y[i], x[first], y[first], x[last],
+                        y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                if (top + 4 > stack.length) {
+                    int[] grown = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, grown, 0, top);
+                    stack = grown;
+                }
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+
+        return keep;
+    }
+
+    private static double distanceToSegment(double px, double py, double ax, double ay,
+                                            double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+}
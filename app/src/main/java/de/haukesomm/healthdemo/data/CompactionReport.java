@@ -0,0 +1,101 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.Locale;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This is a data class describing the outcome of a compaction run of the {@link SessionDatabase}.
+ * Stored sizes are estimated from the number of rows and the length of the chunks.
+ * </p>
+ */
+public class CompactionReport {
+
+    /**
+     * Number of compacted Sessions
+     */
+    public final int sessions;
+
+    /**
+     * Number of measurements stored before the compaction
+     */
+    public final long pointsBefore;
+
+    /**
+     * Number of measurements stored after the compaction
+     */
+    public final long pointsAfter;
+
+    /**
+     * Estimated number of bytes stored before the compaction
+     */
+    public final long bytesBefore;
+
+    /**
+     * Estimated number of bytes stored after the compaction, including the heartrate buckets
+     */
+    public final long bytesAfter;
+
+    /**
+     * Time the whole run took in nanoseconds
+     */
+    public final long durationNanos;
+
+    /**
+     * Whether the run was interrupted before all Sessions were processed
+     */
+    public final boolean interrupted;
+
+
+    /**
+     * Creates a new CompactionReport from the given attributes.
+     *
+     * @param sessions      Number of compacted Sessions
+     * @param pointsBefore  Number of measurements stored before
+     * @param pointsAfter   Number of measurements stored after
+     * @param bytesBefore   Estimated number of bytes stored before
+     * @param bytesAfter    Estimated number of bytes stored after
+     * @param durationNanos Duration of the run in nanoseconds
+     * @param interrupted   Whether the run was interrupted
+     */
+    CompactionReport(int sessions, long pointsBefore, long pointsAfter, long bytesBefore,
+                     long bytesAfter, long durationNanos, boolean interrupted) {
+        this.sessions = sessions;
+        this.pointsBefore = pointsBefore;
+        this.pointsAfter = pointsAfter;
+        this.bytesBefore = bytesBefore;
+        this.bytesAfter = bytesAfter;
+        this.durationNanos = durationNanos;
+        this.interrupted = interrupted;
+    }
+
+
+    /**
+     * Returns the estimated number of bytes saved by the compaction.
+     *
+     * @return  Saved bytes
+     */
+    public long getSavedBytes() {
+        return bytesBefore - bytesAfter;
+    }
+
+
+    // No JavaDoc
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d sessions, %d of %d measurements kept, %d bytes saved "
+                        + "in %.1f ms%s", sessions, pointsAfter, pointsBefore, getSavedBytes(),
+                durationNanos / 1e6, interrupted ? " (interrupted)" : "");
+    }
+}
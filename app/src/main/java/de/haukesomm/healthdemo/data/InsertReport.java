@@ -0,0 +1,71 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.Locale;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This is a data class describing the outcome of a bulk insert into the {@link SessionDatabase}.
+ * It is mainly used to keep track of the insert throughput.
+ * </p>
+ */
+public class InsertReport {
+
+    /**
+     * Number of inserted Sessions
+     */
+    public final int sessions;
+
+    /**
+     * Number of inserted measurement rows
+     */
+    public final long rows;
+
+    /**
+     * Time the whole insert (including the commit) took in nanoseconds
+     */
+    public final long durationNanos;
+
+
+    /**
+     * Creates a new InsertReport from the given attributes.
+     *
+     * @param sessions      Number of inserted Sessions
+     * @param rows          Number of inserted measurement rows
+     * @param durationNanos Duration of the insert in nanoseconds
+     */
+    InsertReport(int sessions, long rows, long durationNanos) {
+        this.sessions = sessions;
+        this.rows = rows;
+        this.durationNanos = durationNanos;
+    }
+
+
+    /**
+     * Returns the insert throughput in measurement rows per second.
+     *
+     * @return  Rows per second
+     */
+    public double getRowsPerSecond() {
+        return durationNanos > 0 ? rows * 1e9 / durationNanos : 0d;
+    }
+
+
+    // No JavaDoc
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d sessions, %d rows in %.1f ms (%.0f rows/s)",
+                sessions, rows, durationNanos / 1e6, getRowsPerSecond());
+    }
+}
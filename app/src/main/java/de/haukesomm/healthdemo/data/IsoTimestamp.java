@@ -0,0 +1,223 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.Locale;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class converts ISO-8601 timestamps such as <code>2018-12-07T06:12:32-08:00</code> (the
+ * format used by the session assets) into milliseconds since the epoch and the original zone
+ * offset in minutes.<br>
+ * Parsing works directly on the characters and does not allocate any objects. The epoch day of the
+ * last date and the last zone offset are cached since consecutive measurements of a session almost
+ * always share both.<br>
+ * Instances are not thread-safe. Use one instance per thread or import.
+ * </p>
+ */
+public final class IsoTimestamp {
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+
+    private int mCachedDate = -1;
+
+    private long mCachedEpochDay;
+
+    private int mCachedOffsetKey = -1;
+
+    private int mCachedOffsetMinutes;
+
+
+    private int mOffsetMinutes;
+
+
+    /**
+     * Parses a timestamp in the format <code>yyyy-MM-ddTHH:mm:ss</code> followed by an optional
+     * fraction of a second and either <code>Z</code> or a zone offset in the format
+     * <code>+HH:mm</code>. The offset can be retrieved by {@link #getOffsetMinutes()} afterwards.
+     *
+     * @param text                      Timestamp in the ISO-8601 date format
+     * @return                          Milliseconds since the epoch (UTC)
+     * @throws IllegalArgumentException If the timestamp is malformed
+     */
+    public long parse(CharSequence text) throws IllegalArgumentException {
+        if (text == null || text.length() < 19
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            throw malformed(text);
+        }
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour > 23
+                || minute > 59 || second > 60) {
+            throw malformed(text);
+        }
+
+        int position = 19;
+        int millis = 0;
+        if (position < text.length() && text.charAt(position) == '.') {
+            int scale = 100;
+            position++;
+            while (position < text.length() && isDigit(text.charAt(position))) {
+                millis += (text.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+        }
+
+        mOffsetMinutes = parseOffset(text, position);
+
+        return epochDay(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute - mOffsetMinutes) * 60L + second) * 1000L + millis;
+    }
+
+    /**
+     * Returns the zone offset of the timestamp parsed last.
+     *
+     * @return  Zone offset in minutes (e.g. -480 for <code>-08:00</code>)
+     */
+    public int getOffsetMinutes() {
+        return mOffsetMinutes;
+    }
+
+
+    /**
+     * Formats a timestamp as ISO-8601 string in the given zone offset, e.g.
+     * <code>2018-12-07T06:12:32-08:00</code>.
+     *
+     * @param millis        Milliseconds since the epoch (UTC)
+     * @param offsetMinutes Zone offset in minutes
+     * @return              Timestamp in the ISO-8601 date format
+     */
+    public static String format(long millis, int offsetMinutes) {
+        long local = millis + offsetMinutes * MILLIS_PER_MINUTE;
+        long epochDay = floorDiv(local, MILLIS_PER_DAY);
+        int secondOfDay = (int) ((local - epochDay * MILLIS_PER_DAY) / 1000L);
+
+        // Inverse of epochDay(), see http://howardhinnant.github.io/date_algorithms.html
+        long z = epochDay + 719468;
+        long era = floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        String date = String.format(Locale.US, "%04d-%02d-%02dT%02d:%02d:%02d",
+                year, month, day, secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60);
+        if (offsetMinutes == 0) {
+            return date + "Z";
+        }
+        int absolute = Math.abs(offsetMinutes);
+        return date + String.format(Locale.US, "%c%02d:%02d",
+                offsetMinutes < 0 ? '-' : '+', absolute / 60, absolute % 60);
+    }
+
+
+    private long epochDay(int year, int month, int day) {
+        int key = (year * 100 + month) * 100 + day;
+        if (key != mCachedDate) {
+            // Days from civil, see http://howardhinnant.github.io/date_algorithms.html
+            int y = month <= 2 ? year - 1 : year;
+            int era = (int) floorDiv(y, 400);
+            int yearOfEra = y - era * 400;
+            int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+            mCachedEpochDay = era * 146097L + dayOfEra - 719468;
+            mCachedDate = key;
+        }
+        return mCachedEpochDay;
+    }
+
+    private int parseOffset(CharSequence text, int position) {
+        if (position == text.length()) {
+            // No zone designator at all, treat as UTC
+            return 0;
+        }
+
+        char sign = text.charAt(position);
+        if (sign == 'Z' && position + 1 == text.length()) {
+            return 0;
+        }
+        if ((sign != '+' && sign != '-') || text.length() != position + 6
+                || text.charAt(position + 3) != ':') {
+            throw malformed(text);
+        }
+
+        int hours = digits(text, position + 1, 2);
+        int minutes = digits(text, position + 4, 2);
+        int key = (sign == '-' ? 10_000 : 0) + hours * 100 + minutes;
+        if (key != mCachedOffsetKey) {
+            if (hours > 18 || minutes > 59) {
+                throw malformed(text);
+            }
+            int offset = hours * 60 + minutes;
+            mCachedOffsetMinutes = sign == '-' ? -offset : offset;
+            mCachedOffsetKey = key;
+        }
+        return mCachedOffsetMinutes;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Math.floorDiv() requires API level 24
+    private static long floorDiv(long x, long y) {
+        long quotient = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? quotient - 1 : quotient;
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                throw malformed(text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static IllegalArgumentException malformed(CharSequence text) {
+        return new IllegalArgumentException("Malformed ISO-8601 timestamp: " + text);
+    }
+}
@@ -15,7 +15,9 @@ package de.haukesomm.healthdemo.data;
  * Created on 23.08.18
  * <p>
  * This is a data class representing a single fitness measurement consisting of different attributes
- * such as a timestamp, location and vital functions.
+ * such as a timestamp, location and vital functions.<br>
+ * Sessions store their measurements in a {@link MeasurementSeries}. This class is only used to
+ * hand out single measurements.
  * </p>
  *
  * @author Hauke Sommerfeld
@@ -23,9 +25,14 @@ package de.haukesomm.healthdemo.data;
 public class Measurement {
 
     /**
-     * Timestamp in the ISO-8601 date format
+     * Timestamp in milliseconds since the epoch (UTC)
      */
-    public final String timestamp;
+    public final long timestamp;
+
+    /**
+     * Zone offset (in minutes) the timestamp was originally recorded in
+     */
+    public final int utcOffset;
 
     /**
      * Latitude of the user's location at the time of the measurement
@@ -46,14 +53,15 @@ public class Measurement {
     /**
      * Creates a new Measurement object from the given attributes.
      *
-     * @param timestamp Timestamp in the ISO-8601 date format
+     * @param timestamp Timestamp in milliseconds since the epoch (UTC)
+     * @param utcOffset Zone offset (in minutes) the timestamp was originally recorded in
      * @param latitude  Latitude of the user's location at the time of the measurement
      * @param longitude Longitude of the user's location at the time of the measurement
      * @param heartrate The user's heartrate at the time of the measurement
      */
-    // TODO Use a regex to validate the timestamp format
-    Measurement(String timestamp, double latitude, double longitude, int heartrate) {
+    Measurement(long timestamp, int utcOffset, double latitude, double longitude, int heartrate) {
         this.timestamp = timestamp;
+        this.utcOffset = utcOffset;
         this.latitude = latitude;
         this.longitude = longitude;
         this.heartrate = heartrate;
@@ -0,0 +1,194 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.Arrays;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class encodes a run of measurements into the compact blob format of
+ * {@link StorageFormat#PACKED} and decodes it again.<br>
+ * A blob starts with the number of measurements. The first measurement is stored with absolute
+ * values, all following ones as the difference to their predecessor. Coordinates are converted to
+ * fixed-point integers of 1e-7 degrees first. All numbers are written as zigzag encoded varints,
+ * so the typical 1 Hz recording needs two bytes each for the timestamp and heartrate, one for the
+ * zone offset and two or three bytes per coordinate.
+ * </p>
+ */
+final class MeasurementCodec {
+
+    private static final double COORDINATE_SCALE = 1e7;
+
+    // Count, then timestamp, offset, latitude, longitude and heartrate of up to 10 bytes each
+    private static final int MAX_HEADER_SIZE = 5;
+
+    private static final int MAX_MEASUREMENT_SIZE = 50;
+
+
+    private MeasurementCodec() {
+        // Static helper class
+    }
+
+
+    /**
+     * Encodes a range of a MeasurementSeries.
+     *
+     * @param series    Series containing the measurements
+     * @param from      Index of the first measurement (inclusive)
+     * @param to        Index of the last measurement (exclusive)
+     * @return          Encoded blob
+     */
+    static byte[] encode(MeasurementSeries series, int from, int to) {
+        Writer out = new Writer(MAX_HEADER_SIZE + (to - from) * MAX_MEASUREMENT_SIZE);
+        out.writeVarLong(to - from);
+
+        long timestamp = 0L;
+        long offset = 0L;
+        long latitude = 0L;
+        long longitude = 0L;
+
+        for (int i = from; i < to; i++) {
+            long nextLatitude = Math.round(series.getLatitude(i) * COORDINATE_SCALE);
+            long nextLongitude = Math.round(series.getLongitude(i) * COORDINATE_SCALE);
+
+            out.writeSignedVarLong(series.getTimestamp(i) - timestamp);
+            out.writeSignedVarLong(series.getUtcOffset(i) - offset);
+            out.writeSignedVarLong(nextLatitude - latitude);
+            out.writeSignedVarLong(nextLongitude - longitude);
+            out.writeSignedVarLong(series.getHeartrate(i));
+
+            timestamp = series.getTimestamp(i);
+            offset = series.getUtcOffset(i);
+            latitude = nextLatitude;
+            longitude = nextLongitude;
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes all measurements of a blob and appends them to a MeasurementSeries.
+     *
+     * @param data  Encoded blob
+     * @param out   Series to append the measurements to
+     */
+    static void decode(byte[] data, MeasurementSeries out) {
+        decode(data, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, out);
+    }
+
+    /**
+     * Decodes a blob and appends the measurements within the given time window to a
+     * MeasurementSeries.
+     *
+     * @param data      Encoded blob
+     * @param fromTs    Start of the window (inclusive)
+     * @param toTs      End of the window (exclusive)
+     * @param limit     Maximum number of measurements to append
+     * @param out       Series to append the measurements to
+     * @return          Number of appended measurements
+     */
+    static int decode(byte[] data, long fromTs, long toTs, int limit, MeasurementSeries out) {
+        Reader in = new Reader(data);
+        int count = (int) in.readVarLong();
+
+        out.ensureCapacity(out.size() + Math.min(count, limit));
+
+        long timestamp = 0L;
+        long offset = 0L;
+        long latitude = 0L;
+        long longitude = 0L;
+
+        int added = 0;
+        for (int i = 0; i < count && added < limit; i++) {
+            timestamp += in.readSignedVarLong();
+            offset += in.readSignedVarLong();
+            latitude += in.readSignedVarLong();
+            longitude += in.readSignedVarLong();
+            int heartrate = (int) in.readSignedVarLong();
+
+            if (timestamp >= toTs) {
+                break;
+            }
+            if (timestamp >= fromTs) {
+                out.add(timestamp, (int) offset, latitude / COORDINATE_SCALE,
+                        longitude / COORDINATE_SCALE, heartrate);
+                added++;
+            }
+        }
+
+        return added;
+    }
+
+
+
+    private static class Writer {
+
+        private byte[] mBuffer;
+
+        private int mPosition;
+
+
+        Writer(int capacity) {
+            mBuffer = new byte[capacity];
+        }
+
+
+        void writeSignedVarLong(long value) {
+            // Zigzag encoding maps small negative values to small positive ones
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0L) {
+                mBuffer[mPosition++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mPosition++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBuffer, mPosition);
+        }
+    }
+
+
+    private static class Reader {
+
+        private final byte[] mBuffer;
+
+        private int mPosition;
+
+
+        Reader(byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+
+        long readSignedVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readVarLong() {
+            long value = 0L;
+            int shift = 0;
+            byte b;
+            do {
+                b = mBuffer[mPosition++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
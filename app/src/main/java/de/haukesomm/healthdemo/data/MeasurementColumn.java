@@ -0,0 +1,54 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This enum consists of the columns of a {@link MeasurementSeries}. It is used to restrict the
+ * columns read from the {@link SessionDatabase}, e.g. by
+ * {@link SessionDatabase#get(java.util.Set, int...)}.
+ * </p>
+ */
+public enum MeasurementColumn {
+
+    /**
+     * Timestamp of the measurement
+     */
+    TIMESTAMP(SessionDatabase.TIMESTAMP),
+
+    /**
+     * Zone offset the timestamp was recorded in
+     */
+    UTC_OFFSET(SessionDatabase.UTC_OFFSET),
+
+    /**
+     * Latitude and longitude
+     */
+    LOCATION(SessionDatabase.LATITUDE + ", " + SessionDatabase.LONGITUDE),
+
+    /**
+     * Heartrate
+     */
+    HEARTRATE(SessionDatabase.HEARTRATE);
+
+
+    /*
+     * Column list of the row format
+     */
+    final String sql;
+
+
+    MeasurementColumn(String sql) {
+        this.sql = sql;
+    }
+}
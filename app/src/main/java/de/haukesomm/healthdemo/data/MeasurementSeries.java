@@ -0,0 +1,346 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class stores a series of measurements as primitive arrays (one array per attribute) instead
+ * of a list of {@link Measurement} objects. Indexed access is O(1) and a series of n measurements
+ * only consists of five arrays no matter how large n gets.<br>
+ * A series may be restricted to a projection of {@link MeasurementColumn}s. The arrays of the other
+ * columns are never allocated and their values read as zero.<br>
+ * The series can only be modified from within the data package. Outside of it it is read-only.
+ * </p>
+ */
+public class MeasurementSeries {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+
+    private long[] mTimestamps;
+
+    private short[] mUtcOffsets;
+
+    private double[] mLatitudes;
+
+    private double[] mLongitudes;
+
+    private int[] mHeartrates;
+
+    private int mSize;
+
+    private int mCapacity;
+
+    private long mLastTimestamp = Long.MIN_VALUE;
+
+
+    private final EnumSet<MeasurementColumn> mColumns;
+
+    private final boolean mHasTimestamps;
+
+    private final boolean mHasUtcOffsets;
+
+    private final boolean mHasLocations;
+
+    private final boolean mHasHeartrates;
+
+
+    /**
+     * Creates a new, empty MeasurementSeries.
+     */
+    MeasurementSeries() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty MeasurementSeries with room for the given number of measurements.
+     *
+     * @param capacity  Initial capacity
+     */
+    MeasurementSeries(int capacity) {
+        this(capacity, EnumSet.allOf(MeasurementColumn.class));
+    }
+
+    /**
+     * Creates a new, empty MeasurementSeries containing only the given columns.
+     *
+     * @param capacity  Initial capacity
+     * @param columns   Columns to store
+     */
+    MeasurementSeries(int capacity, Set<MeasurementColumn> columns) {
+        mColumns = columns.isEmpty()
+                ? EnumSet.noneOf(MeasurementColumn.class) : EnumSet.copyOf(columns);
+        mHasTimestamps = mColumns.contains(MeasurementColumn.TIMESTAMP);
+        mHasUtcOffsets = mColumns.contains(MeasurementColumn.UTC_OFFSET);
+        mHasLocations = mColumns.contains(MeasurementColumn.LOCATION);
+        mHasHeartrates = mColumns.contains(MeasurementColumn.HEARTRATE);
+
+        mTimestamps = new long[0];
+        mUtcOffsets = new short[0];
+        mLatitudes = new double[0];
+        mLongitudes = new double[0];
+        mHeartrates = new int[0];
+        ensureCapacity(Math.max(capacity, 1));
+    }
+
+
+    /**
+     * Returns the number of measurements in this series.
+     *
+     * @return  Number of measurements
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns whether this series contains no measurements.
+     *
+     * @return  true if the series is empty
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Returns whether a column is part of this series. Values of other columns are always zero.
+     *
+     * @param column    Column
+     * @return          true if the column is stored
+     */
+    public boolean contains(MeasurementColumn column) {
+        return mColumns.contains(column);
+    }
+
+    /**
+     * Returns the columns stored in this series.
+     *
+     * @return  Set of columns
+     */
+    public Set<MeasurementColumn> getColumns() {
+        return EnumSet.copyOf(mColumns);
+    }
+
+
+    /**
+     * Returns the timestamp of a measurement.
+     *
+     * @param index Index of the measurement
+     * @return      Timestamp in milliseconds since the epoch (UTC)
+     */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return mHasTimestamps ? mTimestamps[index] : 0L;
+    }
+
+    /**
+     * Returns the zone offset the timestamp of a measurement was originally recorded in.
+     *
+     * @param index Index of the measurement
+     * @return      Zone offset in minutes
+     */
+    public int getUtcOffset(int index) {
+        checkIndex(index);
+        return mHasUtcOffsets ? mUtcOffsets[index] : 0;
+    }
+
+    /**
+     * Returns the latitude of a measurement.
+     *
+     * @param index Index of the measurement
+     * @return      Latitude of the user's location
+     */
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return mHasLocations ? mLatitudes[index] : 0d;
+    }
+
+    /**
+     * Returns the longitude of a measurement.
+     *
+     * @param index Index of the measurement
+     * @return      Longitude of the user's location
+     */
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return mHasLocations ? mLongitudes[index] : 0d;
+    }
+
+    /**
+     * Returns the heartrate of a measurement.
+     *
+     * @param index Index of the measurement
+     * @return      The user's heartrate
+     */
+    public int getHeartrate(int index) {
+        checkIndex(index);
+        return mHasHeartrates ? mHeartrates[index] : 0;
+    }
+
+    /**
+     * Returns a single measurement as a {@link Measurement} object. Prefer the primitive accessors
+     * when iterating over the whole series.
+     *
+     * @param index Index of the measurement
+     * @return      Measurement object
+     */
+    public Measurement get(int index) {
+        return new Measurement(getTimestamp(index), getUtcOffset(index), getLatitude(index),
+                getLongitude(index), getHeartrate(index));
+    }
+
+    /**
+     * Passes all measurements of this series to a visitor in order, e.g. to stream them through a
+     * {@link de.haukesomm.healthdemo.privacy.PrivacyPipeline}. Columns which are not part of the
+     * series are passed as zero.
+     *
+     * @param visitor   Visitor receiving the measurements
+     */
+    public void forEach(MeasurementVisitor visitor) {
+        for (int i = 0; i < mSize; i++) {
+            visitor.visit(getTimestamp(i), getUtcOffset(i), getLatitude(i), getLongitude(i),
+                    getHeartrate(i));
+        }
+    }
+
+
+    /**
+     * Returns a copy of all timestamps.
+     *
+     * @return  Array of timestamps in milliseconds since the epoch (UTC)
+     */
+    public long[] getTimestamps() {
+        return Arrays.copyOf(mTimestamps, mSize);
+    }
+
+    /**
+     * Returns a copy of all zone offsets.
+     *
+     * @return  Array of zone offsets in minutes
+     */
+    public short[] getUtcOffsets() {
+        return Arrays.copyOf(mUtcOffsets, mSize);
+    }
+
+    /**
+     * Returns a copy of all latitudes.
+     *
+     * @return  Array of latitudes
+     */
+    public double[] getLatitudes() {
+        return Arrays.copyOf(mLatitudes, mSize);
+    }
+
+    /**
+     * Returns a copy of all longitudes.
+     *
+     * @return  Array of longitudes
+     */
+    public double[] getLongitudes() {
+        return Arrays.copyOf(mLongitudes, mSize);
+    }
+
+    /**
+     * Returns a copy of all heartrates.
+     *
+     * @return  Array of heartrates
+     */
+    public int[] getHeartrates() {
+        return Arrays.copyOf(mHeartrates, mSize);
+    }
+
+
+    /**
+     * Appends a single measurement to the series.
+     *
+     * @param timestamp Timestamp in milliseconds since the epoch (UTC)
+     * @param utcOffset Zone offset the timestamp was recorded in (minutes)
+     * @param latitude  Latitude of the user's location
+     * @param longitude Longitude of the user's location
+     * @param heartrate The user's heartrate
+     */
+    void add(long timestamp, int utcOffset, double latitude, double longitude, int heartrate) {
+        ensureCapacity(mSize + 1);
+        if (mHasTimestamps) {
+            mTimestamps[mSize] = timestamp;
+        }
+        if (mHasUtcOffsets) {
+            mUtcOffsets[mSize] = (short) utcOffset;
+        }
+        if (mHasLocations) {
+            mLatitudes[mSize] = latitude;
+            mLongitudes[mSize] = longitude;
+        }
+        if (mHasHeartrates) {
+            mHeartrates[mSize] = heartrate;
+        }
+        mLastTimestamp = timestamp;
+        mSize++;
+    }
+
+    /**
+     * Returns the timestamp of the last measurement added, even if timestamps are not part of the
+     * series. It is used to continue reading after it.
+     *
+     * @return  Timestamp in milliseconds since the epoch (UTC), Long.MIN_VALUE if nothing was added
+     */
+    long getLastTimestamp() {
+        return mLastTimestamp;
+    }
+
+    /**
+     * Makes sure the series can hold at least the given number of measurements without growing.
+     *
+     * @param capacity  Minimum capacity
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity <= mCapacity) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, mCapacity + (mCapacity >> 1));
+        if (mHasTimestamps) {
+            mTimestamps = Arrays.copyOf(mTimestamps, newCapacity);
+        }
+        if (mHasUtcOffsets) {
+            mUtcOffsets = Arrays.copyOf(mUtcOffsets, newCapacity);
+        }
+        if (mHasLocations) {
+            mLatitudes = Arrays.copyOf(mLatitudes, newCapacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, newCapacity);
+        }
+        if (mHasHeartrates) {
+            mHeartrates = Arrays.copyOf(mHeartrates, newCapacity);
+        }
+        mCapacity = newCapacity;
+    }
+
+    /**
+     * Removes all measurements while keeping the allocated arrays.
+     */
+    void clear() {
+        mSize = 0;
+        mLastTimestamp = Long.MIN_VALUE;
+    }
+
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This interface receives Sessions measurement by measurement while they are being parsed, e.g.
+ * by the {@link SessionAssetReader}. This way a Session never has to be held in memory as a whole.
+ * </p>
+ */
+interface MeasurementSink {
+
+    /**
+     * Called once per Session before any of its measurements.
+     *
+     * @param description   Description of the Session
+     */
+    void beginSession(SessionDescription description);
+
+    /**
+     * Called for every measurement of the current Session.
+     *
+     * @param timestamp Timestamp in milliseconds since the epoch (UTC)
+     * @param utcOffset Zone offset the timestamp was recorded in (minutes)
+     * @param latitude  Latitude of the user's location
+     * @param longitude Longitude of the user's location
+     * @param heartrate The user's heartrate
+     */
+    void add(long timestamp, int utcOffset, double latitude, double longitude, int heartrate);
+
+    /**
+     * Called once after the last measurement of the current Session.
+     */
+    void endSession();
+}
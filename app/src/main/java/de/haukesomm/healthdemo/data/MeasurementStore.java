@@ -0,0 +1,490 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS_SESSION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_STORAGE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TIMESTAMP;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class reads and deletes the measurements of a Session regardless of the
+ * {@link StorageFormat} they are stored in. Sessions stored as {@link StorageFormat#PACKED} keep
+ * their measurements in the <code>measurement_chunks</code> table, one blob encoded by the
+ * {@link MeasurementCodec} per chunk. Each chunk knows its first and last timestamp, so time
+ * windows only decode the chunks overlapping them. Sessions stored as
+ * {@link StorageFormat#ENCRYPTED} use the same table, their chunks are decrypted by a
+ * {@link ChunkCipher} one at a time right before they are decoded.
+ * </p>
+ */
+final class MeasurementStore {
+
+    static final String TABLE_CHUNKS = "measurement_chunks";
+
+    static final String CHUNK_SESSION = "session_id";
+
+    static final String CHUNK_SEQUENCE = "sequence";
+
+    static final String CHUNK_FIRST = "first_timestamp";
+
+    static final String CHUNK_LAST = "last_timestamp";
+
+    static final String CHUNK_COUNT = "count";
+
+    static final String CHUNK_DATA = "data";
+
+
+    /**
+     * Maximum number of measurements per chunk
+     */
+    static final int CHUNK_SIZE = 512;
+
+
+    private MeasurementStore() {
+        // Static helper class
+    }
+
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_CHUNKS + " ("
+                + CHUNK_SESSION     + " INTEGER NOT NULL, "
+                + CHUNK_SEQUENCE    + " INTEGER NOT NULL, "
+                + CHUNK_FIRST       + " INTEGER NOT NULL, "
+                + CHUNK_LAST        + " INTEGER NOT NULL, "
+                + CHUNK_COUNT       + " INTEGER NOT NULL, "
+                + CHUNK_DATA        + " BLOB NOT NULL, "
+                + "PRIMARY KEY (" + CHUNK_SESSION + ", " + CHUNK_SEQUENCE + ")"
+                + ") WITHOUT ROWID;");
+    }
+
+
+    /**
+     * Returns the format the measurements of a Session are stored in.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @return          StorageFormat, {@link StorageFormat#ROWS} if the Session does not exist
+     */
+    static StorageFormat getFormat(SQLiteDatabase db, int sessionId) {
+        try (Cursor cursor = db.query(TABLE_SESSIONS, new String[] { TABLE_SESSIONS_STORAGE },
+                TABLE_SESSIONS_ID + " = " + sessionId, null, null, null, null)) {
+
+            return cursor.moveToFirst() ? StorageFormat.get(cursor.getInt(0)) : StorageFormat.ROWS;
+        }
+    }
+
+    /**
+     * Appends a window of a Session's measurements to a MeasurementSeries in chronological order.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param fromTs    Start of the window (inclusive, milliseconds since the epoch)
+     * @param toTs      End of the window (exclusive, milliseconds since the epoch)
+     * @param limit     Maximum number of measurements to read, negative to read the whole window
+     * @param out       Series to append the measurements to
+     */
+    static void read(SQLiteDatabase db, int sessionId, long fromTs, long toTs, int limit,
+                     MeasurementSeries out) {
+
+        StorageFormat format = getFormat(db, sessionId);
+        if (format.chunked) {
+            readChunks(db, sessionId, fromTs, toTs, limit < 0 ? Integer.MAX_VALUE : limit, out,
+                    getCipher(db, format));
+        } else {
+            readRows(db, sessionId, fromTs, toTs, limit, out);
+        }
+    }
+
+    /*
+     * Served by the (session_id, timestamp) primary key, already in chronological order. Only the
+     * columns of the series are selected.
+     */
+    static void readRows(SQLiteDatabase db, int sessionId, long fromTs, long toTs, int limit,
+                         MeasurementSeries out) {
+
+        Projection projection = new Projection(out.getColumns());
+        try (Cursor cursor = queryRows(db, sessionId, fromTs, toTs, limit, projection)) {
+            out.ensureCapacity(out.size() + cursor.getCount());
+
+            while (cursor.moveToNext()) {
+                projection.read(cursor, 0, out);
+            }
+        }
+    }
+
+    /*
+     * The cipher is null for Sessions stored as PACKED
+     */
+    static void readChunks(SQLiteDatabase db, int sessionId, long fromTs, long toTs, int limit,
+                           MeasurementSeries out, ChunkCipher cipher) {
+
+        try (Cursor cursor = queryChunks(db, sessionId, fromTs, toTs)) {
+            int remaining = limit;
+            while (remaining > 0 && cursor.moveToNext()) {
+                remaining -= MeasurementCodec.decode(getChunk(cursor, 0, sessionId, cipher),
+                        fromTs, toTs, remaining, out);
+            }
+        }
+    }
+
+    /**
+     * Returns the cipher needed to read or write chunks in the given format.
+     *
+     * @param db        Database
+     * @param format    StorageFormat
+     * @return          ChunkCipher, null if the format is not encrypted
+     */
+    static ChunkCipher getCipher(SQLiteDatabase db, StorageFormat format) {
+        return format == StorageFormat.ENCRYPTED ? ChunkCipher.open(db) : null;
+    }
+
+    /*
+     * Reads the data of a chunk selected together with its sequence number in the next column
+     */
+    private static byte[] getChunk(Cursor cursor, int column, int sessionId, ChunkCipher cipher) {
+        byte[] data = cursor.getBlob(column);
+        return cipher == null ? data : cipher.decrypt(data, sessionId, cursor.getInt(column + 1));
+    }
+
+    /**
+     * Passes a window of a Session's measurements to a visitor in chronological order. Rows are
+     * read straight from the cursor, packed chunks are decoded one by one into a reused buffer, so
+     * the memory used does not depend on the size of the window.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param fromTs    Start of the window (inclusive, milliseconds since the epoch)
+     * @param toTs      End of the window (exclusive, milliseconds since the epoch)
+     * @param visitor   Visitor receiving the measurements
+     * @return          Number of visited measurements
+     */
+    static int forEach(SQLiteDatabase db, int sessionId, long fromTs, long toTs,
+                       MeasurementVisitor visitor) {
+
+        return forEach(db, sessionId, fromTs, toTs, EnumSet.allOf(MeasurementColumn.class),
+                visitor);
+    }
+
+    /**
+     * Passes a window of a Session's measurements to a visitor in chronological order, see
+     * {@link #forEach(SQLiteDatabase, int, long, long, MeasurementVisitor)}. Columns which are not
+     * part of the projection are passed as zero.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param fromTs    Start of the window (inclusive, milliseconds since the epoch)
+     * @param toTs      End of the window (exclusive, milliseconds since the epoch)
+     * @param columns   Columns to read
+     * @param visitor   Visitor receiving the measurements
+     * @return          Number of visited measurements
+     */
+    static int forEach(SQLiteDatabase db, int sessionId, long fromTs, long toTs,
+                       Set<MeasurementColumn> columns, MeasurementVisitor visitor) {
+
+        int count = 0;
+
+        StorageFormat format = getFormat(db, sessionId);
+        if (format.chunked) {
+            ChunkCipher cipher = getCipher(db, format);
+            MeasurementSeries chunk = new MeasurementSeries(CHUNK_SIZE, columns);
+            try (Cursor cursor = queryChunks(db, sessionId, fromTs, toTs)) {
+                while (cursor.moveToNext()) {
+                    chunk.clear();
+                    MeasurementCodec.decode(getChunk(cursor, 0, sessionId, cipher), fromTs, toTs,
+                            Integer.MAX_VALUE, chunk);
+
+                    for (int i = 0; i < chunk.size(); i++) {
+                        visitor.visit(chunk.getTimestamp(i), chunk.getUtcOffset(i),
+                                chunk.getLatitude(i), chunk.getLongitude(i), chunk.getHeartrate(i));
+                    }
+                    count += chunk.size();
+                }
+            }
+        } else {
+            Projection projection = new Projection(columns);
+            try (Cursor cursor = queryRows(db, sessionId, fromTs, toTs, -1, projection)) {
+                while (cursor.moveToNext()) {
+                    projection.read(cursor, 0, visitor);
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private static Cursor queryRows(SQLiteDatabase db, int sessionId, long fromTs, long toTs,
+                                    int limit, Projection projection) {
+        return db.rawQuery("SELECT " + projection.select + " FROM " + TABLE_MEASUREMENTS
+                + " WHERE " + TABLE_MEASUREMENTS_SESSION + " = ? AND " + TIMESTAMP + " >= ? AND "
+                + TIMESTAMP + " < ? ORDER BY " + TIMESTAMP
+                + (limit < 0 ? "" : " LIMIT " + limit) + ";",
+                new String[] { String.valueOf(sessionId), String.valueOf(fromTs),
+                        String.valueOf(toTs) });
+    }
+
+    private static Cursor queryChunks(SQLiteDatabase db, int sessionId, long fromTs, long toTs) {
+        return db.query(TABLE_CHUNKS, new String[] { CHUNK_DATA, CHUNK_SEQUENCE },
+                CHUNK_SESSION + " = ? AND " + CHUNK_LAST + " >= ? AND " + CHUNK_FIRST + " < ?",
+                new String[] { String.valueOf(sessionId), String.valueOf(fromTs),
+                        String.valueOf(toTs) },
+                null, null, CHUNK_SEQUENCE);
+    }
+
+    /**
+     * Appends all measurements of multiple Sessions stored as {@link StorageFormat#ROWS} to their
+     * MeasurementSeries using a single range scan over the primary key. All series have to contain
+     * the same columns, only those are selected.
+     *
+     * @param db        Database
+     * @param sessions  Series to append to by Session ID
+     */
+    static void readRows(SQLiteDatabase db, Map<Integer, MeasurementSeries> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        Projection projection = new Projection(
+                sessions.values().iterator().next().getColumns());
+
+        try (Cursor cursor = db.rawQuery("SELECT " + TABLE_MEASUREMENTS_SESSION + ", "
+                + projection.select + " FROM " + TABLE_MEASUREMENTS + " WHERE "
+                + TABLE_MEASUREMENTS_SESSION + " IN (" + joinIds(sessions.keySet())
+                + ") ORDER BY " + TABLE_MEASUREMENTS_SESSION + ", " + TIMESTAMP + ";", null)) {
+
+            int sessionId = 0;
+            MeasurementSeries series = null;
+            while (cursor.moveToNext()) {
+                if (series == null || cursor.getInt(0) != sessionId) {
+                    sessionId = cursor.getInt(0);
+                    series = sessions.get(sessionId);
+                }
+                projection.read(cursor, 1, series);
+            }
+        }
+    }
+
+    /**
+     * Appends all measurements of multiple Sessions stored in the same chunked format to their
+     * MeasurementSeries using a single range scan over the chunks.
+     *
+     * @param db        Database
+     * @param sessions  Series to append to by Session ID
+     * @param format    {@link StorageFormat#PACKED} or {@link StorageFormat#ENCRYPTED}
+     */
+    static void readChunks(SQLiteDatabase db, Map<Integer, MeasurementSeries> sessions,
+                           StorageFormat format) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        ChunkCipher cipher = getCipher(db, format);
+
+        try (Cursor cursor = db.rawQuery("SELECT " + CHUNK_SESSION + ", " + CHUNK_DATA + ", "
+                + CHUNK_SEQUENCE + " FROM " + TABLE_CHUNKS + " WHERE " + CHUNK_SESSION + " IN ("
+                + joinIds(sessions.keySet()) + ") ORDER BY " + CHUNK_SESSION + ", "
+                + CHUNK_SEQUENCE + ";", null)) {
+
+            while (cursor.moveToNext()) {
+                int sessionId = cursor.getInt(0);
+                MeasurementCodec.decode(getChunk(cursor, 1, sessionId, cipher),
+                        sessions.get(sessionId));
+            }
+        }
+    }
+
+    /**
+     * Joins IDs into a list which can be used within an SQL <code>IN</code> operator.
+     *
+     * @param ids   IDs
+     * @return      Comma-separated list
+     */
+    static String joinIds(Iterable<Integer> ids) {
+        StringBuilder list = new StringBuilder();
+        for (int id : ids) {
+            list.append(list.length() == 0 ? "" : ", ").append(id);
+        }
+        return list.toString();
+    }
+
+    /**
+     * Deletes all measurements of a Session in either format.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     */
+    static void delete(SQLiteDatabase db, int sessionId) {
+        final String[] args = { String.valueOf(sessionId) };
+        db.delete(TABLE_MEASUREMENTS, TABLE_MEASUREMENTS_SESSION + " = ?", args);
+        db.delete(TABLE_CHUNKS, CHUNK_SESSION + " = ?", args);
+    }
+
+
+    static SQLiteStatement compileInsertChunk(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + TABLE_CHUNKS + " VALUES "
+                + "(?, ?, ?, ?, ?, ?);");
+    }
+
+    /**
+     * Encodes a range of a MeasurementSeries into chunks of up to {@link #CHUNK_SIZE}
+     * measurements and writes them. The measurements have to be in chronological order.
+     *
+     * @param insert    Statement compiled by {@link #compileInsertChunk(SQLiteDatabase)}
+     * @param sessionId ID of the Session
+     * @param sequence  Sequence number of the first chunk to write
+     * @param series    Series containing the measurements
+     * @param from      Index of the first measurement (inclusive)
+     * @param to        Index of the last measurement (exclusive)
+     * @param cipher    Cipher to encrypt the chunks with, null to store them in plain text
+     * @return          Sequence number of the next chunk
+     */
+    static int writeChunks(SQLiteStatement insert, int sessionId, int sequence,
+                           MeasurementSeries series, int from, int to, ChunkCipher cipher) {
+
+        for (int start = from; start < to; start += CHUNK_SIZE) {
+            int end = Math.min(start + CHUNK_SIZE, to);
+
+            byte[] data = MeasurementCodec.encode(series, start, end);
+            if (cipher != null) {
+                data = cipher.encrypt(data, sessionId, sequence);
+            }
+
+            insert.bindLong(1, sessionId);
+            insert.bindLong(2, sequence++);
+            insert.bindLong(3, series.getTimestamp(start));
+            insert.bindLong(4, series.getTimestamp(end - 1));
+            insert.bindLong(5, end - start);
+            insert.bindBlob(6, data);
+            insert.executeInsert();
+        }
+        return sequence;
+    }
+
+    /**
+     * Sorts the chunks of a chunked Session written out of order. Like the primary key of the
+     * row format only the last measurement of each timestamp is kept.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param cipher    Cipher the chunks are encrypted with, null if they are in plain text
+     */
+    static void repack(SQLiteDatabase db, int sessionId, ChunkCipher cipher) {
+        final MeasurementSeries series = new MeasurementSeries();
+        readChunks(db, sessionId, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, series,
+                cipher);
+
+        Integer[] order = new Integer[series.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Stable, so measurements sharing a timestamp keep their insertion order
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long ta = series.getTimestamp(a);
+                long tb = series.getTimestamp(b);
+                return ta < tb ? -1 : (ta == tb ? 0 : 1);
+            }
+        });
+
+        MeasurementSeries sorted = new MeasurementSeries(order.length);
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            if (k + 1 < order.length && series.getTimestamp(order[k + 1]) == series.getTimestamp(i)) {
+                continue;
+            }
+            sorted.add(series.getTimestamp(i), series.getUtcOffset(i), series.getLatitude(i),
+                    series.getLongitude(i), series.getHeartrate(i));
+        }
+
+        db.delete(TABLE_CHUNKS, CHUNK_SESSION + " = ?", new String[] { String.valueOf(sessionId) });
+        try (SQLiteStatement insert = compileInsertChunk(db)) {
+            writeChunks(insert, sessionId, 0, sorted, 0, sorted.size(), cipher);
+        }
+    }
+
+
+
+    /*
+     * Column list of the row format for a projection. The timestamp is always selected: it is part
+     * of the primary key, so it is read from the page anyway, and readers continue after the last
+     * timestamp of a page. Whether it is kept is up to the MeasurementSeries.
+     */
+    private static final class Projection {
+
+        final String select;
+
+        private final boolean mTimestamps;
+
+        private final boolean mUtcOffsets;
+
+        private final boolean mLocations;
+
+        private final boolean mHeartrates;
+
+
+        Projection(Set<MeasurementColumn> columns) {
+            mTimestamps = columns.contains(MeasurementColumn.TIMESTAMP);
+            mUtcOffsets = columns.contains(MeasurementColumn.UTC_OFFSET);
+            mLocations = columns.contains(MeasurementColumn.LOCATION);
+            mHeartrates = columns.contains(MeasurementColumn.HEARTRATE);
+
+            StringBuilder select = new StringBuilder(TIMESTAMP);
+            for (MeasurementColumn column : MeasurementColumn.values()) {
+                if (column != MeasurementColumn.TIMESTAMP && columns.contains(column)) {
+                    select.append(", ").append(column.sql);
+                }
+            }
+            this.select = select.toString();
+        }
+
+
+        /*
+         * Columns are selected in the order of the enum, starting at the given index.
+         */
+        void read(Cursor cursor, int first, MeasurementSeries out) {
+            int column = first + 1;
+            int utcOffset = mUtcOffsets ? cursor.getInt(column++) : 0;
+            double latitude = mLocations ? cursor.getDouble(column++) : 0d;
+            double longitude = mLocations ? cursor.getDouble(column++) : 0d;
+            int heartrate = mHeartrates ? cursor.getInt(column) : 0;
+
+            out.add(cursor.getLong(first), utcOffset, latitude, longitude, heartrate);
+        }
+
+        void read(Cursor cursor, int first, MeasurementVisitor visitor) {
+            int column = first + 1;
+            int utcOffset = mUtcOffsets ? cursor.getInt(column++) : 0;
+            double latitude = mLocations ? cursor.getDouble(column++) : 0d;
+            double longitude = mLocations ? cursor.getDouble(column++) : 0d;
+            int heartrate = mHeartrates ? cursor.getInt(column) : 0;
+
+            long timestamp = mTimestamps ? cursor.getLong(first) : 0L;
+
+            visitor.visit(timestamp, utcOffset, latitude, longitude, heartrate);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This interface receives the measurements of a Session one by one in chronological order when
+ * passed to {@link SessionDatabase#forEachMeasurement(int, MeasurementVisitor)}. The values are
+ * read straight from the database, so neither a {@link Session} nor a {@link Measurement} object
+ * is created. This is the cheapest way to compute aggregates which only need a single pass over the
+ * data.
+ * </p>
+ */
+public interface MeasurementVisitor {
+
+    /**
+     * Called for every measurement.
+     *
+     * @param timestamp Timestamp in milliseconds since the epoch (UTC)
+     * @param utcOffset Zone offset the timestamp was recorded in (minutes)
+     * @param latitude  Latitude of the user's location
+     * @param longitude Longitude of the user's location
+     * @param heartrate The user's heartrate
+     */
+    void visit(long timestamp, int utcOffset, double latitude, double longitude, int heartrate);
+}
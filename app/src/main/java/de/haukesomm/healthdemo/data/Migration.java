@@ -0,0 +1,116 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.List;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class describes a single step of the {@link SessionDatabase}'s schema history.<br>
+ * A step is split into two parts: {@link #prepare(SQLiteDatabase, int)} applies the schema changes
+ * and runs inside onUpgrade(), so it has to be quick. The data is migrated afterwards in chunks of
+ * units (e.g. Sessions) identified by ascending integer IDs. Each chunk is committed together with
+ * the ID of its last unit, so an interrupted migration continues where it left off.
+ * </p>
+ *
+ * @see Migrations
+ */
+abstract class Migration {
+
+    /**
+     * Schema version introduced by this step
+     */
+    final int version;
+
+    /**
+     * Human readable name used for logging and progress reports
+     */
+    final String name;
+
+
+    /**
+     * Creates a new Migration.
+     *
+     * @param version   Schema version introduced by this step
+     * @param name      Human readable name
+     */
+    Migration(int version, String name) {
+        this.version = version;
+        this.name = name;
+    }
+
+
+    /**
+     * Applies the schema changes of this step. Called inside onUpgrade().
+     *
+     * @param db            Database
+     * @param oldVersion    Version the database is upgraded from
+     */
+    abstract void prepare(SQLiteDatabase db, int oldVersion);
+
+    /**
+     * Returns the IDs of the next units to migrate in ascending order.
+     *
+     * @param db    Database
+     * @param after ID of the last unit already migrated, {@link Integer#MIN_VALUE} at the start
+     * @param limit Maximum number of IDs to return
+     * @return      List of IDs, empty if the data migration is complete
+     */
+    abstract List<Integer> listPending(SQLiteDatabase db, int after, int limit);
+
+    /**
+     * Returns the number of units left to migrate. Only used for progress reports.
+     *
+     * @param db    Database
+     * @param after ID of the last unit already migrated, {@link Integer#MIN_VALUE} at the start
+     * @return      Number of units
+     */
+    abstract int countPending(SQLiteDatabase db, int after);
+
+    /**
+     * Called once before the first chunk, outside of any transaction. Steps which need statements
+     * SQLite does not allow within a transaction, such as VACUUM, run them here. It is called
+     * again if the step was interrupted, so it has to be idempotent.
+     *
+     * @param db    Database
+     */
+    void beforeChunks(SQLiteDatabase db) {
+        // Nothing to do by default
+    }
+
+    /**
+     * Migrates a single unit.
+     *
+     * @param db    Database
+     * @param id    ID of the unit
+     */
+    abstract void migrate(SQLiteDatabase db, int id);
+
+    /**
+     * Called in the same transaction as the last chunk once all units have been migrated.
+     *
+     * @param db    Database
+     */
+    void finish(SQLiteDatabase db) {
+        // Nothing to do by default
+    }
+
+
+    // No Javadoc
+    @Override
+    public String toString() {
+        return "Version " + version + " (" + name + ")";
+    }
+}
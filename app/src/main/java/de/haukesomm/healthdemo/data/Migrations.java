@@ -0,0 +1,532 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.HEARTRATE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.LATITUDE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.LONGITUDE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS_SESSION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_STORAGE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TIMESTAMP;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class contains the registry of all {@link Migration}s of the {@link SessionDatabase} and
+ * runs them.<br>
+ * onUpgrade() only applies the schema changes of the required steps and records them as pending
+ * in the <code>schema_migrations</code> table. Their data is migrated afterwards by
+ * {@link #runPending(SQLiteDatabase, SessionDatabase.MigrationListener)} in small transactions, so
+ * large tables are never rewritten in one long blocking upgrade and an interrupted migration
+ * resumes with the next chunk.
+ * </p>
+ */
+final class Migrations {
+
+    static final String TABLE = "schema_migrations";
+
+    static final String VERSION = "version";
+
+    static final String POSITION = "position";
+
+
+    /*
+     * Number of units migrated per transaction
+     */
+    private static final int CHUNK_SIZE = 4;
+
+
+    private static final String LEGACY_TABLE_PREFIX = "data_";
+
+    private static final String MEASUREMENTS_V3 = TABLE_MEASUREMENTS + "_v3";
+
+
+    /*
+     * Version 2 stored ISO-8601 strings such as 2018-12-07T06:12:32-08:00. SQLite's date functions
+     * understand the zone suffix, so the conversion can be done without leaving SQL.
+     */
+    private static final String SQL_TEXT_TO_MILLIS =
+            "CAST(strftime('%s', " + TIMESTAMP + ") AS INTEGER) * 1000";
+
+    private static final String SQL_TEXT_TO_OFFSET =
+            "CASE WHEN length(" + TIMESTAMP + ") >= 25 THEN "
+            + "(CASE substr(" + TIMESTAMP + ", 20, 1) WHEN '-' THEN -1 ELSE 1 END) * "
+            + "(CAST(substr(" + TIMESTAMP + ", 21, 2) AS INTEGER) * 60 "
+            + "+ CAST(substr(" + TIMESTAMP + ", 24, 2) AS INTEGER)) ELSE 0 END";
+
+
+    private Migrations() {
+        // Static helper class
+    }
+
+
+    /**
+     * All steps of the schema history in ascending order. Add new steps at the end.
+     */
+    private static final Migration[] REGISTRY = {
+
+            /*
+             * Version 1 stored every Session in its own data_<id> table. They are moved into the
+             * single measurements table one by one.
+             */
+            new Migration(2, "measurements table") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    SessionDatabase.createMeasurementTable(db, TABLE_MEASUREMENTS);
+                }
+
+                @Override
+                List<Integer> listPending(SQLiteDatabase db, int after, int limit) {
+                    List<Integer> ids = listLegacyTables(db, after);
+                    return ids.subList(0, Math.min(limit, ids.size()));
+                }
+
+                @Override
+                int countPending(SQLiteDatabase db, int after) {
+                    return listLegacyTables(db, after).size();
+                }
+
+                @Override
+                void migrate(SQLiteDatabase db, int id) {
+                    String table = LEGACY_TABLE_PREFIX + id;
+                    db.execSQL("INSERT OR REPLACE INTO " + TABLE_MEASUREMENTS + " SELECT "
+                            + id + ", " + SQL_TEXT_TO_MILLIS + ", " + SQL_TEXT_TO_OFFSET + ", "
+                            + LATITUDE + ", " + LONGITUDE + ", " + HEARTRATE
+                            + " FROM " + table + ";");
+                    db.execSQL("DROP TABLE " + table + ";");
+
+                    // Derived data is only maintained here if its own steps are already complete
+                    if (!isPending(db, 4)) {
+                        SummaryTable.rebuild(db, id);
+                    }
+                    if (!isPending(db, 5)) {
+                        RollupTables.addSession(db, id);
+                    }
+                    if (!isPending(db, 7)) {
+                        SegmentTable.rebuild(db, id);
+                    }
+                }
+            },
+
+            /*
+             * Version 3 replaced the ISO-8601 timestamps by milliseconds since the epoch. The
+             * primary key of the measurements table includes the timestamp, so the table is
+             * rebuilt Session by Session rather than altered.
+             */
+            new Migration(3, "epoch timestamps") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    // Tables created by the previous step already use the new format
+                    if (oldVersion >= 2) {
+                        SessionDatabase.createMeasurementTable(db, MEASUREMENTS_V3);
+                    }
+                }
+
+                @Override
+                List<Integer> listPending(SQLiteDatabase db, int after, int limit) {
+                    if (!tableExists(db, MEASUREMENTS_V3)) {
+                        return Collections.emptyList();
+                    }
+                    return listIds(db, "SELECT DISTINCT " + TABLE_MEASUREMENTS_SESSION + " FROM "
+                            + TABLE_MEASUREMENTS + " WHERE " + TABLE_MEASUREMENTS_SESSION
+                            + " > " + after + " ORDER BY 1 LIMIT " + limit + ";");
+                }
+
+                @Override
+                int countPending(SQLiteDatabase db, int after) {
+                    if (!tableExists(db, MEASUREMENTS_V3)) {
+                        return 0;
+                    }
+                    return count(db, "SELECT COUNT(DISTINCT " + TABLE_MEASUREMENTS_SESSION
+                            + ") FROM " + TABLE_MEASUREMENTS + " WHERE "
+                            + TABLE_MEASUREMENTS_SESSION + " > " + after + ";");
+                }
+
+                @Override
+                void migrate(SQLiteDatabase db, int id) {
+                    db.execSQL("INSERT OR REPLACE INTO " + MEASUREMENTS_V3 + " SELECT "
+                            + TABLE_MEASUREMENTS_SESSION + ", " + SQL_TEXT_TO_MILLIS + ", "
+                            + SQL_TEXT_TO_OFFSET + ", " + LATITUDE + ", " + LONGITUDE + ", "
+                            + HEARTRATE + " FROM " + TABLE_MEASUREMENTS + " WHERE "
+                            + TABLE_MEASUREMENTS_SESSION + " = " + id + ";");
+                }
+
+                @Override
+                void finish(SQLiteDatabase db) {
+                    if (tableExists(db, MEASUREMENTS_V3)) {
+                        db.execSQL("DROP TABLE " + TABLE_MEASUREMENTS + ";");
+                        db.execSQL("ALTER TABLE " + MEASUREMENTS_V3 + " RENAME TO "
+                                + TABLE_MEASUREMENTS + ";");
+                    }
+                }
+            },
+
+            new SessionMigration(4, "session summaries") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    SummaryTable.create(db);
+                }
+
+                @Override
+                void migrate(SQLiteDatabase db, int id) {
+                    SummaryTable.rebuild(db, id);
+                }
+            },
+
+            new SessionMigration(5, "heartrate rollups") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    RollupTables.create(db);
+                }
+
+                @Override
+                void migrate(SQLiteDatabase db, int id) {
+                    RollupTables.addSession(db, id);
+                }
+            },
+
+            /*
+             * Existing Sessions keep the row format, so there is no data to migrate.
+             */
+            new SchemaMigration(6, "packed storage") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    db.execSQL("ALTER TABLE " + TABLE_SESSIONS + " ADD COLUMN "
+                            + TABLE_SESSIONS_STORAGE + " INTEGER NOT NULL DEFAULT 0;");
+                    MeasurementStore.create(db);
+                }
+            },
+
+            new SessionMigration(7, "segment bounds") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    SegmentTable.create(db);
+                }
+
+                @Override
+                void migrate(SQLiteDatabase db, int id) {
+                    SegmentTable.rebuild(db, id);
+                }
+            },
+
+            /*
+             * The descriptions are copied in a single statement. Place names are added once a
+             * Session is viewed.
+             */
+            new SchemaMigration(8, "search index") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    SearchIndex.create(db);
+                    SearchIndex.addMissing(db);
+                }
+            },
+
+            /*
+             * The data key is created once the first encrypted Session is written.
+             */
+            new SchemaMigration(9, "chunk keys") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    ChunkCipher.create(db);
+                }
+            },
+
+            /*
+             * Sessions are compacted by the RetentionJobService, nothing to migrate.
+             */
+            new SchemaMigration(10, "compaction") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    Compaction.create(db);
+                }
+            },
+
+            /*
+             * Files created before auto_vacuum was configured only switch to incremental vacuum
+             * after a full VACUUM. It locks the whole file for a while, so it runs here behind the
+             * progress bar instead of in the background job.
+             */
+            new SchemaMigration(11, "incremental vacuum") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    // VACUUM is not allowed within onUpgrade()'s transaction
+                }
+
+                @Override
+                void beforeChunks(SQLiteDatabase db) {
+                    Retention.enableIncrementalVacuum(db);
+                }
+            },
+
+            /*
+             * SQLite cannot drop a NOT NULL constraint, so the summary table is rebuilt. Encrypted
+             * Sessions were stored with zeros instead of their unknown statistics.
+             */
+            new SchemaMigration(12, "nullable summaries") {
+                @Override
+                void prepare(SQLiteDatabase db, int oldVersion) {
+                    String old = SummaryTable.TABLE + "_v11";
+                    db.execSQL("ALTER TABLE " + SummaryTable.TABLE + " RENAME TO " + old + ";");
+                    db.execSQL("DROP INDEX IF EXISTS " + SummaryTable.TABLE + "_"
+                            + SummaryTable.START + ";");
+                    SummaryTable.create(db);
+
+                    String plain = "CASE WHEN s." + TABLE_SESSIONS_STORAGE + " = "
+                            + StorageFormat.ENCRYPTED.code + " THEN NULL ELSE m.";
+                    db.execSQL("INSERT INTO " + SummaryTable.TABLE + " SELECT m."
+                            + SummaryTable.SESSION + ", m." + SummaryTable.START + ", m."
+                            + SummaryTable.END + ", m." + SummaryTable.POINTS + ", "
+                            + plain + SummaryTable.HEARTRATE_MIN + " END, "
+                            + plain + SummaryTable.HEARTRATE_MAX + " END, "
+                            + plain + SummaryTable.HEARTRATE_AVG + " END, "
+                            + plain + SummaryTable.DISTANCE + " END, "
+                            + plain + SummaryTable.LATITUDE_MIN + " END, "
+                            + plain + SummaryTable.LATITUDE_MAX + " END, "
+                            + plain + SummaryTable.LONGITUDE_MIN + " END, "
+                            + plain + SummaryTable.LONGITUDE_MAX + " END FROM " + old
+                            + " m LEFT JOIN " + TABLE_SESSIONS + " s ON s." + TABLE_SESSIONS_ID + " = m."
+                            + SummaryTable.SESSION + ";");
+                    db.execSQL("DROP TABLE " + old + ";");
+                }
+            }
+    };
+
+
+    /*
+     * Base class of all steps that only change the schema.
+     */
+    private abstract static class SchemaMigration extends Migration {
+
+        SchemaMigration(int version, String name) {
+            super(version, name);
+        }
+
+
+        @Override
+        List<Integer> listPending(SQLiteDatabase db, int after, int limit) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        int countPending(SQLiteDatabase db, int after) {
+            return 0;
+        }
+
+        @Override
+        void migrate(SQLiteDatabase db, int id) {
+            // Nothing to migrate
+        }
+    }
+
+
+    /*
+     * Base class of all steps that process the stored Sessions one by one.
+     */
+    private abstract static class SessionMigration extends Migration {
+
+        SessionMigration(int version, String name) {
+            super(version, name);
+        }
+
+
+        @Override
+        List<Integer> listPending(SQLiteDatabase db, int after, int limit) {
+            return listIds(db, "SELECT " + TABLE_SESSIONS_ID + " FROM " + TABLE_SESSIONS
+                    + " WHERE " + TABLE_SESSIONS_ID + " > " + after + " ORDER BY 1 LIMIT "
+                    + limit + ";");
+        }
+
+        @Override
+        int countPending(SQLiteDatabase db, int after) {
+            return count(db, "SELECT COUNT(*) FROM " + TABLE_SESSIONS + " WHERE "
+                    + TABLE_SESSIONS_ID + " > " + after + ";");
+        }
+    }
+
+
+
+    /**
+     * Creates the table containing the pending steps.
+     *
+     * @param db    Database
+     */
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                + VERSION   + " INTEGER NOT NULL PRIMARY KEY, "
+                + POSITION  + " INTEGER);");
+    }
+
+    /**
+     * Applies the schema changes of all steps between the given versions and records them as
+     * pending. Called inside onUpgrade().
+     *
+     * @param db            Database
+     * @param oldVersion    Version the database is upgraded from
+     * @param newVersion    Version the database is upgraded to
+     */
+    static void schedule(SQLiteDatabase db, int oldVersion, int newVersion) {
+        create(db);
+
+        for (Migration migration : REGISTRY) {
+            if (migration.version > oldVersion && migration.version <= newVersion) {
+                migration.prepare(db, oldVersion);
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE + " (" + VERSION + ") VALUES (?);",
+                        new Object[] { migration.version });
+            }
+        }
+    }
+
+    /**
+     * Returns whether the data of a step has not been migrated completely yet.
+     *
+     * @param db        Database
+     * @param version   Version introduced by the step
+     * @return          true if the step is pending
+     */
+    static boolean isPending(SQLiteDatabase db, int version) {
+        return count(db, "SELECT COUNT(*) FROM " + TABLE + " WHERE " + VERSION + " = "
+                + version + ";") > 0;
+    }
+
+    /**
+     * Migrates the data of all pending steps in ascending order.
+     *
+     * @param db        Database
+     * @param listener  Listener to report the progress to, may be null
+     */
+    static void runPending(SQLiteDatabase db, SessionDatabase.MigrationListener listener) {
+        create(db);
+
+        // Legacy tables may be left over from an interrupted upgrade of an older app version
+        if (!listLegacyTables(db, Integer.MIN_VALUE).isEmpty()) {
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE + " (" + VERSION + ") VALUES (2);");
+        }
+
+        for (Migration migration : REGISTRY) {
+            try (Cursor cursor = db.query(TABLE, new String[] { POSITION },
+                    VERSION + " = " + migration.version, null, null, null, null)) {
+
+                if (cursor.moveToFirst()) {
+                    run(db, migration, cursor.isNull(0) ? Integer.MIN_VALUE : cursor.getInt(0),
+                            listener);
+                }
+            }
+        }
+    }
+
+    private static void run(SQLiteDatabase db, Migration migration, int after,
+                            SessionDatabase.MigrationListener listener) {
+
+        final long start = SystemClock.elapsedRealtime();
+
+        final int total = migration.countPending(db, after);
+        int done = 0;
+        report(listener, migration, done, total);
+
+        migration.beforeChunks(db);
+
+        boolean complete = false;
+        while (!complete) {
+            List<Integer> ids = migration.listPending(db, after, CHUNK_SIZE);
+            complete = ids.isEmpty();
+
+            db.beginTransactionNonExclusive();
+            try {
+                for (int id : ids) {
+                    migration.migrate(db, id);
+                    after = id;
+                }
+
+                if (complete) {
+                    migration.finish(db);
+                    db.execSQL("DELETE FROM " + TABLE + " WHERE " + VERSION + " = ?;",
+                            new Object[] { migration.version });
+                } else {
+                    db.execSQL("UPDATE " + TABLE + " SET " + POSITION + " = ? WHERE " + VERSION
+                            + " = ?;", new Object[] { after, migration.version });
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            done += ids.size();
+            report(listener, migration, Math.min(done, total), total);
+        }
+
+        Log.i("Migrations", "Migrated data of " + migration + ": " + done + " units in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    private static void report(SessionDatabase.MigrationListener listener, Migration migration,
+                               int done, int total) {
+        if (listener != null) {
+            listener.onMigrationProgress(migration.version, done, total);
+        }
+    }
+
+
+
+    private static List<Integer> listLegacyTables(SQLiteDatabase db, int after) {
+        List<Integer> ids = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' "
+                + "AND name LIKE '" + LEGACY_TABLE_PREFIX + "%'", null)) {
+            while (cursor.moveToNext()) {
+                try {
+                    int id = Integer.parseInt(
+                            cursor.getString(0).substring(LEGACY_TABLE_PREFIX.length()));
+                    if (id > after) {
+                        ids.add(id);
+                    }
+                } catch (NumberFormatException e) {
+                    // Not a legacy table
+                }
+            }
+        }
+
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static List<Integer> listIds(SQLiteDatabase db, String sql) {
+        List<Integer> ids = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        }
+        return ids;
+    }
+
+    private static int count(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    private static boolean tableExists(SQLiteDatabase db, String table) {
+        return count(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = '"
+                + table + "';") > 0;
+    }
+}
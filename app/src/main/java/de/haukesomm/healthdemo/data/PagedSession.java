@@ -0,0 +1,97 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This is a lazy view of a {@link Session}. Instead of holding all measurements in memory it reads
+ * them page by page from the {@link SessionDatabase} it was created by, continuing after the last
+ * timestamp of the previous page.
+ * </p>
+ */
+public class PagedSession extends SessionDescription {
+
+    private final SessionDatabase mDatabase;
+
+    private final int mPageSize;
+
+
+    private long mNextTimestamp = Long.MIN_VALUE;
+
+    private boolean mExhausted;
+
+
+    /**
+     * Creates a new PagedSession.
+     *
+     * @param database      Database to read the measurements from
+     * @param id            Session ID
+     * @param type          Session Type
+     * @param description   Session description
+     * @param pageSize      Maximum number of measurements per page
+     */
+    PagedSession(SessionDatabase database, int id, SessionType type, String description,
+                 int pageSize) {
+        super(id, type, description);
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+
+        mDatabase = database;
+        mPageSize = pageSize;
+    }
+
+
+    /**
+     * This method returns whether there might be further measurements to read.
+     *
+     * @return  false if the last page has been read
+     */
+    public synchronized boolean hasNextPage() {
+        return !mExhausted;
+    }
+
+    /**
+     * This method reads the next page of measurements. It may be called from a background thread.
+     *
+     * @return                          Up to pageSize measurements, empty if there are none left
+     * @throws IllegalStateException    If the database has been closed
+     */
+    public synchronized MeasurementSeries nextPage() throws IllegalStateException {
+        if (mExhausted) {
+            return new MeasurementSeries(0);
+        }
+
+        MeasurementSeries page = mDatabase.getMeasurements(id, mNextTimestamp, Long.MAX_VALUE,
+                mPageSize);
+
+        if (page.size() < mPageSize) {
+            mExhausted = true;
+        } else {
+            // Also known if timestamps are not part of the projection
+            mNextTimestamp = page.getLastTimestamp() + 1;
+        }
+
+        return page;
+    }
+
+    /**
+     * This method returns the maximum number of measurements per page.
+     *
+     * @return  Page size
+     */
+    public int getPageSize() {
+        return mPageSize;
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.location.Address;
+import android.location.Geocoder;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This JobService fills in the place names of Sessions which have not been viewed yet, so the
+ * place search of the {@link SessionDatabase} finds them as well (see
+ * {@link SessionDatabase#listWithoutPlaces(int)}). The addresses of the start and destination of
+ * every Session are looked up with the {@link Geocoder} once a day while the device is charging
+ * and connected to an unmetered network.<br>
+ * Only Sessions whose locations are permitted by the privacy settings get place names. If the
+ * geocoder is unavailable, the job stops and the remaining Sessions are retried on the next run.
+ * </p>
+ */
+public class PlaceIndexJobService extends JobService {
+
+    /**
+     * ID of the scheduled job
+     */
+    public static final int JOB_ID = 2;
+
+
+    private static final long PERIOD = TimeUnit.DAYS.toMillis(1);
+
+    /*
+     * Number of Sessions looked up per run, the geocoder may be rate limited
+     */
+    private static final int BATCH_SIZE = 50;
+
+
+
+    private Thread mWorker;
+
+
+    /**
+     * Schedules the job unless it has been scheduled already.
+     *
+     * @param context   Any context
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null || !Geocoder.isPresent()) {
+            return;
+        }
+
+        // JobScheduler#getPendingJob(int) requires API level 24
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, PlaceIndexJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD)
+                .build());
+    }
+
+
+    // No Javadoc
+    @Override
+    public synchronized boolean onStartJob(final JobParameters params) {
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean interrupted = fillPlaces();
+                if (!interrupted) {
+                    jobFinished(params, false);
+                }
+            }
+        }, "PlaceIndexJobService");
+        mWorker.start();
+
+        return true;
+    }
+
+    // No Javadoc
+    @Override
+    public synchronized boolean onStopJob(JobParameters params) {
+        if (mWorker != null) {
+            mWorker.interrupt();
+            mWorker = null;
+        }
+
+        return true;
+    }
+
+
+    private boolean fillPlaces() {
+        Geocoder geocoder = new Geocoder(this);
+        int filled = 0;
+
+        try (SessionDatabase database = SessionDatabase.acquire(this)) {
+            for (SessionSummary summary : database.listWithoutPlaces(BATCH_SIZE)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return true;
+                }
+
+                MeasurementSeries first = database.getMeasurements(summary.id,
+                        summary.startTime, summary.startTime + 1, 1);
+                if (!first.contains(MeasurementColumn.LOCATION)) {
+                    // The locations are not permitted, so no other Session gets any either
+                    break;
+                }
+                MeasurementSeries last = database.getMeasurements(summary.id,
+                        summary.endTime, summary.endTime + 1, 1);
+
+                // Sessions without any address found are stored as well, so they are not retried
+                List<String> places = new ArrayList<>();
+                for (MeasurementSeries series : new MeasurementSeries[] { first, last }) {
+                    if (!series.isEmpty()) {
+                        String place = getAddress(geocoder, series.getLatitude(0),
+                                series.getLongitude(0));
+                        if (place != null && !places.contains(place)) {
+                            places.add(place);
+                        }
+                    }
+                }
+                database.setPlaces(summary.id, places);
+                filled++;
+            }
+        } catch (IOException e) {
+            Log.e("PlaceIndexJobService", "Geocoder not available: " + e.getMessage());
+        } catch (RuntimeException e) {
+            Log.e("PlaceIndexJobService", "Unable to fill places: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        Log.i("PlaceIndexJobService", "Places filled for " + filled + " Sessions");
+        return false;
+    }
+
+    /*
+     * Returns null if there is no address at the location
+     */
+    private static String getAddress(Geocoder geocoder, double latitude, double longitude)
+            throws IOException {
+
+        List<Address> addresses = geocoder.getFromLocation(latitude, longitude, 1);
+        if (addresses == null || addresses.isEmpty()) {
+            return null;
+        }
+        return addresses.get(0).getAddressLine(0);
+    }
+}
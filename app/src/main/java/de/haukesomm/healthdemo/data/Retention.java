@@ -0,0 +1,201 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.haukesomm.healthdemo.privacy.DownsamplingStage;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS_SESSION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class implements the retention of the {@link SessionDatabase}: Old Sessions are
+ * downsampled to one measurement per interval, the same way the
+ * {@link de.haukesomm.healthdemo.privacy.PrivacyPipeline} does before sharing them, and the pages
+ * freed by that are given back to the file system using incremental vacuum.<br>
+ * Every step only takes a short write lock. Sessions are rewritten one per transaction and the
+ * free pages are released in batches of {@link #VACUUM_PAGES}.
+ * </p>
+ */
+final class Retention {
+
+    /**
+     * Number of pages released per incremental vacuum step
+     */
+    static final int VACUUM_PAGES = 256;
+
+
+    // Value of PRAGMA auto_vacuum
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+
+    private Retention() {
+        // Static helper class
+    }
+
+
+    /**
+     * Returns the IDs of all Sessions which ended before the given time and contain more than
+     * one measurement per interval. The intervals of a Session may be cut by its start and end,
+     * hence the two additional ones. Compacted Sessions are skipped, rewriting them would discard
+     * their heartrate buckets, see {@link Compaction}.<br>
+     * The summary keeps the number of recorded measurements, so the stored ones are only counted
+     * for the Sessions recorded densely enough, which includes the ones downsampled already.
+     *
+     * @param db        Database
+     * @param before    Time the Sessions have to end before (milliseconds since the epoch)
+     * @param interval  Interval in milliseconds
+     * @return          Session IDs, oldest first
+     */
+    static List<Integer> listCandidates(SQLiteDatabase db, long before, long interval) {
+        List<Integer> ids = new ArrayList<>();
+
+        String span = "(m." + SummaryTable.END + " - m." + SummaryTable.START + ") / ?2 + 2";
+        try (Cursor cursor = db.rawQuery("SELECT m." + SummaryTable.SESSION + " FROM "
+                + SummaryTable.TABLE + " m WHERE m." + SummaryTable.END + " < ?1 AND m."
+                + SummaryTable.POINTS + " > " + span + " AND m." + SummaryTable.SESSION
+                + " NOT IN (SELECT " + Compaction.SESSION + " FROM " + Compaction.TABLE_AUDIT
+                + ") AND (SELECT COUNT(*) FROM " + TABLE_MEASUREMENTS + " WHERE "
+                + TABLE_MEASUREMENTS_SESSION + " = m." + SummaryTable.SESSION + ") + (SELECT "
+                + "IFNULL(SUM(" + MeasurementStore.CHUNK_COUNT + "), 0) FROM "
+                + MeasurementStore.TABLE_CHUNKS + " WHERE " + MeasurementStore.CHUNK_SESSION
+                + " = m." + SummaryTable.SESSION + ") > " + span + " ORDER BY m."
+                + SummaryTable.START + ";",
+                new String[] { String.valueOf(before), String.valueOf(interval) })) {
+
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Rewrites a Session keeping only the first measurement of every interval. It keeps its
+     * storage format and place names, and like a compaction its summary and rollups, which
+     * describe the recorded measurements. Its segments are updated by the {@link SessionWriter}.
+     * Call this within a transaction.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param interval  Interval in milliseconds
+     * @return          Number of removed measurements
+     */
+    static int downsample(SQLiteDatabase db, int sessionId, long interval) {
+        SessionSummary summary;
+        try (Cursor cursor = db.rawQuery(SummaryTable.SELECT_JOINED + " WHERE s."
+                + TABLE_SESSIONS_ID + " = " + sessionId + ";", null)) {
+
+            if (!cursor.moveToFirst()) {
+                return 0;
+            }
+            summary = SummaryTable.read(cursor);
+        }
+
+        Session session = new Session(summary.id, summary.type, summary.description);
+        final MeasurementSeries kept = session.getMeasurements();
+
+        int total = MeasurementStore.forEach(db, sessionId, Long.MIN_VALUE, Long.MAX_VALUE,
+                new DownsamplingStage(interval, new MeasurementVisitor() {
+                    @Override
+                    public void visit(long timestamp, int utcOffset, double latitude,
+                                      double longitude, int heartrate) {
+                        kept.add(timestamp, utcOffset, latitude, longitude, heartrate);
+                    }
+                }));
+
+        if (kept.size() == total) {
+            return 0;
+        }
+
+        StorageFormat format = MeasurementStore.getFormat(db, sessionId);
+        String places = SearchIndex.getPlaces(db, sessionId);
+        try (SessionWriter writer = new SessionWriter(db, format, false)) {
+            writer.write(session);
+        }
+        if (places != null) {
+            SearchIndex.setPlaces(db, sessionId, places);
+        }
+
+        // The summary of the recorded measurements replaces the one just written
+        try (SQLiteStatement insert = SummaryTable.compileInsert(db)) {
+            SummaryTable.write(insert, summary, format);
+        }
+
+        return total - kept.size();
+    }
+
+
+    /**
+     * Switches the database over to incremental vacuum with a full VACUUM unless it uses it
+     * already. This rewrites the whole file under an exclusive lock, so it is only called by the
+     * migrations while the progress is shown. Must not be called within a transaction.
+     *
+     * @param db    Database
+     */
+    static void enableIncrementalVacuum(SQLiteDatabase db) {
+        if (getPragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            // Only takes effect for an existing file after a full VACUUM
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+            db.execSQL("VACUUM;");
+        }
+    }
+
+    /**
+     * Returns the free pages of the database file to the file system in batches of
+     * {@link #VACUUM_PAGES} using incremental vacuum. Nothing is freed if the database has not
+     * been switched over yet, see {@link #enableIncrementalVacuum(SQLiteDatabase)}. Must not be
+     * called within a transaction.
+     *
+     * @param db    Database
+     * @return      Number of bytes freed
+     */
+    static long reclaimSpace(SQLiteDatabase db) {
+        long before = getSize(db);
+
+        if (getPragma(db, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            return 0L;
+        }
+
+        while (getPragma(db, "freelist_count") > 0 && !Thread.currentThread().isInterrupted()) {
+            // Every step of the statement releases one page, so it has to be run to completion
+            try (Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ");",
+                    null)) {
+                while (cursor.moveToNext()) {
+                    // Nothing to read
+                }
+            }
+        }
+
+        return before - getSize(db);
+    }
+
+    private static long getSize(SQLiteDatabase db) {
+        return getPragma(db, "page_count") * getPragma(db, "page_size");
+    }
+
+    private static long getPragma(SQLiteDatabase db, String pragma) {
+        try (Cursor cursor = db.rawQuery("PRAGMA " + pragma + ";", null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        }
+    }
+}
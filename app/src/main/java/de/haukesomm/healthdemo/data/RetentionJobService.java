@@ -0,0 +1,146 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import de.haukesomm.healthdemo.privacy.PrivacyProjection;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This JobService applies the retention policy of the {@link SessionDatabase} once a day while the
+ * device is idle and charging: Sessions older than {@link #COMPACTION_AGE} are compacted (see
+ * {@link SessionDatabase#compact(long)}). If data is submitted automatically, Sessions older than
+ * the data collection interval have been submitted already and are downsampled to the interval of
+ * the active {@link de.haukesomm.healthdemo.privacy.PrivacyMode} (see
+ * {@link SessionDatabase#applyRetention(long, long)}). Otherwise they are kept as they are.<br>
+ * The work is done on a separate thread which is interrupted as soon as the system stops the job.
+ * A stopped job is retried later.
+ * </p>
+ */
+public class RetentionJobService extends JobService {
+
+    /**
+     * ID of the scheduled job
+     */
+    public static final int JOB_ID = 1;
+
+    /**
+     * Age after which Sessions are compacted
+     */
+    public static final long COMPACTION_AGE = TimeUnit.DAYS.toMillis(365);
+
+
+    private static final long PERIOD = TimeUnit.DAYS.toMillis(1);
+
+
+
+    private Thread mWorker;
+
+
+    /**
+     * Schedules the job unless it has been scheduled already.
+     *
+     * @param context   Any context
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            return;
+        }
+
+        // JobScheduler#getPendingJob(int) requires API level 24
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, RetentionJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD)
+                .build());
+    }
+
+
+    // No Javadoc
+    @Override
+    public synchronized boolean onStartJob(final JobParameters params) {
+        mWorker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean interrupted = applyRetention();
+                if (!interrupted) {
+                    jobFinished(params, false);
+                }
+            }
+        }, "RetentionJobService");
+        mWorker.start();
+
+        return true;
+    }
+
+    // No Javadoc
+    @Override
+    public synchronized boolean onStopJob(JobParameters params) {
+        if (mWorker != null) {
+            mWorker.interrupt();
+            mWorker = null;
+        }
+
+        return true;
+    }
+
+
+    private boolean applyRetention() {
+        long age;
+        long interval;
+        try (PrivacyProjection privacy = new PrivacyProjection(this)) {
+            age = privacy.getCollectionInterval();
+            interval = privacy.isAutomatic() ? privacy.getInterval() : 0L;
+        }
+
+        try (SessionDatabase database = SessionDatabase.acquire(this)) {
+            long now = System.currentTimeMillis();
+
+            // Compacted first, so the buckets are computed from the full resolution
+            CompactionReport compaction = database.compact(now - COMPACTION_AGE);
+            Log.i("RetentionJobService", "Compaction applied: " + compaction);
+            if (compaction.interrupted) {
+                return true;
+            }
+
+            // Frees the pages released by the compaction even if nothing is downsampled
+            RetentionReport report = database.applyRetention(now - age, interval);
+            Log.i("RetentionJobService", "Retention applied: " + report);
+
+            return report.interrupted;
+        } catch (RuntimeException e) {
+            Log.e("RetentionJobService", "Unable to apply retention: " + e.getMessage());
+            e.printStackTrace();
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.Locale;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This is a data class describing the outcome of a retention run of the {@link SessionDatabase}.
+ * </p>
+ */
+public class RetentionReport {
+
+    /**
+     * Number of downsampled Sessions
+     */
+    public final int sessions;
+
+    /**
+     * Number of removed measurements
+     */
+    public final long measurements;
+
+    /**
+     * Number of bytes returned to the file system
+     */
+    public final long bytesFreed;
+
+    /**
+     * Time the whole run took in nanoseconds
+     */
+    public final long durationNanos;
+
+    /**
+     * Whether the run was interrupted before all Sessions were processed
+     */
+    public final boolean interrupted;
+
+
+    /**
+     * Creates a new RetentionReport from the given attributes.
+     *
+     * @param sessions      Number of downsampled Sessions
+     * @param measurements  Number of removed measurements
+     * @param bytesFreed    Number of bytes returned to the file system
+     * @param durationNanos Duration of the run in nanoseconds
+     * @param interrupted   Whether the run was interrupted
+     */
+    RetentionReport(int sessions, long measurements, long bytesFreed, long durationNanos,
+                    boolean interrupted) {
+        this.sessions = sessions;
+        this.measurements = measurements;
+        this.bytesFreed = bytesFreed;
+        this.durationNanos = durationNanos;
+        this.interrupted = interrupted;
+    }
+
+
+    // No JavaDoc
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d sessions, %d measurements removed, %d bytes freed "
+                        + "in %.1f ms%s", sessions, measurements, bytesFreed, durationNanos / 1e6,
+                interrupted ? " (interrupted)" : "");
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.Arrays;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class contains heartrate aggregates of all Sessions grouped into time buckets of a certain
+ * {@link Resolution}. Bucket start times are given in local time, i.e. milliseconds since the epoch
+ * shifted by the zone offset the measurements were recorded in, so that a day bucket always covers
+ * a calendar day of the user.
+ * </p>
+ */
+public class Rollup {
+
+    /**
+     * This enum defines all available bucket sizes.
+     */
+    public enum Resolution {
+
+        /**
+         * One bucket per minute
+         */
+        MINUTE(60_000L, "rollup_minute"),
+
+        /**
+         * One bucket per hour
+         */
+        HOUR(3_600_000L, "rollup_hour"),
+
+        /**
+         * One bucket per calendar day
+         */
+        DAY(86_400_000L, "rollup_day"),
+
+        /**
+         * One bucket per calendar week starting on Monday
+         */
+        WEEK(604_800_000L, "rollup_week");
+
+
+        // The epoch started on a Thursday, the first Monday before it was three days earlier
+        private static final long WEEK_ALIGNMENT = 3 * 86_400_000L;
+
+
+        /**
+         * Size of a bucket in milliseconds
+         */
+        public final long millis;
+
+        final String table;
+
+
+        Resolution(long millis, String table) {
+            this.millis = millis;
+            this.table = table;
+        }
+
+
+        /**
+         * Returns the start of the bucket containing the given local time.
+         *
+         * @param localTime Local time in milliseconds since the epoch
+         * @return          Start of the bucket
+         */
+        public long bucketOf(long localTime) {
+            long alignment = this == WEEK ? WEEK_ALIGNMENT : 0L;
+            long shifted = localTime + alignment;
+            long bucket = shifted / millis;
+            if (shifted % millis != 0 && shifted < 0) {
+                bucket--;
+            }
+            return bucket * millis - alignment;
+        }
+
+        /**
+         * Returns the finest Resolution whose number of buckets within the given time range does
+         * not exceed the given point budget. If even {@link #WEEK} exceeds it, WEEK is returned.
+         *
+         * @param from      Start of the range (local time, inclusive)
+         * @param to        End of the range (local time, exclusive)
+         * @param maxPoints Maximum number of buckets
+         * @return          Resolution
+         */
+        public static Resolution forRange(long from, long to, int maxPoints) {
+            for (Resolution resolution : values()) {
+                long buckets = (resolution.bucketOf(to - 1) - resolution.bucketOf(from))
+                        / resolution.millis + 1;
+                if (buckets <= maxPoints) {
+                    return resolution;
+                }
+            }
+            return WEEK;
+        }
+    }
+
+
+
+    /**
+     * Resolution of the buckets
+     */
+    public final Resolution resolution;
+
+
+    private long[] mBuckets;
+
+    private int[] mCounts;
+
+    private long[] mHeartrateSums;
+
+    private int[] mMinHeartrates;
+
+    private int[] mMaxHeartrates;
+
+    private int mSize;
+
+
+    Rollup(Resolution resolution, int capacity) {
+        this.resolution = resolution;
+        capacity = Math.max(capacity, 1);
+        mBuckets = new long[capacity];
+        mCounts = new int[capacity];
+        mHeartrateSums = new long[capacity];
+        mMinHeartrates = new int[capacity];
+        mMaxHeartrates = new int[capacity];
+    }
+
+
+    /**
+     * Returns the number of non-empty buckets.
+     *
+     * @return  Number of buckets
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the start of a bucket.
+     *
+     * @param index Index of the bucket
+     * @return      Start of the bucket (local time)
+     */
+    public long getBucketStart(int index) {
+        checkIndex(index);
+        return mBuckets[index];
+    }
+
+    /**
+     * Returns the number of measurements in a bucket.
+     *
+     * @param index Index of the bucket
+     * @return      Number of measurements
+     */
+    public int getCount(int index) {
+        checkIndex(index);
+        return mCounts[index];
+    }
+
+    /**
+     * Returns the average heartrate of a bucket.
+     *
+     * @param index Index of the bucket
+     * @return      Average heartrate
+     */
+    public double getAverageHeartrate(int index) {
+        checkIndex(index);
+        return (double) mHeartrateSums[index] / mCounts[index];
+    }
+
+    /**
+     * Returns the lowest heartrate of a bucket.
+     *
+     * @param index Index of the bucket
+     * @return      Lowest heartrate
+     */
+    public int getMinHeartrate(int index) {
+        checkIndex(index);
+        return mMinHeartrates[index];
+    }
+
+    /**
+     * Returns the highest heartrate of a bucket.
+     *
+     * @param index Index of the bucket
+     * @return      Highest heartrate
+     */
+    public int getMaxHeartrate(int index) {
+        checkIndex(index);
+        return mMaxHeartrates[index];
+    }
+
+
+    long getHeartrateSum(int index) {
+        checkIndex(index);
+        return mHeartrateSums[index];
+    }
+
+    void add(long bucket, int count, long heartrateSum, int minHeartrate, int maxHeartrate) {
+        if (mSize == mBuckets.length) {
+            int capacity = mSize * 2;
+            mBuckets = Arrays.copyOf(mBuckets, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+            mHeartrateSums = Arrays.copyOf(mHeartrateSums, capacity);
+            mMinHeartrates = Arrays.copyOf(mMinHeartrates, capacity);
+            mMaxHeartrates = Arrays.copyOf(mMaxHeartrates, capacity);
+        }
+        mBuckets[mSize] = bucket;
+        mCounts[mSize] = count;
+        mHeartrateSums[mSize] = heartrateSum;
+        mMinHeartrates[mSize] = minHeartrate;
+        mMaxHeartrates[mSize] = maxHeartrate;
+        mSize++;
+    }
+
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+        }
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import de.haukesomm.healthdemo.data.Rollup.Resolution;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class manages the rollup tables of the {@link SessionDatabase}. There is one table per
+ * {@link Resolution} containing the number of measurements as well as the sum, minimum and maximum
+ * heartrate of each (local time) bucket.<br>
+ * The tables are updated incrementally: Added measurements are merged into their buckets, removed
+ * Sessions are subtracted from the minute buckets and the coarser buckets they belong to are
+ * recomputed from the next finer resolution.
+ * </p>
+ */
+final class RollupTables {
+
+    static final String BUCKET = "bucket";
+
+    static final String COUNT = "count";
+
+    static final String HEARTRATE_SUM = "heartrate_sum";
+
+    static final String HEARTRATE_MIN = "heartrate_min";
+
+    static final String HEARTRATE_MAX = "heartrate_max";
+
+
+    // Zone offsets range from -12:00 to +14:00
+    private static final long MAX_OFFSET = 14 * 3_600_000L;
+
+
+    private RollupTables() {
+        // Static helper class
+    }
+
+
+    static void create(SQLiteDatabase db) {
+        for (Resolution resolution : Resolution.values()) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + resolution.table + " ("
+                    + BUCKET        + " INTEGER NOT NULL PRIMARY KEY, "
+                    + COUNT         + " INTEGER NOT NULL, "
+                    + HEARTRATE_SUM + " INTEGER NOT NULL, "
+                    + HEARTRATE_MIN + " INTEGER NOT NULL, "
+                    + HEARTRATE_MAX + " INTEGER NOT NULL);");
+        }
+    }
+
+
+    /**
+     * Adds all stored measurements of a single Session to the rollup tables. Sessions stored as
+     * {@link StorageFormat#ENCRYPTED} are skipped, their heartrates are never aggregated in plain
+     * text.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     */
+    static void addSession(SQLiteDatabase db, int sessionId) {
+        if (MeasurementStore.getFormat(db, sessionId) == StorageFormat.ENCRYPTED) {
+            return;
+        }
+
+        try (final Updater updater = new Updater(db)) {
+            MeasurementStore.forEach(db, sessionId, Long.MIN_VALUE, Long.MAX_VALUE,
+                    new MeasurementVisitor() {
+                @Override
+                public void visit(long timestamp, int utcOffset, double latitude,
+                                  double longitude, int heartrate) {
+                    updater.add(timestamp, utcOffset, heartrate);
+                }
+            });
+            updater.flush();
+        }
+    }
+
+    /**
+     * Subtracts all measurements of a single Session from the rollup tables. This has to be called
+     * before the measurements, the format and the compacted data of the Session are replaced.
+     * Compacted Sessions are subtracted using their heartrate buckets, which still describe the
+     * recorded measurements (see {@link Compaction}). Sessions stored as
+     * {@link StorageFormat#ENCRYPTED} are skipped, they have never been added.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     */
+    static void removeSession(SQLiteDatabase db, int sessionId) {
+        if (MeasurementStore.getFormat(db, sessionId) == StorageFormat.ENCRYPTED) {
+            return;
+        }
+
+        subtract(db, sessionId, getShare(db, sessionId));
+    }
+
+    /**
+     * Subtracts the share of a single Session from the rollup tables, e.g. the one written by an
+     * {@link Updater} (see {@link Updater#getWritten()}).
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param removed   Share of the Session in {@link Resolution#MINUTE} buckets
+     */
+    static void subtract(SQLiteDatabase db, int sessionId, Rollup removed) {
+        final String minutes = Resolution.MINUTE.table;
+
+        Set<Long> affected = new LinkedHashSet<>();
+
+        try (SQLiteStatement subtract = db.compileStatement("UPDATE " + minutes + " SET "
+                     + COUNT + " = " + COUNT + " - ?, "
+                     + HEARTRATE_SUM + " = " + HEARTRATE_SUM + " - ? WHERE " + BUCKET + " = ?;");
+             SQLiteStatement deleteEmpty = db.compileStatement("DELETE FROM " + minutes
+                     + " WHERE " + BUCKET + " = ? AND " + COUNT + " <= 0;")) {
+
+            for (int i = 0; i < removed.size(); i++) {
+                long bucket = removed.getBucketStart(i);
+                affected.add(bucket);
+
+                subtract.bindLong(1, removed.getCount(i));
+                subtract.bindLong(2, removed.getHeartrateSum(i));
+                subtract.bindLong(3, bucket);
+                subtract.executeUpdateDelete();
+
+                deleteEmpty.bindLong(1, bucket);
+                if (deleteEmpty.executeUpdateDelete() == 0) {
+                    restoreExtremes(db, sessionId, bucket, removed.getMinHeartrate(i),
+                            removed.getMaxHeartrate(i));
+                }
+            }
+        }
+
+        Resolution[] resolutions = Resolution.values();
+        for (int i = 1; i < resolutions.length; i++) {
+            Set<Long> coarser = new LinkedHashSet<>();
+            for (long bucket : affected) {
+                coarser.add(resolutions[i].bucketOf(bucket));
+            }
+            for (long bucket : coarser) {
+                recompute(db, resolutions[i], resolutions[i - 1], bucket);
+            }
+            affected = coarser;
+        }
+    }
+
+    /*
+     * The share of a Session in the minute table. Compacted Sessions only store a simplified route,
+     * their share is kept in their buckets instead.
+     */
+    private static Rollup getShare(SQLiteDatabase db, int sessionId) {
+        Rollup buckets = Compaction.getBuckets(db, sessionId);
+        if (buckets.size() > 0) {
+            return buckets;
+        }
+
+        MeasurementSeries series = new MeasurementSeries();
+        MeasurementStore.read(db, sessionId, Long.MIN_VALUE, Long.MAX_VALUE, -1, series);
+
+        // Runs of measurements within the same minute are combined
+        Rollup share = new Rollup(Resolution.MINUTE, series.size() / 60);
+        int i = 0;
+        while (i < series.size()) {
+            long bucket = localMinute(series, i);
+            long sum = 0L;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+
+            int start = i;
+            for (; i < series.size() && localMinute(series, i) == bucket; i++) {
+                sum += series.getHeartrate(i);
+                min = Math.min(min, series.getHeartrate(i));
+                max = Math.max(max, series.getHeartrate(i));
+            }
+            share.add(bucket, i - start, sum, min, max);
+        }
+
+        return share;
+    }
+
+    private static long localMinute(MeasurementSeries series, int index) {
+        return Resolution.MINUTE.bucketOf(
+                series.getTimestamp(index) + series.getUtcOffset(index) * 60_000L);
+    }
+
+    /*
+     * Minimum and maximum can not be subtracted. If the removed Session contributed the extreme
+     * value of a minute it is looked up again in the other Sessions overlapping that minute,
+     * except for encrypted ones. Compacted Sessions are looked up in their buckets.
+     */
+    private static void restoreExtremes(SQLiteDatabase db, int sessionId, long bucket,
+                                        int removedMin, int removedMax) {
+
+        try (Cursor extremes = db.rawQuery("SELECT " + HEARTRATE_MIN + ", " + HEARTRATE_MAX
+                + " FROM " + Resolution.MINUTE.table + " WHERE " + BUCKET + " = " + bucket
+                + ";", null)) {
+
+            if (!extremes.moveToFirst() || (extremes.getInt(0) < removedMin
+                    && extremes.getInt(1) > removedMax)) {
+                return;
+            }
+        }
+
+        // The bucket is in local time, the measurements may have been recorded in any zone
+        final long from = bucket - MAX_OFFSET;
+        final long to = bucket + Resolution.MINUTE.millis + MAX_OFFSET;
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+
+        try (Cursor cursor = db.query(SummaryTable.TABLE, new String[] { SummaryTable.SESSION },
+                SummaryTable.START + " < ? AND " + SummaryTable.END + " >= ? AND "
+                        + SummaryTable.SESSION + " != ?",
+                new String[] { String.valueOf(to), String.valueOf(from),
+                        String.valueOf(sessionId) }, null, null, null)) {
+
+            MeasurementSeries series = new MeasurementSeries();
+            while (cursor.moveToNext()) {
+                int other = cursor.getInt(0);
+                if (MeasurementStore.getFormat(db, other) == StorageFormat.ENCRYPTED) {
+                    // Not part of the rollups
+                    continue;
+                }
+
+                if (Compaction.isCompacted(db, other)) {
+                    try (Cursor bucketCursor = db.query(Compaction.TABLE_BUCKETS, new String[] {
+                            Compaction.HEARTRATE_MIN, Compaction.HEARTRATE_MAX },
+                            Compaction.SESSION + " = " + other + " AND " + Compaction.BUCKET
+                                    + " = " + bucket, null, null, null, null)) {
+
+                        if (bucketCursor.moveToFirst()) {
+                            min = Math.min(min, bucketCursor.getInt(0));
+                            max = Math.max(max, bucketCursor.getInt(1));
+                        }
+                    }
+                    continue;
+                }
+
+                series.clear();
+                MeasurementStore.read(db, other, from, to, -1, series);
+
+                for (int i = 0; i < series.size(); i++) {
+                    if (localMinute(series, i) == bucket) {
+                        min = Math.min(min, series.getHeartrate(i));
+                        max = Math.max(max, series.getHeartrate(i));
+                    }
+                }
+            }
+        }
+
+        if (min <= max) {
+            db.execSQL("UPDATE " + Resolution.MINUTE.table + " SET "
+                    + HEARTRATE_MIN + " = ?, " + HEARTRATE_MAX + " = ? WHERE " + BUCKET
+                    + " = ?;", new Object[] { min, max, bucket });
+        }
+    }
+
+    private static void recompute(SQLiteDatabase db, Resolution resolution, Resolution finer,
+                                  long bucket) {
+
+        db.execSQL("DELETE FROM " + resolution.table + " WHERE " + BUCKET + " = ?;",
+                new Object[] { bucket });
+        // Older SQLite versions do not allow HAVING without GROUP BY, hence the sub-query
+        db.execSQL("INSERT INTO " + resolution.table + " SELECT * FROM (SELECT ? AS b, "
+                + "SUM(" + COUNT + ") AS c, SUM(" + HEARTRATE_SUM + "), MIN(" + HEARTRATE_MIN
+                + "), MAX(" + HEARTRATE_MAX + ") FROM " + finer.table + " WHERE " + BUCKET
+                + " >= ? AND " + BUCKET + " < ?) WHERE c IS NOT NULL;",
+                new Object[] { bucket, bucket, bucket + resolution.millis });
+    }
+
+
+    /**
+     * Returns the heartrate rollup of a time range using the finest {@link Resolution} that fits
+     * into the given point budget.
+     *
+     * @param db        Database
+     * @param from      Start of the range (local time, inclusive)
+     * @param to        End of the range (local time, exclusive)
+     * @param maxPoints Maximum number of buckets
+     * @return          Rollup
+     */
+    static Rollup query(SQLiteDatabase db, long from, long to, int maxPoints) {
+        Resolution resolution = Resolution.forRange(from, to, maxPoints);
+
+        try (Cursor cursor = db.query(resolution.table,
+                new String[] { BUCKET, COUNT, HEARTRATE_SUM, HEARTRATE_MIN, HEARTRATE_MAX },
+                BUCKET + " >= ? AND " + BUCKET + " < ?",
+                new String[] { String.valueOf(resolution.bucketOf(from)), String.valueOf(to) },
+                null, null, BUCKET, String.valueOf(maxPoints))) {
+
+            Rollup rollup = new Rollup(resolution, cursor.getCount());
+            while (cursor.moveToNext()) {
+                rollup.add(cursor.getLong(0), cursor.getInt(1), cursor.getLong(2),
+                        cursor.getInt(3), cursor.getInt(4));
+            }
+            return rollup;
+        }
+    }
+
+
+
+    /**
+     * This class merges a stream of measurements into the rollup tables. Consecutive measurements
+     * falling into the same bucket are aggregated in memory, so each bucket is only written once
+     * per run of measurements.<br>
+     * The {@link Resolution#MINUTE} buckets written are recorded until {@link #clearWritten()} is
+     * called, so they can be subtracted again if the stream turns out to contain measurements
+     * the storage does not keep.
+     */
+    static class Updater implements AutoCloseable {
+
+        private final Resolution[] mResolutions = Resolution.values();
+
+        private final SQLiteStatement[] mInserts = new SQLiteStatement[mResolutions.length];
+
+        private final SQLiteStatement[] mUpdates = new SQLiteStatement[mResolutions.length];
+
+
+        private final long[] mBuckets = new long[mResolutions.length];
+
+        private final int[] mCounts = new int[mResolutions.length];
+
+        private final long[] mSums = new long[mResolutions.length];
+
+        private final int[] mMins = new int[mResolutions.length];
+
+        private final int[] mMaxs = new int[mResolutions.length];
+
+
+        private Rollup mWritten = new Rollup(Resolution.MINUTE, 64);
+
+
+        Updater(SQLiteDatabase db) {
+            for (int i = 0; i < mResolutions.length; i++) {
+                String table = mResolutions[i].table;
+                mInserts[i] = db.compileStatement("INSERT OR IGNORE INTO " + table
+                        + " VALUES (?, 0, 0, ?, ?);");
+                mUpdates[i] = db.compileStatement("UPDATE " + table + " SET "
+                        + COUNT + " = " + COUNT + " + ?, "
+                        + HEARTRATE_SUM + " = " + HEARTRATE_SUM + " + ?, "
+                        + HEARTRATE_MIN + " = min(" + HEARTRATE_MIN + ", ?), "
+                        + HEARTRATE_MAX + " = max(" + HEARTRATE_MAX + ", ?) "
+                        + "WHERE " + BUCKET + " = ?;");
+            }
+        }
+
+
+        /**
+         * Adds a single measurement.
+         *
+         * @param timestamp Timestamp in milliseconds since the epoch (UTC)
+         * @param utcOffset Zone offset the timestamp was recorded in (minutes)
+         * @param heartrate The user's heartrate
+         */
+        void add(long timestamp, int utcOffset, int heartrate) {
+            long local = timestamp + utcOffset * 60_000L;
+
+            for (int i = 0; i < mResolutions.length; i++) {
+                long bucket = mResolutions[i].bucketOf(local);
+                if (mCounts[i] > 0 && bucket != mBuckets[i]) {
+                    flush(i);
+                }
+                if (mCounts[i] == 0) {
+                    mBuckets[i] = bucket;
+                    mMins[i] = heartrate;
+                    mMaxs[i] = heartrate;
+                }
+                mCounts[i]++;
+                mSums[i] += heartrate;
+                mMins[i] = Math.min(mMins[i], heartrate);
+                mMaxs[i] = Math.max(mMaxs[i], heartrate);
+            }
+        }
+
+        /**
+         * Returns the {@link Resolution#MINUTE} buckets written since the last call of
+         * {@link #clearWritten()}. A bucket may appear more than once if the stream returned to it.
+         *
+         * @return  Rollup of the written buckets
+         */
+        Rollup getWritten() {
+            return mWritten;
+        }
+
+        /**
+         * Forgets the buckets written so far, e.g. at the start of a new Session.
+         */
+        void clearWritten() {
+            mWritten = new Rollup(Resolution.MINUTE, 64);
+        }
+
+        /**
+         * Writes out all buckets aggregated in memory.
+         */
+        void flush() {
+            for (int i = 0; i < mResolutions.length; i++) {
+                if (mCounts[i] > 0) {
+                    flush(i);
+                }
+            }
+        }
+
+        private void flush(int i) {
+            mInserts[i].bindLong(1, mBuckets[i]);
+            mInserts[i].bindLong(2, mMins[i]);
+            mInserts[i].bindLong(3, mMaxs[i]);
+            mInserts[i].executeInsert();
+
+            mUpdates[i].bindLong(1, mCounts[i]);
+            mUpdates[i].bindLong(2, mSums[i]);
+            mUpdates[i].bindLong(3, mMins[i]);
+            mUpdates[i].bindLong(4, mMaxs[i]);
+            mUpdates[i].bindLong(5, mBuckets[i]);
+            mUpdates[i].executeUpdateDelete();
+
+            if (mResolutions[i] == Resolution.MINUTE) {
+                mWritten.add(mBuckets[i], mCounts[i], mSums[i], mMins[i], mMaxs[i]);
+            }
+
+            mCounts[i] = 0;
+            mSums[i] = 0L;
+        }
+
+
+        // No Javadoc
+        @Override
+        public void close() {
+            for (int i = 0; i < mResolutions.length; i++) {
+                mInserts[i].close();
+                mUpdates[i].close();
+            }
+        }
+    }
+}
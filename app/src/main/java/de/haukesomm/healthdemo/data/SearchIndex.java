@@ -0,0 +1,272 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_DESCRIPTION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_STORAGE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_TYPE;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class manages the <code>session_search</code> table of the {@link SessionDatabase}, an FTS4
+ * index over the description, the type alias and the place names of every Session. The rowid of
+ * the index is the ID of the Session.<br>
+ * Every word of a query is matched as a prefix. Prefixes of up to {@link #PREFIXES} characters are
+ * indexed separately, so the first few characters typed do not have to scan a range of the term
+ * dictionary. Results are ranked by BM25 computed from <code>matchinfo()</code>, only the best ones
+ * are kept while the matches are read.
+ * </p>
+ */
+final class SearchIndex {
+
+    static final String TABLE = "session_search";
+
+    static final String DESCRIPTION = "description";
+
+    static final String TYPE = "type";
+
+    static final String PLACES = "places";
+
+
+    /*
+     * Lengths of the separately indexed prefixes
+     */
+    private static final String PREFIXES = "1,2,3";
+
+
+    /*
+     * Weight of a hit in each column, in column order
+     */
+    private static final double[] WEIGHTS = { 1.0, 0.5, 0.75 };
+
+    private static final double BM25_K1 = 1.2;
+
+    private static final double BM25_B = 0.75;
+
+
+    private SearchIndex() {
+        // Static helper class
+    }
+
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE + " USING fts4("
+                + DESCRIPTION + ", " + TYPE + ", " + PLACES + ", "
+                + "prefix=\"" + PREFIXES + "\");");
+    }
+
+    static SQLiteStatement compileInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT INTO " + TABLE + " (docid, " + DESCRIPTION + ", "
+                + TYPE + ") VALUES (?, ?, ?);");
+    }
+
+    /**
+     * Adds a Session to the index. Its old entry has to be deleted beforehand.
+     *
+     * @param insert        Statement compiled by {@link #compileInsert(SQLiteDatabase)}
+     * @param description   Session to add
+     */
+    static void write(SQLiteStatement insert, SessionDescription description) {
+        insert.bindLong(1, description.id);
+        insert.bindString(2, description.description);
+        insert.bindString(3, description.type.alias);
+        insert.executeInsert();
+    }
+
+    static void delete(SQLiteDatabase db, int sessionId) {
+        db.delete(TABLE, "docid = " + sessionId, null);
+    }
+
+    /**
+     * Adds all Sessions without an entry to the index.
+     *
+     * @param db    Database
+     */
+    static void addMissing(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + TABLE + " (docid, " + DESCRIPTION + ", " + TYPE + ") "
+                + "SELECT " + TABLE_SESSIONS_ID + ", " + TABLE_SESSIONS_DESCRIPTION + ", "
+                + TABLE_SESSIONS_TYPE + " FROM " + TABLE_SESSIONS + " WHERE "
+                + TABLE_SESSIONS_ID + " NOT IN (SELECT docid FROM " + TABLE + ");");
+    }
+
+    /**
+     * Selects the IDs of all Sessions whose place names have not been stored yet, excluding the
+     * ones stored as {@link StorageFormat#ENCRYPTED}. The places column is not indexed, so this
+     * scans the whole index.
+     */
+    static final String SELECT_WITHOUT_PLACES = "SELECT docid FROM " + TABLE + " WHERE " + PLACES
+            + " IS NULL AND docid NOT IN (SELECT " + TABLE_SESSIONS_ID + " FROM " + TABLE_SESSIONS
+            + " WHERE " + TABLE_SESSIONS_STORAGE + " = " + StorageFormat.ENCRYPTED.code + ")";
+
+
+    /**
+     * Returns the place names of a Session.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @return          Place names separated by line breaks, null if there are none
+     */
+    static String getPlaces(SQLiteDatabase db, int sessionId) {
+        try (Cursor cursor = db.query(TABLE, new String[] { PLACES }, "docid = " + sessionId,
+                null, null, null, null)) {
+
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    /**
+     * Replaces the place names of a Session. Sessions stored as {@link StorageFormat#ENCRYPTED}
+     * keep none, the places would reveal their route in plain text.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     * @param places    Place names separated by line breaks
+     */
+    static void setPlaces(SQLiteDatabase db, int sessionId, String places) {
+        if (MeasurementStore.getFormat(db, sessionId) == StorageFormat.ENCRYPTED) {
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(PLACES, places);
+        db.update(TABLE, values, "docid = " + sessionId, null);
+    }
+
+
+    /**
+     * Converts user input into an FTS query matching every word as a prefix. Characters which
+     * have a meaning in the query syntax are treated as separators, just like the tokenizer does.
+     *
+     * @param input Text entered by the user
+     * @return      FTS query or null if the input does not contain any words
+     */
+    static String toQuery(String input) {
+        StringBuilder query = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+
+        for (int i = 0; i <= input.length(); i++) {
+            char c = i < input.length() ? input.charAt(i) : ' ';
+
+            // The default tokenizer treats all non-ASCII characters as part of a word
+            if (c >= 128 || Character.isLetterOrDigit(c)) {
+                // Only ASCII is folded by the tokenizer, so only ASCII is folded here
+                word.append(c < 128 ? Character.toLowerCase(c) : c);
+            } else if (word.length() > 0) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    /**
+     * Returns the IDs of the best matching Sessions.
+     *
+     * @param db    Database
+     * @param query Query created by {@link #toQuery(String)}
+     * @param limit Maximum number of IDs to return
+     * @return      Session IDs, best match first
+     */
+    static List<Integer> search(SQLiteDatabase db, String query, int limit) {
+        // Lowest score on top, so it can be replaced by a better one
+        PriorityQueue<double[]> best = new PriorityQueue<>(Math.max(limit, 1),
+                new Comparator<double[]>() {
+            @Override
+            public int compare(double[] a, double[] b) {
+                return Double.compare(a[1], b[1]);
+            }
+        });
+
+        try (Cursor cursor = db.rawQuery("SELECT docid, matchinfo(" + TABLE + ", 'pcnalx') FROM "
+                + TABLE + " WHERE " + TABLE + " MATCH ?;", new String[] { query })) {
+
+            while (cursor.moveToNext()) {
+                double score = score(cursor.getBlob(1));
+                if (best.size() < limit) {
+                    best.add(new double[] { cursor.getInt(0), score });
+                } else if (limit > 0 && score > best.peek()[1]) {
+                    best.poll();
+                    best.add(new double[] { cursor.getInt(0), score });
+                }
+            }
+        }
+
+        List<Integer> ids = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            ids.add((int) best.poll()[0]);
+        }
+        Collections.reverse(ids);
+
+        return ids;
+    }
+
+    /*
+     * Layout of matchinfo 'pcnalx' (32 bit unsigned integers in native byte order):
+     * phrases, columns, rows, average tokens per column, tokens per column of this row and for
+     * every phrase and column the hits in this row, in all rows and the number of rows with hits.
+     */
+    static double score(byte[] matchinfo) {
+        ByteBuffer info = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+
+        int phrases = info.getInt(0);
+        int columns = info.getInt(4);
+        long rows = info.getInt(8) & 0xffffffffL;
+        int averageLengths = 12;
+        int lengths = averageLengths + 4 * columns;
+        int hits = lengths + 4 * columns;
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns && column < WEIGHTS.length; column++) {
+                int offset = hits + 12 * (phrase * columns + column);
+                int hitsInRow = info.getInt(offset);
+                if (hitsInRow == 0) {
+                    continue;
+                }
+                int rowsWithHits = info.getInt(offset + 8);
+
+                double idf = Math.log((rows - rowsWithHits + 0.5) / (rowsWithHits + 0.5));
+                // Terms contained in most rows would get a negative weight otherwise
+                idf = Math.max(idf, 1e-6);
+
+                double length = info.getInt(lengths + 4 * column);
+                double averageLength = Math.max(info.getInt(averageLengths + 4 * column), 1);
+                double tf = hitsInRow * (BM25_K1 + 1) / (hitsInRow
+                        + BM25_K1 * (1 - BM25_B + BM25_B * length / averageLength));
+
+                score += WEIGHTS[column] * idf * tf;
+            }
+        }
+
+        return score;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class manages the <code>segment_bounds</code> table of the {@link SessionDatabase}. Each
+ * Session is split into segments of up to {@link #SEGMENT_SIZE} consecutive measurements, and the
+ * table contains the time range and bounding box of every segment. It is the source of the
+ * in-memory {@link SpatialIndex}.<br>
+ * Sessions stored as {@link StorageFormat#ENCRYPTED} are not segmented and thus never found by an
+ * area search.
+ * </p>
+ */
+final class SegmentTable {
+
+    static final String TABLE = "segment_bounds";
+
+    static final String SESSION = "session_id";
+
+    static final String SEQUENCE = "sequence";
+
+    static final String FIRST = "first_timestamp";
+
+    static final String LAST = "last_timestamp";
+
+    static final String LATITUDE_MIN = "latitude_min";
+
+    static final String LATITUDE_MAX = "latitude_max";
+
+    static final String LONGITUDE_MIN = "longitude_min";
+
+    static final String LONGITUDE_MAX = "longitude_max";
+
+
+    /**
+     * Maximum number of measurements per segment, about a minute of a 1 Hz recording
+     */
+    static final int SEGMENT_SIZE = 64;
+
+
+    private SegmentTable() {
+        // Static helper class
+    }
+
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                + SESSION       + " INTEGER NOT NULL, "
+                + SEQUENCE      + " INTEGER NOT NULL, "
+                + FIRST         + " INTEGER NOT NULL, "
+                + LAST          + " INTEGER NOT NULL, "
+                + LATITUDE_MIN  + " REAL NOT NULL, "
+                + LATITUDE_MAX  + " REAL NOT NULL, "
+                + LONGITUDE_MIN + " REAL NOT NULL, "
+                + LONGITUDE_MAX + " REAL NOT NULL, "
+                + "PRIMARY KEY (" + SESSION + ", " + SEQUENCE + ")"
+                + ") WITHOUT ROWID;");
+    }
+
+    static void delete(SQLiteDatabase db, int sessionId) {
+        db.delete(TABLE, SESSION + " = ?", new String[] { String.valueOf(sessionId) });
+    }
+
+    /**
+     * Recomputes the segments of a single Session from its stored measurements. Sessions stored as
+     * {@link StorageFormat#ENCRYPTED} have no segments, so their route is not revealed by the
+     * bounding boxes.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     */
+    static void rebuild(SQLiteDatabase db, int sessionId) {
+        delete(db, sessionId);
+        if (MeasurementStore.getFormat(db, sessionId) == StorageFormat.ENCRYPTED) {
+            return;
+        }
+
+        try (final Collector collector = new Collector(db)) {
+            collector.beginSession(sessionId);
+            MeasurementStore.forEach(db, sessionId, Long.MIN_VALUE, Long.MAX_VALUE,
+                    new MeasurementVisitor() {
+                @Override
+                public void visit(long timestamp, int utcOffset, double latitude,
+                                  double longitude, int heartrate) {
+                    collector.add(timestamp, latitude, longitude);
+                }
+            });
+            collector.flush();
+        }
+    }
+
+    /**
+     * Reads all segments into a new {@link SpatialIndex}.
+     *
+     * @param db    Database
+     * @return      SpatialIndex
+     */
+    static SpatialIndex load(SQLiteDatabase db) {
+        try (Cursor cursor = db.query(TABLE, new String[] { SESSION, SEQUENCE, FIRST, LAST,
+                LATITUDE_MIN, LATITUDE_MAX, LONGITUDE_MIN, LONGITUDE_MAX },
+                null, null, null, null, null)) {
+
+            SpatialIndex.Builder builder = new SpatialIndex.Builder(cursor.getCount());
+            while (cursor.moveToNext()) {
+                builder.add(cursor.getInt(0), cursor.getInt(1), cursor.getLong(2),
+                        cursor.getLong(3), cursor.getDouble(4), cursor.getDouble(5),
+                        cursor.getDouble(6), cursor.getDouble(7));
+            }
+            return builder.build();
+        }
+    }
+
+
+
+    /**
+     * This class splits a stream of measurements into segments and writes their bounds.
+     */
+    static class Collector implements AutoCloseable {
+
+        private final SQLiteStatement mInsert;
+
+
+        private int mSessionId;
+
+        private int mSequence;
+
+        private int mCount;
+
+        private long mFirst;
+
+        private long mLast;
+
+        private double mMinLatitude;
+
+        private double mMaxLatitude;
+
+        private double mMinLongitude;
+
+        private double mMaxLongitude;
+
+
+        Collector(SQLiteDatabase db) {
+            mInsert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?);");
+        }
+
+
+        /**
+         * Starts the first segment of a Session. Its old segments have to be deleted beforehand.
+         *
+         * @param sessionId ID of the Session
+         */
+        void beginSession(int sessionId) {
+            mSessionId = sessionId;
+            mSequence = 0;
+            mCount = 0;
+        }
+
+        /**
+         * Adds a single measurement.
+         *
+         * @param timestamp Timestamp in milliseconds since the epoch (UTC)
+         * @param latitude  Latitude of the user's location
+         * @param longitude Longitude of the user's location
+         */
+        void add(long timestamp, double latitude, double longitude) {
+            if (mCount == 0) {
+                mFirst = mLast = timestamp;
+                mMinLatitude = mMaxLatitude = latitude;
+                mMinLongitude = mMaxLongitude = longitude;
+            }
+
+            // Measurements are not necessarily added in chronological order
+            mFirst = Math.min(mFirst, timestamp);
+            mLast = Math.max(mLast, timestamp);
+            mMinLatitude = Math.min(mMinLatitude, latitude);
+            mMaxLatitude = Math.max(mMaxLatitude, latitude);
+            mMinLongitude = Math.min(mMinLongitude, longitude);
+            mMaxLongitude = Math.max(mMaxLongitude, longitude);
+
+            if (++mCount == SEGMENT_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes out the current segment if it contains any measurements.
+         */
+        void flush() {
+            if (mCount == 0) {
+                return;
+            }
+
+            mInsert.bindLong(1, mSessionId);
+            mInsert.bindLong(2, mSequence++);
+            mInsert.bindLong(3, mFirst);
+            mInsert.bindLong(4, mLast);
+            mInsert.bindDouble(5, mMinLatitude);
+            mInsert.bindDouble(6, mMaxLatitude);
+            mInsert.bindDouble(7, mMinLongitude);
+            mInsert.bindDouble(8, mMaxLongitude);
+            mInsert.executeInsert();
+
+            mCount = 0;
+        }
+
+
+        // No Javadoc
+        @Override
+        public void close() {
+            mInsert.close();
+        }
+    }
+}
@@ -11,22 +11,21 @@
 
 package de.haukesomm.healthdemo.data;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * Created on 24.08.18
  * <p>
  * This is a data class representing a fitness session consisting of {@link SessionDescription}'s
- * attributes and a list of measurements.
+ * attributes and a {@link MeasurementSeries}.
  * </p>
  *
  * @author Hauke Sommerfeld
  */
 public class Session extends SessionDescription {
 
-    private final List<Measurement> mMeasurements = new LinkedList<>();
+    private final MeasurementSeries mMeasurements;
 
 
     /**
@@ -36,34 +35,29 @@ public class Session extends SessionDescription {
      * @param type  Session Type
      */
     Session(int id, SessionType type, String description) {
-        super(id, type, description);
+        this(id, type, description, EnumSet.allOf(MeasurementColumn.class));
     }
 
-
     /**
-     * This method returns an unmodifiable List of all Measurements.
+     * Creates a new Session whose measurements only contain the given columns.
      *
-     * @return  Unmodifiable List of measurements
+     * @param id        Session ID
+     * @param type      Session Type
+     * @param columns   Columns of the measurements
      */
-    public List<Measurement> getMeasurements() {
-        return Collections.unmodifiableList(mMeasurements);
+    Session(int id, SessionType type, String description, Set<MeasurementColumn> columns) {
+        super(id, type, description);
+        mMeasurements = new MeasurementSeries(0, columns);
     }
 
-    /**
-     * Use this method to add a single Measurement to the Session.
-     *
-     * @param measurement   Measurement to add
-     */
-    public void add(Measurement measurement) {
-        mMeasurements.add(measurement);
-    }
 
     /**
-     * Use this method to add a List of multiple Measurements to the Session.
+     * This method returns the Session's measurements. The series can only be modified from within
+     * the data package.
      *
-     * @param measurements  Measurements to add
+     * @return  Series of measurements
      */
-    public void addAll(List<Measurement> measurements) {
-        mMeasurements.addAll(measurements);
+    public MeasurementSeries getMeasurements() {
+        return mMeasurements;
     }
 }
@@ -16,17 +16,18 @@ import android.content.res.AssetManager;
 import android.util.JsonReader;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
 /**
  * Created on 26.08.18
  * <p>
  * This class parses the mockup session assets (JSON) in '/assets/sessions/ and converts them into
  * {@link Session} objects.<br>
- * It uses the {@link JsonReader} class provided by the Android SDK.
+ * It uses the {@link JsonReader} class provided by the Android SDK. Sessions can either be read as
+ * a whole or streamed into a {@link MeasurementSink} measurement by measurement.
  * </p>
  *
  * @author Hauke Sommerfeld
@@ -67,54 +68,95 @@ public class SessionAssetReader {
      * @throws IOException  In case the assets are not accessible or contain malformed JSON-data.
      */
     public List<Session> readMockupSessions() throws IOException {
+        final List<Session> sessions = new LinkedList<>();
+
+        streamMockupSessions(1, new MeasurementSink() {
+            private Session mSession;
+
+            @Override
+            public void beginSession(SessionDescription description) {
+                mSession = new Session(description.id, description.type, description.description);
+            }
+
+            @Override
+            public void add(long timestamp, int utcOffset, double latitude, double longitude,
+                            int heartrate) {
+                mSession.getMeasurements().add(timestamp, utcOffset, latitude, longitude, heartrate);
+            }
+
+            @Override
+            public void endSession() {
+                sessions.add(mSession);
+            }
+        });
+
+        return sessions;
+    }
+
+    /**
+     * This method streams all mockup Session assets into a {@link MeasurementSink} without
+     * keeping them in memory.
+     *
+     * @param firstId       ID of the first Session, the following ones are numbered consecutively
+     * @param sink          Sink receiving the Sessions
+     * @throws IOException  In case the assets are not accessible or contain malformed JSON-data.
+     */
+    void streamMockupSessions(int firstId, MeasurementSink sink) throws IOException {
         AssetManager assetManager = mContext.getAssets();
         String[] assets = assetManager.list(DIRECTORY);
 
-        List<Session> sessions = new LinkedList<>();
-        for (String asset : assets) {
-            sessions.add(readSession(assetManager, DIRECTORY + "/" + asset));
+        for (int i = 0; i < assets.length; i++) {
+            streamSession(assetManager.open(DIRECTORY + "/" + assets[i]), firstId + i, sink);
         }
-        return sessions;
     }
 
-    private Session readSession(AssetManager manager, String name) throws IOException {
-        JsonReader reader = new JsonReader(new InputStreamReader(manager.open(name), "UTF-8"));
-        reader.beginObject();
-
-        Session session;
-        reader.nextName();
-        SessionType type = SessionType.get(reader.nextString());
-        reader.nextName();
-        String description = reader.nextString();
-        // TODO Remove ugly workaround
-        session = new Session(Math.abs(new Random().nextInt(1000)), type, description);
+    /**
+     * This method streams a single Session in the JSON format of the mockup assets into a
+     * {@link MeasurementSink}. Every measurement is handed to the sink as soon as it has been
+     * parsed, so the memory used does not depend on the size of the input.
+     *
+     * @param in            Stream containing the Session. It is closed afterwards.
+     * @param id            ID of the Session
+     * @param sink          Sink receiving the Session
+     * @throws IOException  In case the input is not accessible or contains malformed JSON-data or
+     *                      measurements without a valid timestamp.
+     */
+    void streamSession(InputStream in, int id, MeasurementSink sink) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"))) {
+            reader.beginObject();
 
-        try {
             reader.nextName();
-            session.addAll(readMeasurementArray(reader));
-        } catch (IOException e) {
-            reader.close();
-        }
+            SessionType type = SessionType.get(reader.nextString());
+            reader.nextName();
+            String description = reader.nextString();
+            sink.beginSession(new SessionDescription(id, type, description));
 
-        reader.endObject();
+            if (reader.hasNext()) {
+                reader.nextName();
+                readMeasurementArray(reader, sink, new IsoTimestamp());
+            }
+            sink.endSession();
 
-        return session;
+            reader.endObject();
+        }
     }
 
-    private List<Measurement> readMeasurementArray(JsonReader reader) throws IOException {
-        List<Measurement> measurements = new LinkedList<>();
+    private void readMeasurementArray(JsonReader reader, MeasurementSink sink, IsoTimestamp parser)
+            throws IOException {
 
         reader.beginArray();
         while (reader.hasNext()) {
-            measurements.add(readMeasurement(reader));
+            readMeasurement(reader, sink, parser);
         }
         reader.endArray();
-
-        return measurements;
     }
 
-    private Measurement readMeasurement(JsonReader reader) throws IOException {
-        String timestamp = null;
+    private void readMeasurement(JsonReader reader, MeasurementSink sink, IsoTimestamp parser)
+            throws IOException {
+
+        boolean hasTimestamp = false;
+        long timestamp = 0L;
+        int utcOffset = 0;
         double latitide = 0d;
         double longitude = 0d;
         int heartrate = 0;
@@ -124,7 +166,14 @@ public class SessionAssetReader {
             String name = reader.nextName();
             switch (name) {
                 case "timestamp":
-                    timestamp = reader.nextString();
+                    String value = reader.nextString();
+                    try {
+                        timestamp = parser.parse(value);
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("Malformed timestamp: " + value, e);
+                    }
+                    utcOffset = parser.getOffsetMinutes();
+                    hasTimestamp = true;
                     break;
                 case "latitude":
                     latitide = reader.nextDouble();
@@ -142,6 +191,10 @@ public class SessionAssetReader {
         }
         reader.endObject();
 
-        return new Measurement(timestamp, latitide, longitude, heartrate);
+        // Stored at the epoch they would overwrite each other
+        if (!hasTimestamp) {
+            throw new IOException("Measurement without timestamp");
+        }
+        sink.add(timestamp, utcOffset, latitide, longitude, heartrate);
     }
 }
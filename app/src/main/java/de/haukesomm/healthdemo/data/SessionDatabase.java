@@ -11,23 +11,46 @@
 
 package de.haukesomm.healthdemo.data;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.haukesomm.healthdemo.R;
+import de.haukesomm.healthdemo.privacy.PrivacyPipeline;
+import de.haukesomm.healthdemo.privacy.PrivacyProjection;
 
 /**
  * Created on 23.08.18
  * <p>
  * This class manages the SQlite database containing all recorded fitness {@link Session}s.
  * It includes methods to add, remove or list Sessions.<br>
- * By default it is populated with mockup data provided by the {@link SessionAssetReader} class.
+ * By default it is populated with mockup data provided by the {@link SessionAssetReader} class,
+ * either pre-built at build time or imported on first launch.<br>
+ * There is a single, reference-counted instance per process which is obtained using
+ * {@link #acquire(Context)} and released using {@link #close()}. It uses write-ahead logging, so
+ * queries are served by a small pool of reader connections and are not blocked while Sessions
+ * are imported in the background.
  * </p>
  *
  * @author Hauke Sommerfeld
@@ -36,113 +59,292 @@ public class SessionDatabase extends SQLiteOpenHelper implements AutoCloseable {
 
     private static final String FILE = "sessions.db";
 
-    private static final int VERSION = 1;
+    private static final int VERSION = 12;
+
+    private static final String PREBUILT_ASSET = "databases/" + FILE;
+
+    /*
+     * Maximum number of Sessions read with a single query by get(Set, int...), which keeps the
+     * statements short no matter how many IDs are requested
+     */
+    private static final int BATCH_SIZE = 500;
+
+
+    static final String TABLE_SESSIONS = "sessions";
+
+    static final String TABLE_SESSIONS_ID = "session_id";
+
+    static final String TABLE_SESSIONS_TYPE = "session_type";
+
+    static final String TABLE_SESSIONS_DESCRIPTION = "session_description";
+
+    static final String TABLE_SESSIONS_STORAGE = "storage";
+
 
+    static final String TABLE_MEASUREMENTS = "measurements";
 
-    private static final String TABLE_SESSIONS = "sessions";
+    static final String TABLE_MEASUREMENTS_SESSION = "session_id";
 
-    private static final String TABLE_SESSIONS_ID = "session_id";
 
-    private static final String TABLE_SESSIONS_TYPE = "session_type";
+    static final String TIMESTAMP = "timestamp";
 
-    private static final String TABLE_SESSIONS_DESCRIPTION = "session_description";
+    static final String UTC_OFFSET = "utc_offset";
 
+    static final String LATITUDE = "latitude";
 
-    private static final String ID = "id";
+    static final String LONGITUDE = "longitude";
 
-    private static final String TIMESTAMP = "timestamp";
+    static final String HEARTRATE = "heartrate";
 
-    private static final String LATITUDE = "latitude";
 
-    private static final String LONGITUDE = "longitude";
+    private static final Object sLock = new Object();
 
-    private static final String HEARTRATE = "heartrate";
+    private static SessionDatabase sInstance;
 
 
     private final Context mContext;
 
+    private final PrivacyProjection mPrivacy;
+
     private SQLiteDatabase mDatabase;
 
+    private int mReferences;
+
+    private volatile StorageFormat mStorageFormat;
+
+    private final Object mSpatialIndexLock = new Object();
+
+    private SpatialIndex mSpatialIndex;
+
+
+    private SessionDatabase(Context context) {
+        super(context, FILE, null, VERSION);
+        mContext = context;
+        mPrivacy = new PrivacyProjection(context);
+        mStorageFormat = PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.pref_bool_privacy_storage_encrypted), false)
+                ? StorageFormat.ENCRYPTED : StorageFormat.ROWS;
+        installPrebuiltDatabase();
+        setWriteAheadLoggingEnabled(true);
+        mDatabase = getWritableDatabase();
+    }
+
 
     /**
-     * Creates a new SessionDatabase object which can be used to manipulate the database.
+     * This Interface is used to report the progress of data migrations after a schema upgrade.
+     */
+    public interface MigrationListener {
+
+        /**
+         * This method is called on the thread acquiring the database after every migrated chunk.
+         *
+         * @param version   Schema version whose data is migrated
+         * @param done      Number of units (e.g. Sessions) migrated so far
+         * @param total     Total number of units to migrate
+         */
+        void onMigrationProgress(int version, int done, int total);
+    }
+
+
+    /**
+     * Returns the shared SessionDatabase instance and opens it if necessary. Every call has to be
+     * paired with a call of {@link #close()}, preferably using a try-with-resources block.<br>
+     * Opening the database may create or upgrade it, so the first call should not happen on the UI
+     * thread.
      *
-     * @param context   Application context.
+     * @param context   Any context, only its application context is retained
+     * @return          Shared SessionDatabase
+     * @see #acquire(Context, MigrationListener)
      */
-    public SessionDatabase(Context context) {
-        super(context, FILE, null, VERSION);
-        mContext = context;
-        open();
+    public static SessionDatabase acquire(Context context) {
+        return acquire(context, null);
+    }
+
+    /**
+     * Returns the shared SessionDatabase instance and opens it if necessary. Any data migrations
+     * left after a schema upgrade are completed before this method returns, reporting their
+     * progress to the given listener. Concurrent callers wait until they are done.
+     *
+     * @param context   Any context, only its application context is retained
+     * @param listener  Listener to report the migration progress to, may be null
+     * @return          Shared SessionDatabase
+     */
+    public static SessionDatabase acquire(Context context, MigrationListener listener) {
+        synchronized (sLock) {
+            if (sInstance == null) {
+                SessionDatabase instance = new SessionDatabase(context.getApplicationContext());
+                Migrations.runPending(instance.mDatabase, listener);
+                sInstance = instance;
+            }
+            sInstance.mReferences++;
+            return sInstance;
+        }
+    }
+
+
+    /*
+     * On first launch the database pre-built by the Gradle task 'prebuildSessionDatabase' is copied
+     * from the assets, so the mockup data does not have to be imported on the device. It is stamped
+     * with an older schema version if necessary and brought up to date by onUpgrade().
+     * If the asset is missing, onCreate() imports the mockup data as usual.
+     */
+    private void installPrebuiltDatabase() {
+        File target = mContext.getDatabasePath(FILE);
+        if (target.exists()) {
+            return;
+        }
+
+        File tmp = new File(target.getPath() + ".tmp");
+        if (!target.getParentFile().exists() && !target.getParentFile().mkdirs()) {
+            return;
+        }
+
+        try (InputStream in = mContext.getAssets().open(PREBUILT_ASSET);
+             OutputStream out = new FileOutputStream(tmp)) {
+
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (FileNotFoundException e) {
+            Log.w("SessionDatabase", "No pre-built database available, importing mockup data");
+            tmp.delete();
+            return;
+        } catch (IOException e) {
+            Log.e("SessionDatabase", "Unable to copy pre-built database: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+        }
     }
 
 
+    /*
+     * Only takes effect before the first table has been created, existing files are switched over
+     * by the migration to version 11.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL;");
+    }
+
     // No Javadoc
     @Override
     public void onCreate(SQLiteDatabase db) {
+        createSchema(db);
+        initMockupData(db);
+    }
+
+    /*
+     * Creates all tables of the current schema version. Also used by the instrumented tests to set
+     * up an in-memory database.
+     */
+    static void createSchema(SQLiteDatabase db) {
         db.execSQL("CREATE TABLE " + TABLE_SESSIONS + "("
                 + TABLE_SESSIONS_ID             + " INTEGER NOT NULL PRIMARY KEY,"
                 + TABLE_SESSIONS_TYPE           + " INTEGER NOT NULL,"
-                + TABLE_SESSIONS_DESCRIPTION    + " TEXT NOT NULL);"
+                + TABLE_SESSIONS_DESCRIPTION    + " TEXT NOT NULL,"
+                + TABLE_SESSIONS_STORAGE        + " INTEGER NOT NULL DEFAULT 0);"
         );
-
-        initMockupData(db);
+        createMeasurementTable(db);
+        MeasurementStore.create(db);
+        SummaryTable.create(db);
+        RollupTables.create(db);
+        SegmentTable.create(db);
+        SearchIndex.create(db);
+        ChunkCipher.create(db);
+        Compaction.create(db);
+        Migrations.create(db);
     }
 
-    // No Javadoc
+    /*
+     * The schema changes are applied right away, the data of each step is migrated afterwards in
+     * small chunks by acquire(). See Migrations for the individual steps.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Do nothing
+        Migrations.schedule(db, oldVersion, newVersion);
     }
 
 
-    /**
-     * Call this method to manually open the database connection. By default this is not required
-     * since the constructor already opens a connection.
-     *
-     * @see #close()
+    /*
+     * All measurements of all sessions live in this single table. Since it is a WITHOUT ROWID table
+     * the primary key (session_id, timestamp) is the table's clustered B-tree itself, so it doubles
+     * as a covering index: per-session and time-range lookups never touch a second structure.
      */
-    @SuppressWarnings("WeakerAccess")
-    public void open() {
-        mDatabase = getWritableDatabase();
+    private static void createMeasurementTable(SQLiteDatabase db) {
+        createMeasurementTable(db, TABLE_MEASUREMENTS);
     }
 
+    /*
+     * Timestamps are stored as milliseconds since the epoch so they can be sorted, compared and
+     * subtracted without parsing. The zone offset (in minutes) they were recorded in is kept in a
+     * separate column which SQLite stores in one or two bytes.
+     */
+    static void createMeasurementTable(SQLiteDatabase db, String table) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + TABLE_MEASUREMENTS_SESSION    + " INTEGER NOT NULL, "
+                + TIMESTAMP                     + " INTEGER NOT NULL, "
+                + UTC_OFFSET                    + " INTEGER NOT NULL DEFAULT 0, "
+                + LATITUDE                      + " REAL NOT NULL, "
+                + LONGITUDE                     + " REAL NOT NULL, "
+                + HEARTRATE                     + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + TABLE_MEASUREMENTS_SESSION + ", " + TIMESTAMP + ")"
+                + ") WITHOUT ROWID;");
+    }
+
+
     /**
-     * This method closes the existing database connection. All method reading from / modifying the
-     * database will stop working until you manually re-establish the connection by invoking
-     * {@link #open()} ()}.<br>
+     * This method releases a reference obtained by {@link #acquire(Context)}. Once the last
+     * reference has been released the database connections are closed. The object must not be used
+     * after releasing it.<br>
      * Call this method when you are finished working with the database or use a try-with-resources
      * block!
      */
     @Override
     public void close() {
-        if (mDatabase == null) return;
-        mDatabase.close();
-        mDatabase = null;
+        synchronized (sLock) {
+            if (mReferences == 0 || --mReferences > 0) {
+                return;
+            }
+            if (sInstance == this) {
+                sInstance = null;
+            }
+            mDatabase = null;
+            mPrivacy.close();
+            super.close();
+        }
     }
 
     private void validateConnection() throws IllegalStateException {
         if (mDatabase == null) {
             throw new IllegalStateException(
-                    "SessionDatabase has no active connection. Call open() first!");
+                    "SessionDatabase has no active connection. Call acquire() first!");
         }
     }
 
 
     private void initMockupData(SQLiteDatabase db) {
-        SessionAssetReader reader = new SessionAssetReader(mContext);
+        final long start = SystemClock.elapsedRealtimeNanos();
+
+        SessionWriter writer = new SessionWriter(db, StorageFormat.ROWS);
+        db.beginTransactionNonExclusive();
         try {
-            for (Session session : reader.readMockupSessions()) {
-                add(db, session);
-            }
+            new SessionAssetReader(mContext).streamMockupSessions(nextSessionId(db), writer);
+            db.setTransactionSuccessful();
         } catch (IOException e) {
             Log.e("SessionDatabase", "Unable to read mockup data: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            writer.close();
+            db.endTransaction();
         }
-    }
-
 
-    private static String convertToTableName(int id) {
-        return "data_" + String.valueOf(id);
+        report(writer, start);
     }
 
 
@@ -173,85 +375,733 @@ public class SessionDatabase extends SQLiteOpenHelper implements AutoCloseable {
         return sessions;
     }
 
+    /**
+     * Returns a List of all available sessions in form of {@link SessionSummary}s, newest first.
+     * The summaries are precomputed, so no measurements have to be loaded.
+     *
+     * @return                          List of SessionSummaries
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public List<SessionSummary> listSummaries() throws IllegalStateException {
+        validateConnection();
+
+
+        List<SessionSummary> summaries = new ArrayList<>();
+
+        try (Cursor cursor = mDatabase.rawQuery(SummaryTable.SELECT_JOINED
+                + " ORDER BY m." + SummaryTable.START + " DESC;", null)) {
+            while (cursor.moveToNext()) {
+                summaries.add(SummaryTable.read(cursor));
+            }
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Returns the {@link SessionSummary}s matching a {@link SessionQuery}. Filtering, ordering and
+     * the limit are applied by the database, so only the returned rows are read.
+     *
+     * @param query                     Query
+     * @return                          List of SessionSummaries in the order of the query
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public List<SessionSummary> query(SessionQuery query) throws IllegalStateException {
+        validateConnection();
+
+
+        List<SessionSummary> summaries = new ArrayList<>();
+
+        try (Cursor cursor = mDatabase.rawQuery(query.toSql(), query.getArguments())) {
+            while (cursor.moveToNext()) {
+                summaries.add(SummaryTable.read(cursor));
+            }
+        }
+
+        return summaries;
+    }
+
+    /**
+     * Passes the {@link SessionSummary}s matching a {@link SessionQuery} to a visitor while they
+     * are read, instead of collecting them in a list. See {@link #query(SessionQuery)}.
+     *
+     * @param query                     Query
+     * @param visitor                   Visitor receiving the summaries in the order of the query
+     * @return                          Number of visited summaries
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public int forEachSummary(SessionQuery query, SummaryVisitor visitor)
+            throws IllegalStateException {
+
+        validateConnection();
+
+        int count = 0;
+        try (Cursor cursor = mDatabase.rawQuery(query.toSql(), query.getArguments())) {
+            while (cursor.moveToNext()) {
+                visitor.visit(SummaryTable.read(cursor));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the Sessions whose description, type or place names contain words starting with the
+     * words of the query, best match first. This is fast enough to be called on every keystroke.
+     *
+     * @param query                     Text entered by the user
+     * @param limit                     Maximum number of Sessions to return
+     * @return                          List of SessionSummaries, empty if the query has no words
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public List<SessionSummary> search(String query, int limit) throws IllegalStateException {
+        validateConnection();
+
+        String match = SearchIndex.toQuery(query);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+
+        List<Integer> ids = SearchIndex.search(mDatabase, match, limit);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        SessionSummary[] ranked = new SessionSummary[ids.size()];
+        try (Cursor cursor = mDatabase.rawQuery(SummaryTable.SELECT_JOINED + " WHERE s."
+                + TABLE_SESSIONS_ID + " IN (" + MeasurementStore.joinIds(ids) + ");", null)) {
+            while (cursor.moveToNext()) {
+                SessionSummary summary = SummaryTable.read(cursor);
+                ranked[ids.indexOf(summary.id)] = summary;
+            }
+        }
+
+        List<SessionSummary> summaries = new ArrayList<>(ranked.length);
+        for (SessionSummary summary : ranked) {
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        }
+
+        return summaries;
+    }
+
+    /**
+     * This method stores the names of the places a Session passes through, e.g. the addresses of
+     * its start and destination, so the Session can be found by them using
+     * {@link #search(String, int)}. The previous names are replaced. Sessions stored as
+     * {@link StorageFormat#ENCRYPTED} are not searchable by place, their names are dropped.
+     *
+     * @param sessionId                 ID of the Session
+     * @param places                    Place names
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public void setPlaces(int sessionId, List<String> places) throws IllegalStateException {
+        validateConnection();
+
+        StringBuilder text = new StringBuilder();
+        for (String place : places) {
+            text.append(text.length() == 0 ? "" : "\n").append(place);
+        }
+
+        SearchIndex.setPlaces(mDatabase, sessionId, text.toString());
+    }
+
+    /**
+     * Returns the {@link SessionSummary}s of Sessions whose place names have not been stored yet
+     * (see {@link #setPlaces(int, List)}), oldest first. The place names are filled lazily, once a
+     * Session is viewed or by the {@link PlaceIndexJobService}. Encrypted Sessions are never
+     * returned.
+     *
+     * @param limit                     Maximum number of Sessions to return
+     * @return                          Summaries of Sessions without place names
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public List<SessionSummary> listWithoutPlaces(int limit) throws IllegalStateException {
+        validateConnection();
+
+        List<SessionSummary> summaries = new ArrayList<>();
+        try (Cursor cursor = mDatabase.rawQuery(SummaryTable.SELECT_JOINED + " WHERE s."
+                + TABLE_SESSIONS_ID + " IN (" + SearchIndex.SELECT_WITHOUT_PLACES + ") ORDER BY m."
+                + SummaryTable.START + " LIMIT " + limit + ";", null)) {
+
+            while (cursor.moveToNext()) {
+                summaries.add(SummaryTable.read(cursor));
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * This method sets the format the measurements of Sessions added from now on are stored in.
+     * Sessions already stored keep their format. The default is {@link StorageFormat#ENCRYPTED}
+     * if encryption has been enabled in the privacy settings, {@link StorageFormat#ROWS}
+     * otherwise.<br>
+     * Encrypted Sessions are left out of the rollups, the area search, the place search and the
+     * compaction, and their summary only contains their time span, see {@link SessionWriter}.<br>
+     * Since the SessionDatabase is shared, the setting applies to all of its users.
+     *
+     * @param format    StorageFormat
+     */
+    public void setStorageFormat(StorageFormat format) {
+        mStorageFormat = format;
+    }
+
     /**
      * This method adds a Session to the database.
      *
      * @param session                   Session object
+     * @return                          Report containing the number of rows and the throughput
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public InsertReport add(Session session) throws IllegalStateException {
+        return addAll(Collections.singletonList(session));
+    }
+
+    /**
+     * This method adds multiple Sessions to the database using a single transaction and
+     * pre-compiled statements. Prefer it over repeated calls of {@link #add(Session)} when
+     * importing larger amounts of data.
+     *
+     * @param sessions                  Sessions to add
+     * @return                          Report containing the number of rows and the throughput
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public InsertReport addAll(Collection<Session> sessions) throws IllegalStateException {
+        validateConnection();
+        return addAll(mDatabase, sessions);
+    }
+
+    private InsertReport addAll(SQLiteDatabase db, Collection<Session> sessions) {
+        final long start = SystemClock.elapsedRealtimeNanos();
+
+        SessionWriter writer = new SessionWriter(db, mStorageFormat);
+        db.beginTransactionNonExclusive();
+        try {
+            for (Session session : sessions) {
+                writer.write(session);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            writer.close();
+            db.endTransaction();
+            invalidateSpatialIndex();
+        }
+
+        return report(writer, start);
+    }
+
+    /**
+     * This method imports a Session in the JSON format of the mockup assets. Measurements are
+     * streamed from the input straight into the database in small batches, so the memory used
+     * stays constant no matter how large the input is. The whole Session is written in a single
+     * transaction and will not be visible before it is complete.
+     *
+     * @param in                        Stream containing the Session. It is closed afterwards.
+     * @return                          Report containing the number of rows and the throughput
+     * @throws IOException              In case the input is not accessible or malformed
      * @throws IllegalStateException    If there is no active database connection
      */
-    public void add(Session session) throws IllegalStateException{
+    public InsertReport importSession(InputStream in) throws IOException, IllegalStateException {
         validateConnection();
-        add(mDatabase, session);
-    }
-
-    private void add(SQLiteDatabase db, Session session) {
-        final String table = convertToTableName(session.id);
-
-        // Create the actual data-table
-        db.execSQL("CREATE TABLE " + table + " ("
-                + ID        + " INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT, "
-                + TIMESTAMP + " TEXT NOT NULL, "
-                + LATITUDE  + " REAL NOT NULL, "
-                + LONGITUDE + " REAL NOT NULL, "
-                + HEARTRATE + " INTEGER NOT NULL);");
-
-        // Insert measurement data into the table
-        for (Measurement measurement : session.getMeasurements()) {
-            ContentValues values = new ContentValues();
-            values.put(TIMESTAMP, measurement.timestamp);
-            values.put(LATITUDE, measurement.latitude);
-            values.put(LONGITUDE, measurement.longitude);
-            values.put(HEARTRATE, measurement.heartrate);
-            db.insert(table, null, values);
+
+        final long start = SystemClock.elapsedRealtimeNanos();
+
+        SessionWriter writer = new SessionWriter(mDatabase, mStorageFormat);
+        mDatabase.beginTransactionNonExclusive();
+        try {
+            // Allocated within the transaction, so no other write can take the same ID
+            new SessionAssetReader(mContext).streamSession(in, nextSessionId(mDatabase), writer);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            writer.close();
+            mDatabase.endTransaction();
+            invalidateSpatialIndex();
         }
 
-        // Create entry in the session-table (old id will be overridden!)
-        ContentValues sessionInfo = new ContentValues();
-        sessionInfo.put(TABLE_SESSIONS_ID, session.id);
-        sessionInfo.put(TABLE_SESSIONS_TYPE, session.type.alias);
-        sessionInfo.put(TABLE_SESSIONS_DESCRIPTION, session.description);
-        db.insert(TABLE_SESSIONS, null, sessionInfo);
+        return report(writer, start);
+    }
+
+    private static int nextSessionId(SQLiteDatabase db) {
+        try (Cursor cursor = db.rawQuery("SELECT IFNULL(MAX(" + TABLE_SESSIONS_ID + "), 0) + 1"
+                + " FROM " + TABLE_SESSIONS + ";", null)) {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        }
+    }
+
+    private static InsertReport report(SessionWriter writer, long start) {
+        InsertReport report = new InsertReport(writer.getSessions(), writer.getRows(),
+                SystemClock.elapsedRealtimeNanos() - start);
+        Log.i("SessionDatabase", "Inserted " + report);
+        return report;
     }
 
     /**
-     * This method returns a specific Session that matches the specified ID.
+     * This method returns a specific Session that matches the specified ID including all of its
+     * measurements. Use {@link #getPaged(int, int)} for large Sessions.<br>
+     * Only the columns permitted by the privacy settings are read, see {@link PrivacyProjection}.
      *
      * @param id                        ID of the Session to return
      * @return                          Session object
      * @throws IllegalStateException    If there is no active database connection
+     * @throws IllegalArgumentException If there is no Session with the given ID
+     */
+    public Session get(int id) throws IllegalStateException, IllegalArgumentException {
+        SessionDescription description = getDescription(id);
+
+        Session session = new Session(id, description.type, description.description,
+                mPrivacy.getColumns());
+        readMeasurements(session.getMeasurements(), id, Long.MIN_VALUE, Long.MAX_VALUE, -1);
+
+        return session;
+    }
+
+    /**
+     * This method returns multiple Sessions including all of their measurements. Instead of one
+     * query per Session it reads the descriptions of up to {@link #BATCH_SIZE} Sessions at once
+     * and their measurements with one range scan per storage format.
+     *
+     * @param ids                       IDs of the Sessions to return
+     * @return                          Sessions by ID in the order of the given IDs. Unknown IDs
+     *                                  are left out.
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public Map<Integer, Session> get(int... ids) throws IllegalStateException {
+        return get(EnumSet.allOf(MeasurementColumn.class), ids);
+    }
+
+    /**
+     * This method returns multiple Sessions including a projection of their measurements. Columns
+     * which are not part of the projection or not permitted by the privacy settings are left at
+     * zero and, for Sessions stored as {@link StorageFormat#ROWS}, are not read at all.
+     * See {@link #get(int...)}.
+     *
+     * @param columns                   Columns to read
+     * @param ids                       IDs of the Sessions to return
+     * @return                          Sessions by ID in the order of the given IDs. Unknown IDs
+     *                                  are left out.
+     * @throws IllegalStateException    If there is no active database connection
      */
-    public Session get(int id) throws IllegalStateException {
+    public Map<Integer, Session> get(Set<MeasurementColumn> columns, int... ids)
+            throws IllegalStateException {
+
         validateConnection();
 
+        EnumSet<MeasurementColumn> projection = EnumSet.noneOf(MeasurementColumn.class);
+        projection.addAll(columns);
+        projection.retainAll(mPrivacy.getColumns());
 
-        try (Cursor sessionCursor = mDatabase.query(TABLE_SESSIONS, null,
-                TABLE_SESSIONS_ID + " = " + id, null, null, null, null)) {
+        Map<Integer, Session> found = new HashMap<>();
+
+        for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+            List<Integer> batch = new ArrayList<>();
+            for (int i = from; i < ids.length && i < from + BATCH_SIZE; i++) {
+                batch.add(ids[i]);
+            }
+
+            Map<Integer, MeasurementSeries> rows = new HashMap<>();
+            Map<Integer, MeasurementSeries> packed = new HashMap<>();
+            Map<Integer, MeasurementSeries> encrypted = new HashMap<>();
+
+            try (Cursor cursor = mDatabase.query(TABLE_SESSIONS, new String[] {
+                    TABLE_SESSIONS_ID, TABLE_SESSIONS_TYPE, TABLE_SESSIONS_DESCRIPTION,
+                    TABLE_SESSIONS_STORAGE }, TABLE_SESSIONS_ID + " IN ("
+                    + MeasurementStore.joinIds(batch) + ")", null, null, null, null)) {
+
+                while (cursor.moveToNext()) {
+                    Session session = new Session(cursor.getInt(0),
+                            SessionType.get(cursor.getString(1)), cursor.getString(2), projection);
+                    found.put(session.id, session);
+
+                    switch (StorageFormat.get(cursor.getInt(3))) {
+                        case PACKED:
+                            packed.put(session.id, session.getMeasurements());
+                            break;
+
+                        case ENCRYPTED:
+                            encrypted.put(session.id, session.getMeasurements());
+                            break;
+
+                        default:
+                            rows.put(session.id, session.getMeasurements());
+                    }
+                }
+            }
+
+            MeasurementStore.readRows(mDatabase, rows);
+            MeasurementStore.readChunks(mDatabase, packed, StorageFormat.PACKED);
+            MeasurementStore.readChunks(mDatabase, encrypted, StorageFormat.ENCRYPTED);
+        }
+
+        Map<Integer, Session> sessions = new LinkedHashMap<>();
+        for (int id : ids) {
+            if (found.containsKey(id)) {
+                sessions.put(id, found.get(id));
+            }
+        }
+
+        return sessions;
+    }
+
+    /**
+     * This method passes all measurements of a Session to a visitor in chronological order without
+     * creating a {@link Session} or any {@link Measurement} objects. The values are read from the
+     * database cursor and handed over as primitives, so the memory used does not depend on the
+     * size of the Session. Use this for aggregates which only need a single pass over the data.<br>
+     * Values not permitted by the privacy settings are passed as zero.
+     *
+     * @param sessionId                 ID of the Session
+     * @param visitor                   Visitor receiving the measurements
+     * @return                          Number of visited measurements
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public int forEachMeasurement(int sessionId, MeasurementVisitor visitor)
+            throws IllegalStateException {
+
+        return forEachMeasurement(sessionId, Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * This method passes a window of a Session's measurements to a visitor in chronological order.
+     * See {@link #forEachMeasurement(int, MeasurementVisitor)}.
+     *
+     * @param sessionId                 ID of the Session
+     * @param fromTs                    Start of the window (inclusive, milliseconds since the epoch)
+     * @param toTs                      End of the window (exclusive, milliseconds since the epoch)
+     * @param visitor                   Visitor receiving the measurements
+     * @return                          Number of visited measurements
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public int forEachMeasurement(int sessionId, long fromTs, long toTs,
+                                  MeasurementVisitor visitor) throws IllegalStateException {
+
+        validateConnection();
+        return MeasurementStore.forEach(mDatabase, sessionId, fromTs, toTs,
+                mPrivacy.getColumns(), visitor);
+    }
+
+    /**
+     * This method passes the measurements of a Session to a visitor the way they may be shared
+     * with others, e.g. in an export or an upload. They are streamed through the
+     * {@link de.haukesomm.healthdemo.privacy.PrivacyPipeline} of the active privacy mode, which
+     * downsamples, obfuscates, coarsens and suppresses them before they reach the visitor.
+     *
+     * @param sessionId                 ID of the Session
+     * @param visitor                   Visitor receiving the transformed measurements
+     * @return                          Number of measurements read, including dropped ones
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public int forEachSharedMeasurement(int sessionId, MeasurementVisitor visitor)
+            throws IllegalStateException {
 
-            sessionCursor.moveToFirst();
+        validateConnection();
+
+        // The pipeline needs the timestamps to downsample and suppresses the columns itself
+        MeasurementVisitor pipeline = mPrivacy.createPipeline(sessionId, visitor);
+        int count = MeasurementStore.forEach(mDatabase, sessionId, Long.MIN_VALUE,
+                Long.MAX_VALUE, EnumSet.allOf(MeasurementColumn.class), pipeline);
+        PrivacyPipeline.finish(pipeline);
+        return count;
+    }
+
+    /**
+     * This method returns a specific Session that matches the specified ID without loading any
+     * of its measurements. They can be fetched page by page afterwards, each page being a single
+     * range scan on the primary key, so the first page is available in constant time regardless
+     * of the Session's size.<br>
+     * The returned object reads from this database, so it must not be used after it was closed.
+     *
+     * @param id                        ID of the Session to return
+     * @param pageSize                  Maximum number of measurements per page
+     * @return                          PagedSession object
+     * @throws IllegalStateException    If there is no active database connection
+     * @throws IllegalArgumentException If there is no Session with the given ID
+     */
+    public PagedSession getPaged(int id, int pageSize)
+            throws IllegalStateException, IllegalArgumentException {
+        SessionDescription description = getDescription(id);
+        return new PagedSession(this, description.id, description.type, description.description,
+                pageSize);
+    }
+
+    /**
+     * This method returns a window of a Session's measurements in chronological order.
+     * To page through a Session pass the timestamp following the last one of the previous window
+     * as the new start (keyset pagination), which unlike an offset does not get slower the further
+     * the window is from the start.
+     *
+     * @param sessionId                 ID of the Session
+     * @param fromTs                    Start of the window (inclusive, milliseconds since the epoch)
+     * @param toTs                      End of the window (exclusive, milliseconds since the epoch)
+     * @param limit                     Maximum number of measurements to return
+     * @return                          Measurements within the window
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public MeasurementSeries getMeasurements(int sessionId, long fromTs, long toTs, int limit)
+            throws IllegalStateException {
+
+        MeasurementSeries series = new MeasurementSeries(Math.max(limit, 0),
+                mPrivacy.getColumns());
+        readMeasurements(series, sessionId, fromTs, toTs, limit);
+        return series;
+    }
 
-            Session session = new Session(
+    private SessionDescription getDescription(int id)
+            throws IllegalStateException, IllegalArgumentException {
+        validateConnection();
+
+        try (Cursor cursor = mDatabase.query(TABLE_SESSIONS, null,
+                TABLE_SESSIONS_ID + " = " + id, null, null, null, null)) {
+
+            if (!cursor.moveToFirst()) {
+                throw new IllegalArgumentException("There is no Session with the ID " + id);
+            }
+            return new SessionDescription(
                     id,
-                    SessionType.get(sessionCursor.getString(1)),
-                    sessionCursor.getString(2));
-
-            try (Cursor measurementCursor = mDatabase.query(convertToTableName(id), null, null, null,
-                    null, null, null)) {
-
-                if (measurementCursor.moveToFirst()) {
-                    while (!measurementCursor.isAfterLast()) {
-                        session.add(new Measurement(
-                                // 0 is reserved for the ID!
-                                measurementCursor.getString(1),
-                                measurementCursor.getDouble(2),
-                                measurementCursor.getDouble(3),
-                                measurementCursor.getInt(4)
-                        ));
-                        measurementCursor.moveToNext();
+                    SessionType.get(cursor.getString(1)),
+                    cursor.getString(2));
+        }
+    }
+
+    /*
+     * A negative limit reads the whole window.
+     */
+    private void readMeasurements(MeasurementSeries series, int sessionId, long fromTs, long toTs,
+                                  int limit) throws IllegalStateException {
+        validateConnection();
+        MeasurementStore.read(mDatabase, sessionId, fromTs, toTs, limit, series);
+    }
+
+    /**
+     * This method removes a Session and all of its measurements from the database. Its summary,
+     * its segments, its search entry, its share of the rollup tables and its compacted data are
+     * removed in the same transaction.
+     *
+     * @param id                        ID of the Session to remove
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public void remove(int id) throws IllegalStateException {
+        validateConnection();
+
+        final String[] args = { String.valueOf(id) };
+
+        mDatabase.beginTransactionNonExclusive();
+        try {
+            RollupTables.removeSession(mDatabase, id);
+            MeasurementStore.delete(mDatabase, id);
+            SegmentTable.delete(mDatabase, id);
+            SearchIndex.delete(mDatabase, id);
+            Compaction.delete(mDatabase, id);
+            mDatabase.delete(SummaryTable.TABLE, SummaryTable.SESSION + " = ?", args);
+            mDatabase.delete(TABLE_SESSIONS, TABLE_SESSIONS_ID + " = ?", args);
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+            invalidateSpatialIndex();
+        }
+    }
+
+    /**
+     * This method applies the retention policy: Every Session which ended before the given time is
+     * downsampled to its first measurement per interval and the space freed by that is returned
+     * to the file system. Each Session is rewritten in its own short transaction, so readers and
+     * recordings are not blocked for long. Sessions which are already sparse enough are skipped,
+     * so repeated runs only touch newly expired ones.<br>
+     * The run stops between two Sessions if the calling thread is interrupted.
+     *
+     * @param before                    Time the Sessions have to end before (milliseconds since
+     *                                  the epoch)
+     * @param interval                  Interval in milliseconds. No Session is downsampled if it
+     *                                  is not positive, free pages are reclaimed anyway.
+     * @return                          Report containing the number of removed measurements and
+     *                                  freed bytes
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public RetentionReport applyRetention(long before, long interval) throws IllegalStateException {
+        validateConnection();
+
+        final long start = SystemClock.elapsedRealtimeNanos();
+
+        List<Integer> candidates = interval > 0
+                ? Retention.listCandidates(mDatabase, before, interval)
+                : Collections.<Integer>emptyList();
+
+        int sessions = 0;
+        long removed = 0;
+        try {
+            for (int id : candidates) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                mDatabase.beginTransactionNonExclusive();
+                try {
+                    int count = Retention.downsample(mDatabase, id, interval);
+                    mDatabase.setTransactionSuccessful();
+                    if (count > 0) {
+                        sessions++;
+                        removed += count;
                     }
+                } finally {
+                    mDatabase.endTransaction();
                 }
             }
+        } finally {
+            if (sessions > 0) {
+                invalidateSpatialIndex();
+            }
+        }
+
+        long freed = Retention.reclaimSpace(mDatabase);
+
+        return new RetentionReport(sessions, removed, freed,
+                SystemClock.elapsedRealtimeNanos() - start, Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * This method moves every Session which ended before the given time into the compacted
+     * storage tier: Its heartrate is kept per minute (see {@link #getCompactedHeartrate(int)}),
+     * its route is simplified to a tolerance of {@link Compaction#ROUTE_TOLERANCE} meters and it
+     * is stored in packed chunks. Compacted Sessions are read by {@link #get(int)} and all other
+     * methods just like any other Session. Their summary and the rollup tables keep describing
+     * the recorded measurements.<br>
+     * Each Session is compacted in its own transaction and recorded in an audit table, see
+     * {@link #getCompactionSavings()}. The run stops between two Sessions if the calling thread is
+     * interrupted. Call {@link #applyRetention(long, long)} afterwards to release the space.
+     *
+     * @param before                    Time the Sessions have to end before (milliseconds since
+     *                                  the epoch)
+     * @return                          Report containing the number of stored measurements and
+     *                                  bytes before and after
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public CompactionReport compact(long before) throws IllegalStateException {
+        validateConnection();
+
+        final long start = SystemClock.elapsedRealtimeNanos();
+        final long now = System.currentTimeMillis();
+
+        int sessions = 0;
+        long pointsBefore = 0;
+        long pointsAfter = 0;
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        try {
+            for (int id : Compaction.listCandidates(mDatabase, before)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
 
-            return session;
+                mDatabase.beginTransactionNonExclusive();
+                try {
+                    Compaction.Audit audit = Compaction.compact(mDatabase, id, now);
+                    mDatabase.setTransactionSuccessful();
+                    if (audit != null) {
+                        sessions++;
+                        pointsBefore += audit.pointsBefore;
+                        pointsAfter += audit.pointsAfter;
+                        bytesBefore += audit.bytesBefore;
+                        bytesAfter += audit.bytesAfter;
+                    }
+                } finally {
+                    mDatabase.endTransaction();
+                }
+            }
+        } finally {
+            if (sessions > 0) {
+                invalidateSpatialIndex();
+            }
+        }
+
+        return new CompactionReport(sessions, pointsBefore, pointsAfter, bytesBefore, bytesAfter,
+                SystemClock.elapsedRealtimeNanos() - start, Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * This method returns the heartrate of a compacted Session per minute as it was recorded
+     * before the compaction.
+     *
+     * @param sessionId                 ID of the Session
+     * @return                          Rollup of {@link Rollup.Resolution#MINUTE} buckets, empty
+     *                                  if the Session has not been compacted
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public Rollup getCompactedHeartrate(int sessionId) throws IllegalStateException {
+        validateConnection();
+        return Compaction.getBuckets(mDatabase, sessionId);
+    }
+
+    /**
+     * This method returns the estimated number of bytes saved by all compactions so far.
+     *
+     * @return                          Saved bytes
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public long getCompactionSavings() throws IllegalStateException {
+        validateConnection();
+        return Compaction.getSavedBytes(mDatabase);
+    }
+
+    /**
+     * This method returns the heartrate of all Sessions aggregated into time buckets. The finest
+     * {@link Rollup.Resolution} whose number of buckets in the given range does not exceed the
+     * point budget is used, so long ranges are answered from the day or week tables without
+     * touching single measurements.
+     *
+     * @param from                      Start of the range in local time (inclusive)
+     * @param to                        End of the range in local time (exclusive)
+     * @param maxPoints                 Maximum number of buckets to return
+     * @return                          Rollup containing at most maxPoints buckets
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public Rollup getHeartrateRollup(long from, long to, int maxPoints)
+            throws IllegalStateException {
+
+        validateConnection();
+        return RollupTables.query(mDatabase, from, to, maxPoints);
+    }
+
+    /**
+     * This method returns the parts of all Sessions passing through a map viewport, e.g. to
+     * highlight them while the map is panned. Each match covers one or more consecutive segments
+     * of up to {@link SegmentTable#SEGMENT_SIZE} measurements, so its time range may contain a
+     * few measurements just outside the viewport. Use
+     * {@link #getMeasurements(int, long, long, int)} to load them.<br>
+     * The segments are held in an in-memory R-tree which is built on the first call and after
+     * every change, so panning only costs a tree traversal.
+     *
+     * @param minLatitude               Southern border of the viewport
+     * @param minLongitude              Western border of the viewport. If it is greater than
+     *                                  maxLongitude the viewport crosses the antimeridian.
+     * @param maxLatitude               Northern border of the viewport
+     * @param maxLongitude              Eastern border of the viewport
+     * @return                          Matching measurement ranges ordered by Session and time
+     * @throws IllegalStateException    If there is no active database connection
+     */
+    public List<AreaMatch> findInArea(double minLatitude, double minLongitude, double maxLatitude,
+                                      double maxLongitude) throws IllegalStateException {
+
+        validateConnection();
+
+        SpatialIndex index;
+        synchronized (mSpatialIndexLock) {
+            if (mSpatialIndex == null) {
+                mSpatialIndex = SegmentTable.load(mDatabase);
+            }
+            index = mSpatialIndex;
+        }
+
+        return index.query(minLatitude, minLongitude, maxLatitude, maxLongitude);
+    }
+
+    /*
+     * Called after every committed (or rolled back) write. Holding the lock makes sure an index
+     * that is being loaded concurrently from an older snapshot is discarded as well.
+     */
+    private void invalidateSpatialIndex() {
+        synchronized (mSpatialIndexLock) {
+            mSpatialIndex = null;
         }
     }
 }
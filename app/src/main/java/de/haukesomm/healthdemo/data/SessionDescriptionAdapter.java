@@ -22,6 +22,7 @@ import android.widget.BaseAdapter;
 import android.widget.TextView;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import de.haukesomm.healthdemo.R;
 import de.haukesomm.healthdemo.ui.DataActivity;
@@ -31,7 +32,9 @@ import de.haukesomm.healthdemo.ui.DataActivity;
  * <p>
  * This class is a subclass of {@link BaseAdapter} and functions as a List- or Spinner-Adapter for
  * session data in form of {@link SessionDescription}s.<br>
- * For each cache entry a view representing the basic session info will be generated.
+ * For each cache entry a view representing the basic session info will be generated. If the
+ * entries are {@link SessionSummary}s, their duration and, if known, average heartrate are shown
+ * as well.
  *
  * @author Hauke Sommerfeld
  */
@@ -45,7 +48,8 @@ public class SessionDescriptionAdapter extends BaseAdapter {
      * @param context   The app's context
      * @param sessions    List of tables to display
      */
-    public SessionDescriptionAdapter(@NonNull Context context, @NonNull List<SessionDescription> sessions) {
+    public SessionDescriptionAdapter(@NonNull Context context,
+                                     @NonNull List<? extends SessionDescription> sessions) {
         mContext = context;
         mSessionDescriptions = sessions;
     }
@@ -56,7 +60,7 @@ public class SessionDescriptionAdapter extends BaseAdapter {
 
 
 
-    private final List<SessionDescription> mSessionDescriptions;
+    private final List<? extends SessionDescription> mSessionDescriptions;
 
 
     /**
@@ -118,7 +122,22 @@ public class SessionDescriptionAdapter extends BaseAdapter {
         title.setText(description.description);
 
         TextView summary = view.findViewById(R.id.view_adapter_sessioninfo_summary);
-        summary.setText(description.type.descriptionRes);
+        if (description instanceof SessionSummary && ((SessionSummary) description).pointCount > 0) {
+            SessionSummary stats = (SessionSummary) description;
+            if (stats.hasStatistics()) {
+                summary.setText(mContext.getString(R.string.session_summary,
+                        mContext.getString(stats.type.descriptionRes),
+                        TimeUnit.MILLISECONDS.toMinutes(stats.getDuration()),
+                        Math.round(stats.avgHeartrate)));
+            } else {
+                // Encrypted Sessions only reveal their duration
+                summary.setText(mContext.getString(R.string.session_summary_duration,
+                        mContext.getString(stats.type.descriptionRes),
+                        TimeUnit.MILLISECONDS.toMinutes(stats.getDuration())));
+            }
+        } else {
+            summary.setText(description.type.descriptionRes);
+        }
 
         view.setOnClickListener(new View.OnClickListener() {
             @Override
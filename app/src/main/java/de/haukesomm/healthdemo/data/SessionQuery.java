@@ -0,0 +1,230 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_TYPE;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class describes which {@link SessionSummary}s to read from the {@link SessionDatabase}
+ * using {@link SessionDatabase#query(SessionQuery)}. All conditions are combined and compiled into
+ * a single parameterised statement, so filtering, ordering and truncating happens in the database
+ * and only the requested rows are read. Example:
+ * </p>
+ * <pre>
+ * new SessionQuery()
+ *         .types(SessionType.RUN, SessionType.WALK)
+ *         .startedBetween(from, to)
+ *         .orderBy(SessionQuery.Order.NEWEST_FIRST)
+ *         .limit(5);
+ * </pre>
+ * <p>
+ * Only Sessions whose summary has been computed are returned.
+ * </p>
+ */
+public class SessionQuery {
+
+    /**
+     * This enum consists of all available orders of the results.
+     */
+    public enum Order {
+
+        /**
+         * Most recent Session first
+         */
+        NEWEST_FIRST("m." + SummaryTable.START + " DESC"),
+
+        /**
+         * Oldest Session first
+         */
+        OLDEST_FIRST("m." + SummaryTable.START + " ASC"),
+
+        /**
+         * Longest Session first
+         */
+        LONGEST_FIRST("m." + SummaryTable.END + " - m." + SummaryTable.START + " DESC"),
+
+        /**
+         * Session with the highest average heartrate first
+         */
+        HIGHEST_HEARTRATE_FIRST("m." + SummaryTable.HEARTRATE_AVG + " DESC");
+
+
+        private final String mSql;
+
+
+        Order(String sql) {
+            mSql = sql;
+        }
+    }
+
+
+
+    private final List<String> mConditions = new ArrayList<>();
+
+    private final List<String> mArguments = new ArrayList<>();
+
+    private Order mOrder = Order.NEWEST_FIRST;
+
+    private int mLimit = -1;
+
+
+    /**
+     * Only returns Sessions of the given types. If this method is called multiple times, the
+     * Sessions have to match all calls.
+     *
+     * @param types Types to return
+     * @return      This query
+     */
+    public SessionQuery types(SessionType... types) {
+        if (types.length == 0) {
+            throw new IllegalArgumentException("At least one type is required");
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+        for (SessionType type : types) {
+            placeholders.append(placeholders.length() == 0 ? "?" : ", ?");
+            mArguments.add(type.alias);
+        }
+        mConditions.add("s." + TABLE_SESSIONS_TYPE + " IN (" + placeholders + ")");
+
+        return this;
+    }
+
+    /**
+     * Only returns Sessions which started within the given range.
+     *
+     * @param from  Start of the range in milliseconds since the epoch (inclusive)
+     * @param to    End of the range in milliseconds since the epoch (exclusive)
+     * @return      This query
+     */
+    public SessionQuery startedBetween(long from, long to) {
+        return where("m." + SummaryTable.START + " >= ?", from)
+                .where("m." + SummaryTable.START + " < ?", to);
+    }
+
+    /**
+     * Only returns Sessions whose average heartrate is within the given range.
+     *
+     * @param min   Lowest average heartrate (inclusive)
+     * @param max   Highest average heartrate (inclusive)
+     * @return      This query
+     */
+    public SessionQuery averageHeartrateBetween(double min, double max) {
+        return where("m." + SummaryTable.HEARTRATE_AVG + " >= ?", min)
+                .where("m." + SummaryTable.HEARTRATE_AVG + " <= ?", max);
+    }
+
+    /**
+     * Only returns Sessions in which the heartrate reached the given threshold at least once.
+     *
+     * @param threshold Heartrate
+     * @return          This query
+     */
+    public SessionQuery heartrateReached(int threshold) {
+        return where("m." + SummaryTable.HEARTRATE_MAX + " >= ?", threshold);
+    }
+
+    /**
+     * Only returns Sessions in which the heartrate never exceeded the given threshold.
+     *
+     * @param threshold Heartrate
+     * @return          This query
+     */
+    public SessionQuery heartrateBelow(int threshold) {
+        return where("m." + SummaryTable.HEARTRATE_MAX + " < ?", threshold);
+    }
+
+    /**
+     * Only returns Sessions whose heartrate, distance and bounding box are known, i.e. no
+     * Sessions stored as {@link StorageFormat#ENCRYPTED}.
+     *
+     * @return  This query
+     */
+    public SessionQuery withStatistics() {
+        mConditions.add("m." + SummaryTable.HEARTRATE_AVG + " IS NOT NULL");
+        return this;
+    }
+
+    /**
+     * Sets the order of the results. The default is {@link Order#NEWEST_FIRST}.
+     *
+     * @param order Order
+     * @return      This query
+     */
+    public SessionQuery orderBy(Order order) {
+        mOrder = order;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of results. By default all matching Sessions are returned.
+     *
+     * @param limit Maximum number of results
+     * @return      This query
+     */
+    public SessionQuery limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Negative limit: " + limit);
+        }
+
+        mLimit = limit;
+        return this;
+    }
+
+
+    private SessionQuery where(String condition, Object argument) {
+        mConditions.add(condition);
+        mArguments.add(String.valueOf(argument));
+        return this;
+    }
+
+
+    /*
+     * The summary table is the outer table of the join, so a date range or the default order is
+     * served by the index on its start time and a limit stops the scan early.
+     */
+    String toSql() {
+        StringBuilder sql = new StringBuilder(SummaryTable.SELECT
+                + " FROM " + SummaryTable.TABLE + " m JOIN " + TABLE_SESSIONS + " s ON s."
+                + TABLE_SESSIONS_ID + " = m." + SummaryTable.SESSION);
+
+        for (int i = 0; i < mConditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(mConditions.get(i));
+        }
+
+        sql.append(" ORDER BY ").append(mOrder.mSql);
+
+        if (mLimit >= 0) {
+            sql.append(" LIMIT ").append(mLimit);
+        }
+
+        return sql.append(';').toString();
+    }
+
+    String[] getArguments() {
+        return mArguments.toArray(new String[mArguments.size()]);
+    }
+
+
+    // No Javadoc
+    @Override
+    public String toString() {
+        return toSql() + " " + mArguments;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This is a data class extending {@link SessionDescription} by precomputed statistics about a
+ * {@link Session} such as its duration, heartrate and bounding box. Summaries are maintained by the
+ * {@link SessionDatabase} whenever a Session is added, so they can be listed without loading any
+ * measurements.<br>
+ * Sessions stored as {@link StorageFormat#ENCRYPTED} have no statistics derived from their
+ * heartrates and locations, see {@link #hasStatistics()}.
+ * </p>
+ */
+public class SessionSummary extends SessionDescription {
+
+    private static final double EARTH_RADIUS = 6_371_008.8;
+
+
+    /**
+     * Timestamp of the first measurement in milliseconds since the epoch
+     */
+    public final long startTime;
+
+    /**
+     * Timestamp of the last measurement in milliseconds since the epoch
+     */
+    public final long endTime;
+
+    /**
+     * Number of measurements recorded. Compacted and downsampled Sessions store fewer of them.
+     */
+    public final int pointCount;
+
+    /**
+     * Lowest heartrate, 0 without statistics
+     */
+    public final int minHeartrate;
+
+    /**
+     * Highest heartrate, 0 without statistics
+     */
+    public final int maxHeartrate;
+
+    /**
+     * Average heartrate, NaN without statistics
+     */
+    public final double avgHeartrate;
+
+    /**
+     * Distance covered in meters, NaN without statistics
+     */
+    public final double distance;
+
+    /**
+     * Southern bound of the bounding box, NaN without statistics
+     */
+    public final double minLatitude;
+
+    /**
+     * Northern bound of the bounding box, NaN without statistics
+     */
+    public final double maxLatitude;
+
+    /**
+     * Western bound of the bounding box, NaN without statistics
+     */
+    public final double minLongitude;
+
+    /**
+     * Eastern bound of the bounding box, NaN without statistics
+     */
+    public final double maxLongitude;
+
+
+    SessionSummary(int id, SessionType type, String description, long startTime, long endTime,
+                   int pointCount, int minHeartrate, int maxHeartrate, double avgHeartrate,
+                   double distance, double minLatitude, double maxLatitude, double minLongitude,
+                   double maxLongitude) {
+
+        super(id, type, description);
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.pointCount = pointCount;
+        this.minHeartrate = minHeartrate;
+        this.maxHeartrate = maxHeartrate;
+        this.avgHeartrate = avgHeartrate;
+        this.distance = distance;
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        this.maxLongitude = maxLongitude;
+    }
+
+    /*
+     * Summary of a Session without statistics
+     */
+    SessionSummary(int id, SessionType type, String description, long startTime, long endTime,
+                   int pointCount) {
+
+        this(id, type, description, startTime, endTime, pointCount, 0, 0, Double.NaN,
+                Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+
+    /**
+     * Returns the duration of the Session.
+     *
+     * @return  Duration in milliseconds
+     */
+    public long getDuration() {
+        return endTime - startTime;
+    }
+
+    /**
+     * Returns whether the heartrate, distance and bounding box of the Session are known. They are
+     * not for Sessions stored as {@link StorageFormat#ENCRYPTED}.
+     *
+     * @return  true if the statistics are available
+     */
+    public boolean hasStatistics() {
+        return !Double.isNaN(avgHeartrate);
+    }
+
+
+    /**
+     * Calculates the great-circle distance between two locations using the haversine formula.
+     *
+     * @param lat1  Latitude of the first location
+     * @param lon1  Longitude of the first location
+     * @param lat2  Latitude of the second location
+     * @param lon2  Longitude of the second location
+     * @return      Distance in meters
+     */
+    public static double distanceBetween(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1d, Math.sqrt(a)));
+    }
+
+
+
+    /**
+     * This class calculates a SessionSummary incrementally while the measurements of a Session
+     * are passed to it one by one.
+     */
+    static class Builder {
+
+        private int mCount;
+
+        private long mStart = Long.MAX_VALUE;
+
+        private long mEnd = Long.MIN_VALUE;
+
+        private int mMinHeartrate = Integer.MAX_VALUE;
+
+        private int mMaxHeartrate = Integer.MIN_VALUE;
+
+        private long mHeartrateSum;
+
+        private double mDistance;
+
+        private double mMinLatitude = Double.MAX_VALUE;
+
+        private double mMaxLatitude = -Double.MAX_VALUE;
+
+        private double mMinLongitude = Double.MAX_VALUE;
+
+        private double mMaxLongitude = -Double.MAX_VALUE;
+
+        private double mLastLatitude;
+
+        private double mLastLongitude;
+
+        private boolean mChronological = true;
+
+
+        /**
+         * Adds a single measurement.
+         *
+         * @param timestamp Timestamp in milliseconds since the epoch
+         * @param latitude  Latitude of the user's location
+         * @param longitude Longitude of the user's location
+         * @param heartrate The user's heartrate
+         */
+        void add(long timestamp, double latitude, double longitude, int heartrate) {
+            if (mCount > 0) {
+                // The storage only keeps the last of several measurements sharing a timestamp
+                if (timestamp <= mEnd) {
+                    mChronological = false;
+                }
+                mDistance += distanceBetween(mLastLatitude, mLastLongitude, latitude, longitude);
+            }
+            mCount++;
+
+            mStart = Math.min(mStart, timestamp);
+            mEnd = Math.max(mEnd, timestamp);
+
+            mMinHeartrate = Math.min(mMinHeartrate, heartrate);
+            mMaxHeartrate = Math.max(mMaxHeartrate, heartrate);
+            mHeartrateSum += heartrate;
+
+            mMinLatitude = Math.min(mMinLatitude, latitude);
+            mMaxLatitude = Math.max(mMaxLatitude, latitude);
+            mMinLongitude = Math.min(mMinLongitude, longitude);
+            mMaxLongitude = Math.max(mMaxLongitude, longitude);
+
+            mLastLatitude = latitude;
+            mLastLongitude = longitude;
+        }
+
+        /**
+         * Returns whether all measurements were added in chronological order without any
+         * duplicate timestamps. Otherwise the distance, which follows the order of the
+         * measurements, is not meaningful and duplicates have been counted which are not stored.
+         * The summary has to be computed from the stored measurements instead.
+         *
+         * @return  true if the timestamps of the measurements were strictly increasing
+         */
+        boolean isChronological() {
+            return mChronological;
+        }
+
+        /**
+         * Creates the SessionSummary.
+         *
+         * @param description   Description of the Session
+         * @return              SessionSummary
+         */
+        SessionSummary build(SessionDescription description) {
+            if (mCount == 0) {
+                return new SessionSummary(description.id, description.type,
+                        description.description, 0L, 0L, 0, 0, 0, 0d, 0d, 0d, 0d, 0d, 0d);
+            }
+            return new SessionSummary(description.id, description.type, description.description,
+                    mStart, mEnd, mCount, mMinHeartrate, mMaxHeartrate,
+                    (double) mHeartrateSum / mCount, mDistance,
+                    mMinLatitude, mMaxLatitude, mMinLongitude, mMaxLongitude);
+        }
+    }
+}
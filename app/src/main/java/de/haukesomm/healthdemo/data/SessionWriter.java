@@ -0,0 +1,319 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.HEARTRATE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.LATITUDE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.LONGITUDE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_MEASUREMENTS_SESSION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_DESCRIPTION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_STORAGE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_TYPE;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TIMESTAMP;
+import static de.haukesomm.healthdemo.data.SessionDatabase.UTC_OFFSET;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class writes Sessions into the {@link SessionDatabase} using pre-compiled
+ * {@link SQLiteStatement}s whose parameters are re-bound for every row instead of building a new
+ * {@link android.content.ContentValues} object per measurement.<br>
+ * The {@link SessionSummary} of each Session is computed on the fly and written together with it,
+ * its measurements are merged into the rollup tables (see {@link RollupTables}) and split into
+ * segments for the spatial index (see {@link SegmentTable}) the same way. Its description is added
+ * to the search index (see {@link SearchIndex}).<br>
+ * Measurements are either inserted row by row or encoded into chunks, depending on the
+ * {@link StorageFormat} the writer was created with. Measurements of
+ * {@link StorageFormat#ENCRYPTED} Sessions are neither merged into the rollup tables nor
+ * segmented, and only a reduced summary is written, so they do not appear in plain text
+ * anywhere.<br>
+ * It does not manage transactions itself. The caller is expected to wrap all writes in a single
+ * transaction, otherwise SQLite falls back to one implicit transaction per row.<br>
+ * As a {@link MeasurementSink} it collects streamed measurements in a buffer of fixed size which is
+ * written out whenever it is full, so the memory used does not depend on the size of a Session.
+ * </p>
+ */
+class SessionWriter implements MeasurementSink, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 512;
+
+
+    private final SQLiteStatement mInsertMeasurement;
+
+    private final SQLiteStatement mInsertChunk;
+
+    private final SQLiteStatement mInsertSession;
+
+    private final SQLiteStatement mInsertSummary;
+
+    private final SQLiteStatement mInsertSearchEntry;
+
+    private final RollupTables.Updater mRollups;
+
+    private final SegmentTable.Collector mSegments;
+
+
+    private final SQLiteDatabase mDatabase;
+
+    private final StorageFormat mFormat;
+
+    private final ChunkCipher mCipher;
+
+    private final boolean mPlainText;
+
+    private final boolean mUpdateRollups;
+
+
+    private final MeasurementSeries mBuffer = new MeasurementSeries(BUFFER_SIZE);
+
+
+    private SessionDescription mDescription;
+
+    private SessionSummary.Builder mSummary;
+
+    private int mSessionId;
+
+    private int mChunkSequence;
+
+    private long mLastTimestamp;
+
+    private boolean mStrictlyIncreasing;
+
+    private int mSessions;
+
+    private long mRows;
+
+
+    /**
+     * Creates a new SessionWriter and compiles its statements.
+     *
+     * @param db        Database to write to
+     * @param format    Format to store the measurements in
+     */
+    SessionWriter(SQLiteDatabase db, StorageFormat format) {
+        this(db, format, true);
+    }
+
+    /**
+     * Creates a new SessionWriter and compiles its statements.
+     *
+     * @param db        Database to write to
+     * @param format    Format to store the measurements in
+     * @param rollups   Whether the rollup tables are updated. Pass false if a Session is rewritten
+     *                  with a reduced version of the same recording whose share of the rollups has
+     *                  to be kept, see {@link Compaction}.
+     */
+    SessionWriter(SQLiteDatabase db, StorageFormat format, boolean rollups) {
+        mDatabase = db;
+        mFormat = format;
+        mUpdateRollups = rollups;
+        mCipher = MeasurementStore.getCipher(db, format);
+        mPlainText = format != StorageFormat.ENCRYPTED;
+        mInsertMeasurement = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_MEASUREMENTS
+                + " (" + TABLE_MEASUREMENTS_SESSION + ", " + TIMESTAMP + ", " + UTC_OFFSET + ", "
+                + LATITUDE + ", " + LONGITUDE + ", " + HEARTRATE + ") VALUES (?, ?, ?, ?, ?, ?);");
+        mInsertChunk = MeasurementStore.compileInsertChunk(db);
+        mInsertSession = db.compileStatement("INSERT OR REPLACE INTO " + TABLE_SESSIONS
+                + " (" + TABLE_SESSIONS_ID + ", " + TABLE_SESSIONS_TYPE + ", "
+                + TABLE_SESSIONS_DESCRIPTION + ", " + TABLE_SESSIONS_STORAGE
+                + ") VALUES (?, ?, ?, ?);");
+        mInsertSummary = SummaryTable.compileInsert(db);
+        mInsertSearchEntry = SearchIndex.compileInsert(db);
+        mRollups = new RollupTables.Updater(db);
+        mSegments = new SegmentTable.Collector(db);
+    }
+
+
+    /**
+     * Writes a complete Session including all of its measurements.
+     *
+     * @param session   Session to write
+     */
+    void write(Session session) {
+        beginSession(session);
+
+        MeasurementSeries series = session.getMeasurements();
+        insert(series, 0, series.size());
+
+        endSession();
+    }
+
+    /**
+     * Creates (or overrides) the entry of a Session in the session-table and removes any
+     * measurements previously stored under the same id. All following calls to
+     * {@link #add(long, int, double, double, int)} belong to this Session.
+     *
+     * @param description   Description of the Session
+     */
+    @Override
+    public void beginSession(SessionDescription description) {
+        mDescription = description;
+        mSummary = new SessionSummary.Builder();
+        mSessionId = description.id;
+        mSessions++;
+        mBuffer.clear();
+        mChunkSequence = 0;
+        mLastTimestamp = Long.MIN_VALUE;
+        mStrictlyIncreasing = true;
+
+        if (mUpdateRollups) {
+            RollupTables.removeSession(mDatabase, mSessionId);
+        }
+        MeasurementStore.delete(mDatabase, mSessionId);
+        SegmentTable.delete(mDatabase, mSessionId);
+        SearchIndex.delete(mDatabase, mSessionId);
+        Compaction.delete(mDatabase, mSessionId);
+        mSegments.beginSession(mSessionId);
+
+        mInsertSession.bindLong(1, mSessionId);
+        mInsertSession.bindString(2, description.type.alias);
+        mInsertSession.bindString(3, description.description);
+        mInsertSession.bindLong(4, mFormat.code);
+        mInsertSession.executeInsert();
+
+        SearchIndex.write(mInsertSearchEntry, description);
+    }
+
+    /**
+     * Adds a single measurement to the current Session. It is buffered and written out together
+     * with the following ones.
+     *
+     * @param timestamp Timestamp in milliseconds since the epoch (UTC)
+     * @param utcOffset Zone offset the timestamp was recorded in (minutes)
+     * @param latitude  Latitude of the user's location
+     * @param longitude Longitude of the user's location
+     * @param heartrate The user's heartrate
+     */
+    @Override
+    public void add(long timestamp, int utcOffset, double latitude, double longitude,
+                    int heartrate) {
+
+        mBuffer.add(timestamp, utcOffset, latitude, longitude, heartrate);
+        if (mBuffer.size() == BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes out all buffered measurements of the current Session as well as its
+     * {@link SessionSummary}.
+     */
+    @Override
+    public void endSession() {
+        flush();
+        mRollups.flush();
+        mSegments.flush();
+
+        if (mFormat.chunked && !mStrictlyIncreasing) {
+            // Chunks have to be sorted and free of duplicates to be read by time window
+            MeasurementStore.repack(mDatabase, mSessionId, mCipher);
+        }
+
+        if (mPlainText && mUpdateRollups && !mStrictlyIncreasing) {
+            // Duplicates have been replaced in the storage but were all streamed into the
+            // rollups, so their share is taken back and added again from the stored data
+            RollupTables.subtract(mDatabase, mSessionId, mRollups.getWritten());
+            RollupTables.addSession(mDatabase, mSessionId);
+        }
+        mRollups.clearWritten();
+
+        if (mSummary.isChronological()) {
+            SummaryTable.write(mInsertSummary, mSummary.build(mDescription), mFormat);
+        } else {
+            // The distance depends on the order and duplicates have been replaced, so it has to
+            // be calculated from the stored data
+            SummaryTable.rebuild(mDatabase, mInsertSummary, mDescription);
+        }
+    }
+
+
+    private void flush() {
+        insert(mBuffer, 0, mBuffer.size());
+        mBuffer.clear();
+    }
+
+    private void insert(MeasurementSeries series, int from, int to) {
+        if (mFormat.chunked) {
+            mChunkSequence = MeasurementStore.writeChunks(mInsertChunk, mSessionId, mChunkSequence,
+                    series, from, to, mCipher);
+        } else {
+            insertRows(series, from, to);
+        }
+
+        for (int i = from; i < to; i++) {
+            mSummary.add(series.getTimestamp(i), series.getLatitude(i), series.getLongitude(i),
+                    series.getHeartrate(i));
+            if (mPlainText) {
+                if (mUpdateRollups) {
+                    mRollups.add(series.getTimestamp(i), series.getUtcOffset(i),
+                            series.getHeartrate(i));
+                }
+                mSegments.add(series.getTimestamp(i), series.getLatitude(i),
+                        series.getLongitude(i));
+            }
+
+            mStrictlyIncreasing &= series.getTimestamp(i) > mLastTimestamp;
+            mLastTimestamp = series.getTimestamp(i);
+        }
+        mRows += to - from;
+    }
+
+    private void insertRows(MeasurementSeries series, int from, int to) {
+        for (int i = from; i < to; i++) {
+            mInsertMeasurement.bindLong(1, mSessionId);
+            mInsertMeasurement.bindLong(2, series.getTimestamp(i));
+            mInsertMeasurement.bindLong(3, series.getUtcOffset(i));
+            mInsertMeasurement.bindDouble(4, series.getLatitude(i));
+            mInsertMeasurement.bindDouble(5, series.getLongitude(i));
+            mInsertMeasurement.bindLong(6, series.getHeartrate(i));
+            mInsertMeasurement.executeInsert();
+        }
+    }
+
+
+    /**
+     * Returns the number of Sessions written by this writer so far.
+     *
+     * @return  Number of Sessions
+     */
+    int getSessions() {
+        return mSessions;
+    }
+
+    /**
+     * Returns the number of measurements inserted by this writer so far.
+     *
+     * @return  Number of inserted rows
+     */
+    long getRows() {
+        return mRows;
+    }
+
+
+    // No Javadoc
+    @Override
+    public void close() {
+        mInsertMeasurement.close();
+        mInsertChunk.close();
+        mInsertSession.close();
+        mInsertSummary.close();
+        mInsertSearchEntry.close();
+        mRollups.close();
+        mSegments.close();
+    }
+}
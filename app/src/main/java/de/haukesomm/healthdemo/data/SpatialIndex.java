@@ -0,0 +1,338 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class is an immutable, in-memory R-tree over the segment bounds of all Sessions (see
+ * {@link SegmentTable}).<br>
+ * It is bulk loaded using Sort-Tile-Recursive packing: the segments are sorted into vertical
+ * slices by longitude, each slice is sorted by latitude, and runs of {@link #NODE_CAPACITY}
+ * segments form the leaves. The upper levels group consecutive nodes the same way. All nodes are
+ * full, so the tree is as flat as possible, and it is stored in plain arrays instead of node
+ * objects.
+ * </p>
+ */
+final class SpatialIndex {
+
+    private static final int NODE_CAPACITY = 16;
+
+
+    // Segments in packing order
+    private final int[] mSessionIds;
+
+    private final int[] mSequences;
+
+    private final long[] mFirsts;
+
+    private final long[] mLasts;
+
+    private final double[] mMinLatitudes;
+
+    private final double[] mMaxLatitudes;
+
+    private final double[] mMinLongitudes;
+
+    private final double[] mMaxLongitudes;
+
+
+    // Bounding boxes of the nodes per level, level 0 being the leaves. Node k of a level covers
+    // the entries k * NODE_CAPACITY until (k + 1) * NODE_CAPACITY of the level below.
+    private final List<double[][]> mLevels = new ArrayList<>();
+
+
+    private SpatialIndex(Builder builder, Integer[] order) {
+        int size = order.length;
+
+        mSessionIds = new int[size];
+        mSequences = new int[size];
+        mFirsts = new long[size];
+        mLasts = new long[size];
+        mMinLatitudes = new double[size];
+        mMaxLatitudes = new double[size];
+        mMinLongitudes = new double[size];
+        mMaxLongitudes = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            int source = order[i];
+            mSessionIds[i] = builder.mSessionIds[source];
+            mSequences[i] = builder.mSequences[source];
+            mFirsts[i] = builder.mFirsts[source];
+            mLasts[i] = builder.mLasts[source];
+            mMinLatitudes[i] = builder.mMinLatitudes[source];
+            mMaxLatitudes[i] = builder.mMaxLatitudes[source];
+            mMinLongitudes[i] = builder.mMinLongitudes[source];
+            mMaxLongitudes[i] = builder.mMaxLongitudes[source];
+        }
+
+        double[][] level = pack(new double[][] {
+                mMinLatitudes, mMaxLatitudes, mMinLongitudes, mMaxLongitudes }, size);
+        mLevels.add(level);
+        while (level[0].length > 1) {
+            level = pack(level, level[0].length);
+            mLevels.add(level);
+        }
+    }
+
+    private static double[][] pack(double[][] children, int count) {
+        int nodes = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        double[][] level = new double[4][nodes];
+
+        for (int node = 0; node < nodes; node++) {
+            int from = node * NODE_CAPACITY;
+            int to = Math.min(from + NODE_CAPACITY, count);
+
+            level[0][node] = Double.POSITIVE_INFINITY;
+            level[1][node] = Double.NEGATIVE_INFINITY;
+            level[2][node] = Double.POSITIVE_INFINITY;
+            level[3][node] = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                level[0][node] = Math.min(level[0][node], children[0][i]);
+                level[1][node] = Math.max(level[1][node], children[1][i]);
+                level[2][node] = Math.min(level[2][node], children[2][i]);
+                level[3][node] = Math.max(level[3][node], children[3][i]);
+            }
+        }
+
+        return level;
+    }
+
+
+    /**
+     * Returns the number of segments in the index.
+     *
+     * @return  Number of segments
+     */
+    int size() {
+        return mSessionIds.length;
+    }
+
+    /**
+     * Returns the parts of all Sessions passing through an area. If minLongitude is greater than
+     * maxLongitude the area is assumed to cross the antimeridian.
+     *
+     * @param minLatitude   Southern border of the area
+     * @param minLongitude  Western border of the area
+     * @param maxLatitude   Northern border of the area
+     * @param maxLongitude  Eastern border of the area
+     * @return              Matching measurement ranges ordered by Session and time
+     */
+    List<AreaMatch> query(double minLatitude, double minLongitude, double maxLatitude,
+                          double maxLongitude) {
+
+        BitSet hits = new BitSet(size());
+        if (minLongitude <= maxLongitude) {
+            search(minLatitude, minLongitude, maxLatitude, maxLongitude, hits);
+        } else {
+            search(minLatitude, minLongitude, maxLatitude, 180d, hits);
+            search(minLatitude, -180d, maxLatitude, maxLongitude, hits);
+        }
+
+        return merge(hits);
+    }
+
+    private void search(double minLatitude, double minLongitude, double maxLatitude,
+                        double maxLongitude, BitSet hits) {
+
+        if (size() == 0) {
+            return;
+        }
+
+        // Pairs of level and node index still to visit
+        int[] stack = new int[2 * NODE_CAPACITY * mLevels.size()];
+        int top = 0;
+        stack[top++] = mLevels.size() - 1;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+
+            int from = node * NODE_CAPACITY;
+            if (level == 0) {
+                int to = Math.min(from + NODE_CAPACITY, size());
+                for (int i = from; i < to; i++) {
+                    if (intersects(mMinLatitudes[i], mMaxLatitudes[i], mMinLongitudes[i],
+                            mMaxLongitudes[i], minLatitude, minLongitude, maxLatitude,
+                            maxLongitude)) {
+                        hits.set(i);
+                    }
+                }
+                continue;
+            }
+
+            double[][] children = mLevels.get(level - 1);
+            int to = Math.min(from + NODE_CAPACITY, children[0].length);
+            for (int child = from; child < to; child++) {
+                if (intersects(children[0][child], children[1][child], children[2][child],
+                        children[3][child], minLatitude, minLongitude, maxLatitude,
+                        maxLongitude)) {
+                    stack[top++] = level - 1;
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    private static boolean intersects(double minLat, double maxLat, double minLon, double maxLon,
+                                      double queryMinLat, double queryMinLon, double queryMaxLat,
+                                      double queryMaxLon) {
+        return minLat <= queryMaxLat && maxLat >= queryMinLat
+                && minLon <= queryMaxLon && maxLon >= queryMinLon;
+    }
+
+    /*
+     * Consecutive segments of the same Session are merged into a single range.
+     */
+    private List<AreaMatch> merge(BitSet hits) {
+        Integer[] matches = new Integer[hits.cardinality()];
+        int count = 0;
+        for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1)) {
+            matches[count++] = i;
+        }
+
+        Arrays.sort(matches, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (mSessionIds[a] != mSessionIds[b]) {
+                    return mSessionIds[a] < mSessionIds[b] ? -1 : 1;
+                }
+                return mSequences[a] < mSequences[b] ? -1 : (mSequences[a] == mSequences[b] ? 0 : 1);
+            }
+        });
+
+        List<AreaMatch> result = new ArrayList<>();
+        int start = 0;
+        for (int k = 1; k <= matches.length; k++) {
+            if (k < matches.length && mSessionIds[matches[k]] == mSessionIds[matches[start]]
+                    && mSequences[matches[k]] == mSequences[matches[k - 1]] + 1) {
+                continue;
+            }
+
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            for (int j = start; j < k; j++) {
+                first = Math.min(first, mFirsts[matches[j]]);
+                last = Math.max(last, mLasts[matches[j]]);
+            }
+            result.add(new AreaMatch(mSessionIds[matches[start]], first, last));
+            start = k;
+        }
+
+        return result;
+    }
+
+
+
+    /**
+     * This class collects the segments and packs them into a SpatialIndex.
+     */
+    static class Builder {
+
+        private int mSize;
+
+        private int[] mSessionIds;
+
+        private int[] mSequences;
+
+        private long[] mFirsts;
+
+        private long[] mLasts;
+
+        private double[] mMinLatitudes;
+
+        private double[] mMaxLatitudes;
+
+        private double[] mMinLongitudes;
+
+        private double[] mMaxLongitudes;
+
+
+        Builder(int capacity) {
+            mSessionIds = new int[capacity];
+            mSequences = new int[capacity];
+            mFirsts = new long[capacity];
+            mLasts = new long[capacity];
+            mMinLatitudes = new double[capacity];
+            mMaxLatitudes = new double[capacity];
+            mMinLongitudes = new double[capacity];
+            mMaxLongitudes = new double[capacity];
+        }
+
+
+        void add(int sessionId, int sequence, long first, long last, double minLatitude,
+                 double maxLatitude, double minLongitude, double maxLongitude) {
+
+            if (mSize == mSessionIds.length) {
+                int capacity = Math.max(16, mSize * 2);
+                mSessionIds = Arrays.copyOf(mSessionIds, capacity);
+                mSequences = Arrays.copyOf(mSequences, capacity);
+                mFirsts = Arrays.copyOf(mFirsts, capacity);
+                mLasts = Arrays.copyOf(mLasts, capacity);
+                mMinLatitudes = Arrays.copyOf(mMinLatitudes, capacity);
+                mMaxLatitudes = Arrays.copyOf(mMaxLatitudes, capacity);
+                mMinLongitudes = Arrays.copyOf(mMinLongitudes, capacity);
+                mMaxLongitudes = Arrays.copyOf(mMaxLongitudes, capacity);
+            }
+
+            mSessionIds[mSize] = sessionId;
+            mSequences[mSize] = sequence;
+            mFirsts[mSize] = first;
+            mLasts[mSize] = last;
+            mMinLatitudes[mSize] = minLatitude;
+            mMaxLatitudes[mSize] = maxLatitude;
+            mMinLongitudes[mSize] = minLongitude;
+            mMaxLongitudes[mSize] = maxLongitude;
+            mSize++;
+        }
+
+        SpatialIndex build() {
+            Integer[] order = new Integer[mSize];
+            for (int i = 0; i < mSize; i++) {
+                order[i] = i;
+            }
+
+            // Sort-Tile-Recursive: vertical slices by longitude, sorted by latitude within
+            int leaves = (mSize + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            int slices = (int) Math.ceil(Math.sqrt(leaves));
+            int sliceSize = slices * NODE_CAPACITY;
+
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(mMinLongitudes[a] + mMaxLongitudes[a],
+                            mMinLongitudes[b] + mMaxLongitudes[b]);
+                }
+            });
+
+            Comparator<Integer> byLatitude = new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(mMinLatitudes[a] + mMaxLatitudes[a],
+                            mMinLatitudes[b] + mMaxLatitudes[b]);
+                }
+            };
+            for (int from = 0; from < mSize; from += sliceSize) {
+                Arrays.sort(order, from, Math.min(from + sliceSize, mSize), byLatitude);
+            }
+
+            return new SpatialIndex(this, order);
+        }
+    }
+}
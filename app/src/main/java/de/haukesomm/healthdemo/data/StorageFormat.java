@@ -0,0 +1,71 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This enum consists of all formats the measurements of a Session can be stored in.
+ * </p>
+ */
+public enum StorageFormat {
+
+    /**
+     * One table row per measurement
+     */
+    ROWS(0, false),
+
+    /**
+     * Delta and varint encoded blobs of up to 512 measurements each, see {@link MeasurementCodec}.
+     * Coordinates are rounded to 1e-7 degrees (about one centimeter).
+     */
+    PACKED(1, true),
+
+    /**
+     * Chunks like {@link #PACKED}, each encrypted with AES-GCM, see {@link ChunkCipher}. Only the
+     * first and last timestamp of each chunk are stored in plain text.
+     */
+    ENCRYPTED(2, true);
+
+
+    /**
+     * Code to represent the format in an SQL database such as {@link SessionDatabase}.
+     */
+    public final int code;
+
+    /**
+     * Whether the measurements are stored in chunks
+     */
+    final boolean chunked;
+
+
+    StorageFormat(int code, boolean chunked) {
+        this.code = code;
+        this.chunked = chunked;
+    }
+
+
+    /**
+     * This method finds a format by it's code and returns it.
+     *
+     * @param code  Code
+     * @return      StorageFormat
+     */
+    public static StorageFormat get(int code) {
+        for (StorageFormat format : StorageFormat.values()) {
+            if (format.code == code) {
+                return format;
+            }
+        }
+        return ROWS;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_DESCRIPTION;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_ID;
+import static de.haukesomm.healthdemo.data.SessionDatabase.TABLE_SESSIONS_TYPE;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class manages the <code>session_summary</code> table of the {@link SessionDatabase} which
+ * contains one precomputed {@link SessionSummary} per Session. Rows are written by the
+ * {@link SessionWriter} in the same transaction as the Session itself.<br>
+ * Sessions stored as {@link StorageFormat#ENCRYPTED} only keep their time span and number of
+ * measurements, which the plain text bounds of their chunks reveal anyway. All columns derived
+ * from their heartrates and locations are NULL, so they never match a heartrate filter.
+ * </p>
+ */
+final class SummaryTable {
+
+    static final String TABLE = "session_summary";
+
+    static final String SESSION = "session_id";
+
+    static final String START = "start_time";
+
+    static final String END = "end_time";
+
+    static final String POINTS = "point_count";
+
+    static final String HEARTRATE_MIN = "heartrate_min";
+
+    static final String HEARTRATE_MAX = "heartrate_max";
+
+    static final String HEARTRATE_AVG = "heartrate_avg";
+
+    static final String DISTANCE = "distance";
+
+    static final String LATITUDE_MIN = "latitude_min";
+
+    static final String LATITUDE_MAX = "latitude_max";
+
+    static final String LONGITUDE_MIN = "longitude_min";
+
+    static final String LONGITUDE_MAX = "longitude_max";
+
+
+    /**
+     * Selects all columns needed by {@link #read(Cursor)} from the session-table (aliased as
+     * <code>s</code>) and the summary-table (aliased as <code>m</code>) without a FROM clause.
+     */
+    static final String SELECT = "SELECT "
+            + "s." + TABLE_SESSIONS_ID + ", s." + TABLE_SESSIONS_TYPE + ", "
+            + "s." + TABLE_SESSIONS_DESCRIPTION + ", "
+            + "m." + START + ", m." + END + ", m." + POINTS + ", "
+            + "m." + HEARTRATE_MIN + ", m." + HEARTRATE_MAX + ", m." + HEARTRATE_AVG + ", "
+            + "m." + DISTANCE + ", m." + LATITUDE_MIN + ", m." + LATITUDE_MAX + ", "
+            + "m." + LONGITUDE_MIN + ", m." + LONGITUDE_MAX;
+
+    /**
+     * Selects all columns needed by {@link #read(Cursor)} from the session-table (aliased as
+     * <code>s</code>) joined with the summary-table (aliased as <code>m</code>).
+     */
+    static final String SELECT_JOINED = SELECT
+            + " FROM " + TABLE_SESSIONS + " s LEFT JOIN " + TABLE + " m ON m." + SESSION
+            + " = s." + TABLE_SESSIONS_ID;
+
+
+    private SummaryTable() {
+        // Static helper class
+    }
+
+
+    static void create(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                + SESSION       + " INTEGER NOT NULL PRIMARY KEY, "
+                + START         + " INTEGER NOT NULL, "
+                + END           + " INTEGER NOT NULL, "
+                + POINTS        + " INTEGER NOT NULL, "
+                + HEARTRATE_MIN + " INTEGER, "
+                + HEARTRATE_MAX + " INTEGER, "
+                + HEARTRATE_AVG + " REAL, "
+                + DISTANCE      + " REAL, "
+                + LATITUDE_MIN  + " REAL, "
+                + LATITUDE_MAX  + " REAL, "
+                + LONGITUDE_MIN + " REAL, "
+                + LONGITUDE_MAX + " REAL);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE + "_" + START
+                + " ON " + TABLE + " (" + START + ");");
+    }
+
+
+    static SQLiteStatement compileInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " VALUES "
+                + "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);");
+    }
+
+    static void write(SQLiteStatement insert, SessionSummary summary, StorageFormat format) {
+        insert.bindLong(1, summary.id);
+        insert.bindLong(2, summary.startTime);
+        insert.bindLong(3, summary.endTime);
+        insert.bindLong(4, summary.pointCount);
+
+        if (format == StorageFormat.ENCRYPTED) {
+            for (int i = 5; i <= 12; i++) {
+                insert.bindNull(i);
+            }
+        } else {
+            insert.bindLong(5, summary.minHeartrate);
+            insert.bindLong(6, summary.maxHeartrate);
+            insert.bindDouble(7, summary.avgHeartrate);
+            insert.bindDouble(8, summary.distance);
+            insert.bindDouble(9, summary.minLatitude);
+            insert.bindDouble(10, summary.maxLatitude);
+            insert.bindDouble(11, summary.minLongitude);
+            insert.bindDouble(12, summary.maxLongitude);
+        }
+        insert.executeInsert();
+    }
+
+
+    /**
+     * Recomputes the summary of a Session from its stored measurements in chronological order.
+     *
+     * @param db            Database
+     * @param insert        Statement compiled by {@link #compileInsert(SQLiteDatabase)}
+     * @param description   Session to summarize
+     */
+    static void rebuild(SQLiteDatabase db, SQLiteStatement insert, SessionDescription description) {
+        final SessionSummary.Builder builder = new SessionSummary.Builder();
+
+        MeasurementStore.forEach(db, description.id, Long.MIN_VALUE, Long.MAX_VALUE,
+                new MeasurementVisitor() {
+            @Override
+            public void visit(long timestamp, int utcOffset, double latitude, double longitude,
+                              int heartrate) {
+                builder.add(timestamp, latitude, longitude, heartrate);
+            }
+        });
+
+        write(insert, builder.build(description), MeasurementStore.getFormat(db, description.id));
+    }
+
+    /**
+     * Recomputes the summary of a single Session from its stored measurements.
+     *
+     * @param db        Database
+     * @param sessionId ID of the Session
+     */
+    static void rebuild(SQLiteDatabase db, int sessionId) {
+        SessionDescription description;
+        try (Cursor cursor = db.query(TABLE_SESSIONS, null, TABLE_SESSIONS_ID + " = ?",
+                new String[] { String.valueOf(sessionId) }, null, null, null)) {
+
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            description = new SessionDescription(cursor.getInt(0),
+                    SessionType.get(cursor.getString(1)), cursor.getString(2));
+        }
+
+        try (SQLiteStatement insert = compileInsert(db)) {
+            rebuild(db, insert, description);
+        }
+    }
+
+
+    /**
+     * Reads a SessionSummary from a Cursor created from {@link #SELECT_JOINED}. If the statistics
+     * of the Session are NULL, the SessionSummary has none (see
+     * {@link SessionSummary#hasStatistics()}).
+     *
+     * @param cursor    Cursor
+     * @return          SessionSummary
+     */
+    static SessionSummary read(Cursor cursor) {
+        if (cursor.isNull(8)) {
+            return new SessionSummary(
+                    cursor.getInt(0),
+                    SessionType.get(cursor.getString(1)),
+                    cursor.getString(2),
+                    cursor.getLong(3),
+                    cursor.getLong(4),
+                    cursor.getInt(5));
+        }
+        return new SessionSummary(
+                cursor.getInt(0),
+                SessionType.get(cursor.getString(1)),
+                cursor.getString(2),
+                cursor.getLong(3),
+                cursor.getLong(4),
+                cursor.getInt(5),
+                cursor.getInt(6),
+                cursor.getInt(7),
+                cursor.getDouble(8),
+                cursor.getDouble(9),
+                cursor.getDouble(10),
+                cursor.getDouble(11),
+                cursor.getDouble(12),
+                cursor.getDouble(13));
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This interface receives the {@link SessionSummary}s matching a {@link SessionQuery} one by one
+ * when passed to {@link SessionDatabase#forEachSummary(SessionQuery, SummaryVisitor)}, so
+ * aggregates over many Sessions can be computed without keeping all summaries in memory.
+ * </p>
+ */
+public interface SummaryVisitor {
+
+    /**
+     * Called for every matching Session in the order of the query.
+     *
+     * @param summary   Summary of the Session
+     */
+    void visit(SessionSummary summary);
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This stage reduces the spatial resolution of a stream by moving every location to the center of
+ * the grid cell containing it. A cell spans the same number of degrees in both directions.
+ * </p>
+ */
+public class CoarseningStage extends PrivacyStage {
+
+    private final double mCellSize;
+
+
+    /**
+     * Creates a new CoarseningStage.
+     *
+     * @param cellSize  Size of a grid cell in degrees
+     * @param next      Stage or consumer receiving the output of this stage
+     */
+    public CoarseningStage(double cellSize, MeasurementVisitor next) {
+        super(next);
+
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        mCellSize = cellSize;
+    }
+
+
+    // No Javadoc
+    @Override
+    public void visit(long timestamp, int utcOffset, double latitude, double longitude,
+                      int heartrate) {
+        mNext.visit(timestamp, utcOffset,
+                Math.max(-90.0, Math.min(90.0, snap(latitude))),
+                Math.max(-180.0, Math.min(180.0, snap(longitude))),
+                heartrate);
+    }
+
+
+    private double snap(double degrees) {
+        return (Math.floor(degrees / mCellSize) + 0.5) * mCellSize;
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This stage reduces the temporal resolution of a stream by passing on only the first measurement
+ * of every interval. Intervals are aligned to the epoch, so two streams covering the same time
+ * keep measurements from the same intervals. The measurements have to arrive in chronological
+ * order.
+ * </p>
+ */
+public class DownsamplingStage extends PrivacyStage {
+
+    private final long mInterval;
+
+    private long mNextInterval = Long.MIN_VALUE;
+
+
+    /**
+     * Creates a new DownsamplingStage.
+     *
+     * @param interval  Length of an interval in milliseconds
+     * @param next      Stage or consumer receiving the output of this stage
+     */
+    public DownsamplingStage(long interval, MeasurementVisitor next) {
+        super(next);
+
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        mInterval = interval;
+    }
+
+
+    // No Javadoc
+    @Override
+    public void visit(long timestamp, int utcOffset, double latitude, double longitude,
+                      int heartrate) {
+        if (timestamp < mNextInterval) {
+            return;
+        }
+
+        // Recorded timestamps are never negative, so the remainder is the offset in the interval
+        mNextInterval = timestamp - timestamp % mInterval + mInterval;
+        mNext.visit(timestamp, utcOffset, latitude, longitude, heartrate);
+    }
+}
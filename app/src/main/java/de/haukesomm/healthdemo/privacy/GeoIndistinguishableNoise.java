@@ -0,0 +1,70 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This strategy adds planar Laplace noise to every location, which makes it
+ * &epsilon;-geo-indistinguishable: any two locations within a distance of <i>r</i> meters produce
+ * a given output with probabilities differing by a factor of at most <i>e<sup>&epsilon;r</sup></i>.
+ * The distance of the noise follows a Gamma(2, 1/&epsilon;) distribution, its direction is
+ * uniform. The mean distance is 2/&epsilon; meters.<br>
+ * The noise of a measurement is derived from the seed and its timestamp only, so it does not
+ * depend on how the Session is split into pages. The guarantee holds per location; a longer stay
+ * at the same place can be averaged out by an observer of the whole Session.
+ * </p>
+ */
+public class GeoIndistinguishableNoise implements ObfuscationStrategy {
+
+    private final double mEpsilon;
+
+
+    /**
+     * Creates a new GeoIndistinguishableNoise strategy.
+     *
+     * @param epsilon   Privacy parameter per meter, e.g. ln(4) / 200 to make any two locations
+     *                  200 meters apart at most four times as likely to produce an output
+     */
+    public GeoIndistinguishableNoise(double epsilon) {
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("Epsilon must be positive: " + epsilon);
+        }
+        mEpsilon = epsilon;
+    }
+
+
+    // No Javadoc
+    @Override
+    public int apply(long[] timestamps, double[] latitudes, double[] longitudes, int count,
+                     long seed) {
+        double scale = 1.0 / (mEpsilon * ObfuscationEngine.METERS_PER_DEGREE);
+
+        for (int i = 0; i < count; i++) {
+            long hash = ObfuscationEngine.mix(seed ^ timestamps[i]);
+            double u1 = ObfuscationEngine.toUnit(hash);
+            hash = ObfuscationEngine.mix(hash);
+            double u2 = ObfuscationEngine.toUnit(hash);
+            hash = ObfuscationEngine.mix(hash);
+            double angle = ObfuscationEngine.toUnit(hash) * 2 * Math.PI;
+
+            // Sum of two exponential distributions, in degrees of latitude
+            double distance = -Math.log(u1 * u2) * scale;
+            double cos = Math.max(Math.cos(Math.toRadians(latitudes[i])), 1e-6);
+
+            latitudes[i] += distance * Math.sin(angle);
+            longitudes[i] += distance * Math.cos(angle) / cos;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This strategy moves every location to the center of the grid cell containing it. A cell spans
+ * the same number of degrees in both directions. The seed is not used.
+ * </p>
+ */
+public class GridSnapping implements ObfuscationStrategy {
+
+    private final double mCellSize;
+
+
+    /**
+     * Creates a new GridSnapping strategy.
+     *
+     * @param cellSize  Size of a grid cell in degrees
+     */
+    public GridSnapping(double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        mCellSize = cellSize;
+    }
+
+
+    // No Javadoc
+    @Override
+    public int apply(long[] timestamps, double[] latitudes, double[] longitudes, int count,
+                     long seed) {
+        // Kept free of branches and calls, so the JIT can unroll and vectorize the loops
+        double size = mCellSize;
+        double inverse = 1.0 / size;
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = (Math.floor(latitudes[i] * inverse) + 0.5) * size;
+        }
+        for (int i = 0; i < count; i++) {
+            longitudes[i] = (Math.floor(longitudes[i] * inverse) + 0.5) * size;
+        }
+        return count;
+    }
+}
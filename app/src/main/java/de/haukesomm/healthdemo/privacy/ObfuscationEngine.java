@@ -0,0 +1,172 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.haukesomm.healthdemo.R;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class obfuscates the locations of a Session for {@link PrivacyMode#OBFUSCATION} by
+ * applying a list of {@link ObfuscationStrategy}s to its primitive arrays one after another. Each
+ * strategy runs over all measurements in a single loop before the next one starts.<br>
+ * The result only depends on the measurements and the seed of the Session, which is derived from
+ * its ID and a secret created once per installation. Obfuscating a Session again therefore
+ * produces the same locations, while nobody without the secret can reproduce the noise.
+ * </p>
+ */
+public final class ObfuscationEngine {
+
+    /**
+     * Length of a degree of latitude in meters
+     */
+    static final double METERS_PER_DEGREE = 111320.0;
+
+
+    /**
+     * Radius around the start and the end of a Session removed by {@link #createDefault()}
+     */
+    public static final double DEFAULT_ZONE_RADIUS = 200.0;
+
+    /**
+     * Privacy parameter of the noise added by {@link #createDefault()}: locations 200 meters apart
+     * are at most four times as likely to produce the same output
+     */
+    public static final double DEFAULT_EPSILON = Math.log(4) / 200.0;
+
+    /**
+     * Grid cell size the noisy locations are snapped to by {@link #createDefault()}
+     */
+    public static final double DEFAULT_CELL_SIZE = 0.0005;
+
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+
+    private final List<ObfuscationStrategy> mStrategies;
+
+
+    /**
+     * Creates a new ObfuscationEngine.
+     *
+     * @param strategies    Strategies in the order they are applied
+     */
+    public ObfuscationEngine(ObfuscationStrategy... strategies) {
+        mStrategies = Collections.unmodifiableList(Arrays.asList(strategies.clone()));
+    }
+
+
+    /**
+     * Creates an ObfuscationEngine which removes the zones around the start and the end first,
+     * adds noise to the remaining locations and snaps them to a grid, so the output does not carry
+     * more precision than the noise leaves.
+     *
+     * @return  ObfuscationEngine
+     */
+    public static ObfuscationEngine createDefault() {
+        return new ObfuscationEngine(
+                new ZoneMasking(DEFAULT_ZONE_RADIUS),
+                new GeoIndistinguishableNoise(DEFAULT_EPSILON),
+                new GridSnapping(DEFAULT_CELL_SIZE));
+    }
+
+
+    /**
+     * Returns the secret of this installation the seeds are derived from. It is created on the
+     * first call.
+     *
+     * @param context   Any context
+     * @return          Secret
+     */
+    public static long getSecret(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String key = context.getString(R.string.pref_long_privacy_obfuscation_secret);
+
+        synchronized (ObfuscationEngine.class) {
+            if (!prefs.contains(key)) {
+                prefs.edit().putLong(key, new SecureRandom().nextLong()).commit();
+            }
+            return prefs.getLong(key, 0L);
+        }
+    }
+
+    /**
+     * Returns the seed of a Session.
+     *
+     * @param secret    Secret returned by {@link #getSecret(Context)}
+     * @param sessionId ID of the Session
+     * @return          Seed
+     */
+    public static long getSeed(long secret, int sessionId) {
+        return mix(secret ^ mix(sessionId));
+    }
+
+
+    /**
+     * Obfuscates the first <code>count</code> measurements of the given arrays in place. See
+     * {@link ObfuscationStrategy#apply(long[], double[], double[], int, long)}.
+     *
+     * @param timestamps    Timestamps in milliseconds since the epoch (UTC), chronological
+     * @param latitudes     Latitudes
+     * @param longitudes    Longitudes
+     * @param count         Number of measurements
+     * @param seed          Seed of the Session
+     * @return              Number of remaining measurements
+     */
+    public int apply(long[] timestamps, double[] latitudes, double[] longitudes, int count,
+                     long seed) {
+        if (timestamps.length < count || latitudes.length < count || longitudes.length < count) {
+            throw new IllegalArgumentException("Arrays are shorter than " + count);
+        }
+
+        for (ObfuscationStrategy strategy : mStrategies) {
+            count = strategy.apply(timestamps, latitudes, longitudes, count, seed);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the strategies in the order they are applied.
+     *
+     * @return  Unmodifiable list of strategies
+     */
+    public List<ObfuscationStrategy> getStrategies() {
+        return mStrategies;
+    }
+
+
+    /*
+     * SplitMix64: every bit of the input affects every bit of the output
+     */
+    static long mix(long value) {
+        long z = value + GOLDEN_GAMMA;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /*
+     * Uniform in (0, 1], so the result can be passed to Math.log()
+     */
+    static double toUnit(long hash) {
+        return ((hash >>> 11) + 1) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import java.util.Arrays;
+
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This stage applies an {@link ObfuscationEngine} to a stream. The strategies of the engine work
+ * on a whole Session at once, so the stream is buffered and only passed on in {@link #finish()}.
+ * Measurements removed by a strategy are dropped, the UTC offset and the heartrate of the
+ * remaining ones are passed on unchanged. The measurements have to arrive in chronological order
+ * and their timestamps have to be unique, as they are in the database.
+ * </p>
+ */
+public class ObfuscationStage extends PrivacyStage {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+
+    private final ObfuscationEngine mEngine;
+
+    private final long mSeed;
+
+
+    private long[] mTimestamps = new long[INITIAL_CAPACITY];
+
+    private int[] mUtcOffsets = new int[INITIAL_CAPACITY];
+
+    private double[] mLatitudes = new double[INITIAL_CAPACITY];
+
+    private double[] mLongitudes = new double[INITIAL_CAPACITY];
+
+    private int[] mHeartrates = new int[INITIAL_CAPACITY];
+
+    private int mCount;
+
+
+    /**
+     * Creates a new ObfuscationStage.
+     *
+     * @param engine    Engine applied to the stream
+     * @param seed      Seed of the Session, see {@link ObfuscationEngine#getSeed(long, int)}
+     * @param next      Stage or consumer receiving the output of this stage
+     */
+    public ObfuscationStage(ObfuscationEngine engine, long seed, MeasurementVisitor next) {
+        super(next);
+        mEngine = engine;
+        mSeed = seed;
+    }
+
+
+    // No Javadoc
+    @Override
+    public void visit(long timestamp, int utcOffset, double latitude, double longitude,
+                      int heartrate) {
+        if (mCount == mTimestamps.length) {
+            int capacity = mCount * 2;
+            mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+            mUtcOffsets = Arrays.copyOf(mUtcOffsets, capacity);
+            mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+            mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+            mHeartrates = Arrays.copyOf(mHeartrates, capacity);
+        }
+
+        mTimestamps[mCount] = timestamp;
+        mUtcOffsets[mCount] = utcOffset;
+        mLatitudes[mCount] = latitude;
+        mLongitudes[mCount] = longitude;
+        mHeartrates[mCount] = heartrate;
+        mCount++;
+    }
+
+
+    // No Javadoc
+    @Override
+    public void finish() {
+        // The strategies only move the timestamps, the other columns are matched by them below
+        long[] original = Arrays.copyOf(mTimestamps, mCount);
+        int remaining = mEngine.apply(mTimestamps, mLatitudes, mLongitudes, mCount, mSeed);
+
+        int source = 0;
+        for (int i = 0; i < remaining; i++) {
+            while (source < mCount && original[source] != mTimestamps[i]) {
+                source++;
+            }
+            if (source == mCount) {
+                break;
+            }
+
+            mNext.visit(mTimestamps[i], mUtcOffsets[source], mLatitudes[i], mLongitudes[i],
+                    mHeartrates[source]);
+        }
+
+        mCount = 0;
+        super.finish();
+    }
+}
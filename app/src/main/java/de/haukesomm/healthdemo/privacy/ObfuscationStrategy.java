@@ -0,0 +1,38 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This interface is implemented by all strategies of the {@link ObfuscationEngine}. A strategy
+ * transforms the locations of a whole Session at once, working on the primitive arrays in place.
+ * It has to be deterministic: the same measurements and seed always have to produce the same
+ * result, so data derived from an obfuscated Session stays valid.
+ * </p>
+ */
+public interface ObfuscationStrategy {
+
+    /**
+     * Obfuscates the first <code>count</code> measurements of the given arrays in place.
+     * Measurements may be removed, in which case the remaining ones are moved to the front of all
+     * arrays.
+     *
+     * @param timestamps    Timestamps in milliseconds since the epoch (UTC), chronological
+     * @param latitudes     Latitudes
+     * @param longitudes    Longitudes
+     * @param count         Number of measurements
+     * @param seed          Seed of the Session, see {@link ObfuscationEngine#getSeed(long, int)}
+     * @return              Number of remaining measurements
+     */
+    int apply(long[] timestamps, double[] latitudes, double[] longitudes, int count, long seed);
+}
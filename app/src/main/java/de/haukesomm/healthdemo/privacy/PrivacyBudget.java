@@ -0,0 +1,156 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.concurrent.TimeUnit;
+
+import de.haukesomm.healthdemo.R;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class keeps track of the differential privacy budget of the user. Every release of
+ * {@link PrivateStatistics} spends a part of it depending on the active {@link PrivacyMode}. Once
+ * the budget of the current period is used up nothing can be released until the next period
+ * starts, which limits how much can be learned about the user by combining many releases.<br>
+ * The amount spent is stored in the preferences, so it survives restarts of the app.
+ * </p>
+ */
+public class PrivacyBudget {
+
+    /**
+     * Length of a budget period in milliseconds
+     */
+    public static final long PERIOD = TimeUnit.DAYS.toMillis(30);
+
+
+    private final SharedPreferences mPrefs;
+
+    private final String mModeKey;
+
+    private final String mSpentKey;
+
+    private final String mPeriodKey;
+
+
+    /**
+     * Creates a new PrivacyBudget backed by the default preferences.
+     *
+     * @param context   Any context
+     */
+    public PrivacyBudget(Context context) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mModeKey = context.getString(R.string.pref_int_privacy_lastModeID);
+        mSpentKey = context.getString(R.string.pref_float_privacy_budget_spent);
+        mPeriodKey = context.getString(R.string.pref_long_privacy_budget_period);
+    }
+
+
+    /**
+     * Returns the budget available per period in a PrivacyMode.
+     *
+     * @param mode  PrivacyMode
+     * @return      Total epsilon per period
+     */
+    public static double getLimit(PrivacyMode mode) {
+        switch (mode) {
+            case MAXIMUM_DATA:
+                return 20.0;
+
+            case USER_DEFINED:
+                return 10.0;
+
+            case MINIMUM_DATA:
+                return 2.0;
+
+            default:
+                return 0.0;
+        }
+    }
+
+    /**
+     * Returns the part of the budget a single release spends in a PrivacyMode. Less data means
+     * more noise.
+     *
+     * @param mode  PrivacyMode
+     * @return      Epsilon per release, zero if nothing may be released
+     */
+    public static double getEpsilon(PrivacyMode mode) {
+        switch (mode) {
+            case MAXIMUM_DATA:
+                return 2.0;
+
+            case USER_DEFINED:
+                return 1.0;
+
+            case MINIMUM_DATA:
+                return 0.5;
+
+            default:
+                return 0.0;
+        }
+    }
+
+
+    /**
+     * Returns the active PrivacyMode.
+     *
+     * @return  PrivacyMode
+     */
+    public PrivacyMode getMode() {
+        return PrivacyMode.fromID(mPrefs.getInt(mModeKey, PrivacyMode.UNKNOWN.getID()));
+    }
+
+    /**
+     * Returns the budget left in the current period.
+     *
+     * @return  Epsilon
+     */
+    public synchronized double getRemaining() {
+        return Math.max(getLimit(getMode()) - getSpent(System.currentTimeMillis()), 0.0);
+    }
+
+    /**
+     * Spends a part of the budget if enough of it is left in the current period.
+     *
+     * @param epsilon   Epsilon to spend
+     * @return          True if it has been spent, false if not enough budget is left
+     */
+    public synchronized boolean trySpend(double epsilon) {
+        long now = System.currentTimeMillis();
+        double spent = getSpent(now);
+
+        if (epsilon <= 0 || spent + epsilon > getLimit(getMode())) {
+            return false;
+        }
+
+        // Committed synchronously, the release must not happen if this is lost
+        return mPrefs.edit()
+                .putFloat(mSpentKey, (float) (spent + epsilon))
+                .putLong(mPeriodKey, getPeriodStart(now))
+                .commit();
+    }
+
+
+    private double getSpent(long now) {
+        return mPrefs.getLong(mPeriodKey, Long.MIN_VALUE) == getPeriodStart(now)
+                ? mPrefs.getFloat(mSpentKey, 0f) : 0.0;
+    }
+
+    private long getPeriodStart(long now) {
+        return now - now % PERIOD;
+    }
+}
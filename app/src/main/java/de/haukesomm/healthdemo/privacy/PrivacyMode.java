@@ -56,8 +56,11 @@ public enum PrivacyMode {
     MINIMUM_DATA(65, R.string.privacy_mode_minimum_title, R.drawable.ic_privacy_mode_minimum),
 
     /**
-     * Do not submit any data at all (maximum privacy).<br>
-     * A default plan with a fixed price (higher than the general upper limit) applies.
+     * Submit only obfuscated data (maximum privacy).<br>
+     * Locations are masked around the start and the end of a Session, blurred with random noise
+     * and snapped to a grid before they are submitted with a coarse time, see
+     * {@link ObfuscationEngine}. No heartrates are submitted. A default plan with a fixed price
+     * (higher than the general upper limit) applies.
      */
     OBFUSCATION(100, R.string.privacy_mode_obfuscation_title, R.drawable.ic_privacy_mode_obfuscation);
 
@@ -0,0 +1,156 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import de.haukesomm.healthdemo.data.MeasurementColumn;
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class builds the chain of {@link PrivacyStage}s applying a {@link PrivacyMode} to a stream
+ * of measurements before it reaches its consumer, e.g. an export or an upload. Measurements are
+ * downsampled first, so the following stages only see the ones which are kept, then their
+ * locations are coarsened and finally all columns which must not be shared are suppressed. Only
+ * {@link PrivacyMode#OBFUSCATION} obfuscates the whole stream before it is downsampled, so the
+ * zones hidden by the {@link ObfuscationEngine} lie around the actual start and end:
+ * </p>
+ * <ul>
+ *     <li>{@link PrivacyMode#MAXIMUM_DATA}: The stream is passed on unchanged.</li>
+ *     <li>{@link PrivacyMode#USER_DEFINED}: One measurement per configured interval, locations
+ *     coarsened to {@link #USER_DEFINED_CELL_SIZE} and only the selected columns.</li>
+ *     <li>{@link PrivacyMode#MINIMUM_DATA}: One measurement per {@link #MINIMUM_DATA_INTERVAL}
+ *     and only its time.</li>
+ *     <li>{@link PrivacyMode#OBFUSCATION}: Locations obfuscated by
+ *     {@link ObfuscationEngine#createDefault()}, one measurement per
+ *     {@link #MINIMUM_DATA_INTERVAL} and its time.</li>
+ * </ul>
+ * <p>
+ * As the last stage may buffer the stream, {@link #finish(MeasurementVisitor)} has to be called
+ * with the first one after the last measurement.
+ * </p>
+ */
+public final class PrivacyPipeline {
+
+    /**
+     * Grid cell size of locations in {@link PrivacyMode#USER_DEFINED} (degrees, about 100m)
+     */
+    public static final double USER_DEFINED_CELL_SIZE = 0.001;
+
+    /**
+     * Interval of measurements in {@link PrivacyMode#MINIMUM_DATA} (milliseconds)
+     */
+    public static final long MINIMUM_DATA_INTERVAL = TimeUnit.MINUTES.toMillis(30);
+
+
+    private static final ObfuscationEngine OBFUSCATION_ENGINE = ObfuscationEngine.createDefault();
+
+
+    private static final MeasurementVisitor DISCARD = new MeasurementVisitor() {
+        @Override
+        public void visit(long timestamp, int utcOffset, double latitude, double longitude,
+                          int heartrate) {
+            // Nothing is shared
+        }
+    };
+
+
+    private PrivacyPipeline() {
+        // Static helper class
+    }
+
+
+    /**
+     * Creates a new chain of stages for a single stream.
+     *
+     * @param mode      Active PrivacyMode
+     * @param interval  Interval of measurements in {@link PrivacyMode#USER_DEFINED} (minutes)
+     * @param time      Whether timestamps may be shared in {@link PrivacyMode#USER_DEFINED}
+     * @param location  Whether locations may be shared in {@link PrivacyMode#USER_DEFINED}
+     * @param heartrate Whether heartrates may be shared in {@link PrivacyMode#USER_DEFINED}
+     * @param seed      Seed of the Session in {@link PrivacyMode#OBFUSCATION}, see
+     *                  {@link ObfuscationEngine#getSeed(long, int)}
+     * @param consumer  Consumer receiving the transformed measurements
+     * @return          First stage of the chain, the consumer itself if nothing is transformed
+     */
+    public static MeasurementVisitor create(PrivacyMode mode, int interval, boolean time,
+                                            boolean location, boolean heartrate, long seed,
+                                            MeasurementVisitor consumer) {
+        Set<MeasurementColumn> columns = PrivacyProjection.compile(mode, time, location,
+                heartrate);
+        if (mode == PrivacyMode.OBFUSCATION) {
+            // Raw locations are never read, but obfuscated ones are shared
+            columns = EnumSet.copyOf(columns);
+            columns.add(MeasurementColumn.LOCATION);
+        }
+
+        if (columns.isEmpty()) {
+            return DISCARD;
+        }
+
+        MeasurementVisitor chain = consumer;
+        if (columns.size() < MeasurementColumn.values().length) {
+            chain = new SuppressionStage(columns, chain);
+        }
+
+        if (mode == PrivacyMode.USER_DEFINED && location) {
+            chain = new CoarseningStage(USER_DEFINED_CELL_SIZE, chain);
+        }
+
+        long millis = getInterval(mode, interval);
+        if (millis > 0) {
+            chain = new DownsamplingStage(millis, chain);
+        }
+
+        if (mode == PrivacyMode.OBFUSCATION) {
+            chain = new ObfuscationStage(OBFUSCATION_ENGINE, seed, chain);
+        }
+        return chain;
+    }
+
+    /**
+     * Signals the end of the stream to a chain created by
+     * {@link #create(PrivacyMode, int, boolean, boolean, boolean, long, MeasurementVisitor)}.
+     *
+     * @param chain First stage of the chain
+     */
+    public static void finish(MeasurementVisitor chain) {
+        if (chain instanceof PrivacyStage) {
+            ((PrivacyStage) chain).finish();
+        }
+    }
+
+    /**
+     * Returns the interval measurements are downsampled to in a PrivacyMode.
+     *
+     * @param mode      PrivacyMode
+     * @param interval  Interval configured for {@link PrivacyMode#USER_DEFINED} (minutes)
+     * @return          Interval in milliseconds, zero if measurements are not downsampled
+     */
+    public static long getInterval(PrivacyMode mode, int interval) {
+        switch (mode) {
+            case USER_DEFINED:
+                return TimeUnit.MINUTES.toMillis(Math.max(interval, 1));
+
+            case MINIMUM_DATA:
+            case OBFUSCATION:
+                return MINIMUM_DATA_INTERVAL;
+
+            default:
+                return 0L;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import de.haukesomm.healthdemo.R;
+import de.haukesomm.healthdemo.data.MeasurementColumn;
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class compiles the active {@link PrivacyMode} and, for {@link PrivacyMode#USER_DEFINED},
+ * the data toggles of its customization into the set of {@link MeasurementColumn}s which may be
+ * read. The result is cached and only recompiled after one of the preferences involved has
+ * changed.<br>
+ * It also creates the {@link PrivacyPipeline} for the current preferences.
+ * </p>
+ */
+public class PrivacyProjection implements SharedPreferences.OnSharedPreferenceChangeListener,
+        AutoCloseable {
+
+    private final Context mContext;
+
+    private final SharedPreferences mPrefs;
+
+    private final String mModeKey;
+
+    private final String mIntervalKey;
+
+    private final String mAutomaticKey;
+
+    private final String mTimeKey;
+
+    private final String mLocationKey;
+
+    private final String mHeartrateKey;
+
+
+    private boolean mLoaded;
+
+    private PrivacyMode mMode;
+
+    private int mInterval;
+
+    private boolean mAutomatic;
+
+    private boolean mTime;
+
+    private boolean mLocation;
+
+    private boolean mHeartrate;
+
+    private Set<MeasurementColumn> mColumns;
+
+    private boolean mSecretLoaded;
+
+    private long mSecret;
+
+
+    /**
+     * Creates a new PrivacyProjection and starts listening for changes of the privacy preferences.
+     * Call {@link #close()} to stop listening.
+     *
+     * @param context   Any context
+     */
+    public PrivacyProjection(Context context) {
+        mContext = context.getApplicationContext();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mModeKey = context.getString(R.string.pref_int_privacy_lastModeID);
+        mIntervalKey = context.getString(R.string.pref_int_privacy_general_interval);
+        mAutomaticKey = context.getString(R.string.pref_bool_privacy_general_auto);
+        mTimeKey = context.getString(R.string.pref_bool_privacy_data_time);
+        mLocationKey = context.getString(R.string.pref_bool_privacy_data_gps);
+        mHeartrateKey = context.getString(R.string.pref_bool_privacy_data_heart);
+
+        // The preferences only keep a weak reference, this object itself is the strong one
+        mPrefs.registerOnSharedPreferenceChangeListener(this);
+    }
+
+
+    /**
+     * Compiles a privacy configuration into the columns which may be read.
+     *
+     * @param mode      Active PrivacyMode
+     * @param time      Whether timestamps may be read in {@link PrivacyMode#USER_DEFINED}
+     * @param location  Whether locations may be read in {@link PrivacyMode#USER_DEFINED}
+     * @param heartrate Whether heartrates may be read in {@link PrivacyMode#USER_DEFINED}
+     * @return          Set of columns
+     */
+    public static Set<MeasurementColumn> compile(PrivacyMode mode, boolean time, boolean location,
+                                                 boolean heartrate) {
+        switch (mode) {
+            case USER_DEFINED:
+                EnumSet<MeasurementColumn> columns = EnumSet.noneOf(MeasurementColumn.class);
+                if (time) {
+                    columns.add(MeasurementColumn.TIMESTAMP);
+                    columns.add(MeasurementColumn.UTC_OFFSET);
+                }
+                if (location) {
+                    columns.add(MeasurementColumn.LOCATION);
+                }
+                if (heartrate) {
+                    columns.add(MeasurementColumn.HEARTRATE);
+                }
+                return columns;
+
+            case MINIMUM_DATA:
+            case OBFUSCATION:
+                // Locations are only shared after the PrivacyPipeline obfuscated them
+                return EnumSet.of(MeasurementColumn.TIMESTAMP, MeasurementColumn.UTC_OFFSET);
+
+            case MAXIMUM_DATA:
+            default:
+                // UNKNOWN until the setup has been finished, which is shown before any data
+                return EnumSet.allOf(MeasurementColumn.class);
+        }
+    }
+
+
+    /**
+     * Returns the columns which may be read according to the current preferences.
+     *
+     * @return  Unmodifiable set of columns
+     */
+    public synchronized Set<MeasurementColumn> getColumns() {
+        load();
+        return mColumns;
+    }
+
+    /**
+     * Creates a {@link PrivacyPipeline} for a single stream according to the current preferences.
+     * Pass the result to {@link PrivacyPipeline#finish(MeasurementVisitor)} after the last
+     * measurement.
+     *
+     * @param sessionId ID of the Session which is streamed
+     * @param consumer  Consumer receiving the transformed measurements
+     * @return          First stage of the pipeline
+     */
+    public synchronized MeasurementVisitor createPipeline(int sessionId,
+                                                          MeasurementVisitor consumer) {
+        load();
+
+        long seed = 0L;
+        if (mMode == PrivacyMode.OBFUSCATION) {
+            // Created on first use, so it is not written before the mode is selected
+            if (!mSecretLoaded) {
+                mSecret = ObfuscationEngine.getSecret(mContext);
+                mSecretLoaded = true;
+            }
+            seed = ObfuscationEngine.getSeed(mSecret, sessionId);
+        }
+
+        return PrivacyPipeline.create(mMode, mInterval, mTime, mLocation, mHeartrate, seed,
+                consumer);
+    }
+
+    /**
+     * Returns the interval measurements are downsampled to according to the current preferences,
+     * see {@link PrivacyPipeline#getInterval(PrivacyMode, int)}.
+     *
+     * @return  Interval in milliseconds, zero if measurements are not downsampled
+     */
+    public synchronized long getInterval() {
+        load();
+        return PrivacyPipeline.getInterval(mMode, mInterval);
+    }
+
+    /**
+     * Returns the configured data collection interval. Data is submitted once per interval, so
+     * measurements older than that have been shared already.
+     *
+     * @return  Interval in milliseconds
+     */
+    public synchronized long getCollectionInterval() {
+        load();
+        return TimeUnit.MINUTES.toMillis(Math.max(mInterval, 1));
+    }
+
+    /**
+     * Returns whether data is submitted automatically once per collection interval.
+     *
+     * @return  true if data is submitted automatically
+     */
+    public synchronized boolean isAutomatic() {
+        load();
+        return mAutomatic;
+    }
+
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+
+        mMode = PrivacyMode.fromID(mPrefs.getInt(mModeKey, PrivacyMode.UNKNOWN.getID()));
+        mTime = mPrefs.getBoolean(mTimeKey, false);
+        mLocation = mPrefs.getBoolean(mLocationKey, false);
+        mHeartrate = mPrefs.getBoolean(mHeartrateKey, false);
+        mAutomatic = mPrefs.getBoolean(mAutomaticKey, false);
+        mColumns = Collections.unmodifiableSet(compile(mMode, mTime, mLocation, mHeartrate));
+
+        // Stored as a String by the ListPreference
+        try {
+            mInterval = Integer.parseInt(mPrefs.getString(mIntervalKey, "1"));
+        } catch (NumberFormatException e) {
+            mInterval = 1;
+        }
+
+        mLoaded = true;
+    }
+
+
+    // No Javadoc
+    @Override
+    public synchronized void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+        if (mModeKey.equals(key) || mIntervalKey.equals(key) || mAutomaticKey.equals(key)
+                || mTimeKey.equals(key) || mLocationKey.equals(key)
+                || mHeartrateKey.equals(key)) {
+            mLoaded = false;
+        }
+    }
+
+
+    // No Javadoc
+    @Override
+    public void close() {
+        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+    }
+}
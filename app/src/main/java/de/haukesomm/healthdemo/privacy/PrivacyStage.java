@@ -0,0 +1,55 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class is the base of all stages of a {@link PrivacyPipeline}. A stage receives the
+ * measurements of a single stream one by one, transforms or drops them and passes the result on
+ * to the next stage. All values are handed over as primitives, so no objects are created per
+ * measurement.<br>
+ * Stages may keep state about the measurements seen so far, a new chain has to be created for
+ * every stream. Stages which need the whole stream before passing anything on buffer it and
+ * release it in {@link #finish()}, so the end of every stream has to be signalled.
+ * </p>
+ */
+public abstract class PrivacyStage implements MeasurementVisitor {
+
+    /**
+     * Stage or consumer receiving the output of this stage
+     */
+    protected final MeasurementVisitor mNext;
+
+
+    /**
+     * Creates a new stage.
+     *
+     * @param next  Stage or consumer receiving the output of this stage
+     */
+    protected PrivacyStage(MeasurementVisitor next) {
+        mNext = next;
+    }
+
+
+    /**
+     * Called after the last measurement of the stream. Stages buffering measurements pass them on
+     * here, then the call is forwarded to the next stage.
+     */
+    public void finish() {
+        if (mNext instanceof PrivacyStage) {
+            ((PrivacyStage) mNext).finish();
+        }
+    }
+}
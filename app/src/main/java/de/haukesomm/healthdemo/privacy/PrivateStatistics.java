@@ -0,0 +1,236 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+
+import de.haukesomm.healthdemo.data.Rollup.Resolution;
+import de.haukesomm.healthdemo.data.SessionDatabase;
+import de.haukesomm.healthdemo.data.SessionQuery;
+import de.haukesomm.healthdemo.data.SessionSummary;
+import de.haukesomm.healthdemo.data.SummaryVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This class computes differentially private aggregates of the Sessions within a time range,
+ * which can be shared without revealing whether any single Session took place:
+ * </p>
+ * <ul>
+ *     <li>the average heartrate of every week,</li>
+ *     <li>the distance covered every week and</li>
+ *     <li>a histogram of the active time per Session.</li>
+ * </ul>
+ * <p>
+ * All aggregates are computed in a single pass over the precomputed {@link SessionSummary}s, no
+ * measurements are read. The contribution of a Session is clamped, so adding or removing it
+ * changes each sum by a bounded amount, and Laplace noise scaled to that bound is added to every
+ * sum. The epsilon of a release depends on the active {@link PrivacyMode} and is taken from the
+ * {@link PrivacyBudget}. It is split evenly between the four sums a Session contributes to.<br>
+ * Encrypted Sessions are left out, their summaries contain no heartrate or distance.<br>
+ * Weeks start on Monday in UTC. Every week of the range is released, including the ones without
+ * Sessions, since leaving them out would reveal that they are empty.
+ * </p>
+ */
+public class PrivateStatistics {
+
+    /**
+     * Average heartrates of a Session are clamped to this value
+     */
+    public static final int MAX_HEARTRATE = 220;
+
+    /**
+     * Distances of a Session are clamped to this value in meters
+     */
+    public static final double MAX_DISTANCE = 100_000.0;
+
+    /**
+     * Lower bounds of the bins of the active time histogram in minutes, the last bin is open
+     */
+    public static final int[] ACTIVE_TIME_BINS = { 0, 15, 30, 60, 120 };
+
+    /**
+     * Maximum number of weeks of a release
+     */
+    public static final int MAX_WEEKS = 520;
+
+
+    /*
+     * Heartrate sum, Session count, distance and histogram
+     */
+    private static final int SUMS = 4;
+
+
+    private static final Random RANDOM = new SecureRandom();
+
+
+
+    /**
+     * Start of every week of the range in milliseconds since the epoch (UTC)
+     */
+    public final long[] weeks;
+
+    /**
+     * Noisy average heartrate of every week, NaN if too few Sessions remain after adding noise
+     */
+    public final double[] averageHeartrates;
+
+    /**
+     * Noisy distance covered every week in meters
+     */
+    public final double[] distances;
+
+    /**
+     * Noisy number of Sessions in every bin of {@link #ACTIVE_TIME_BINS}
+     */
+    public final double[] activeTimeHistogram;
+
+    /**
+     * Epsilon spent on this release
+     */
+    public final double epsilon;
+
+
+    private PrivateStatistics(long[] weeks, double[] averageHeartrates, double[] distances,
+                              double[] activeTimeHistogram, double epsilon) {
+        this.weeks = weeks;
+        this.averageHeartrates = averageHeartrates;
+        this.distances = distances;
+        this.activeTimeHistogram = activeTimeHistogram;
+        this.epsilon = epsilon;
+    }
+
+
+    /**
+     * Computes the aggregates of all Sessions started within a time range and spends the epsilon
+     * of the active PrivacyMode. Do not call this on the UI thread.
+     *
+     * @param database                  Database to read the summaries from
+     * @param budget                    Budget of the user
+     * @param from                      Start of the range (UTC, inclusive)
+     * @param to                        End of the range (UTC, exclusive)
+     * @return                          Aggregates
+     * @throws IllegalArgumentException If the range is empty or covers more than
+     *                                  {@link #MAX_WEEKS}
+     * @throws IllegalStateException    If the PrivacyMode does not permit a release or the budget
+     *                                  is used up
+     */
+    public static PrivateStatistics compute(SessionDatabase database, PrivacyBudget budget,
+                                            long from, long to)
+            throws IllegalArgumentException, IllegalStateException {
+
+        if (from >= to) {
+            throw new IllegalArgumentException("Empty range: " + from + " - " + to);
+        }
+
+        final long firstWeek = Resolution.WEEK.bucketOf(from);
+        long weekCount = (Resolution.WEEK.bucketOf(to - 1) - firstWeek) / Resolution.WEEK.millis
+                + 1;
+        if (weekCount > MAX_WEEKS) {
+            throw new IllegalArgumentException("Range covers more than " + MAX_WEEKS + " weeks");
+        }
+
+        PrivacyMode mode = budget.getMode();
+        double epsilon = PrivacyBudget.getEpsilon(mode);
+        if (epsilon <= 0) {
+            throw new IllegalStateException("No aggregates may be shared in " + mode);
+        }
+        // Spent before reading, so a failed release is never repeated for free
+        if (!budget.trySpend(epsilon)) {
+            throw new IllegalStateException("Privacy budget exhausted");
+        }
+
+        final long[] weeks = new long[(int) weekCount];
+        final double[] heartrates = new double[weeks.length];
+        final double[] counts = new double[weeks.length];
+        final double[] distances = new double[weeks.length];
+        final double[] histogram = new double[ACTIVE_TIME_BINS.length];
+
+        for (int i = 0; i < weeks.length; i++) {
+            weeks[i] = firstWeek + i * Resolution.WEEK.millis;
+        }
+
+        database.forEachSummary(new SessionQuery()
+                .startedBetween(from, to)
+                .withStatistics()
+                .orderBy(SessionQuery.Order.OLDEST_FIRST), new SummaryVisitor() {
+            @Override
+            public void visit(SessionSummary summary) {
+                int week = (int) ((Resolution.WEEK.bucketOf(summary.startTime) - firstWeek)
+                        / Resolution.WEEK.millis);
+
+                heartrates[week] += clamp(summary.avgHeartrate, 0, MAX_HEARTRATE);
+                counts[week]++;
+                distances[week] += clamp(summary.distance, 0, MAX_DISTANCE);
+                histogram[getBin(summary.endTime - summary.startTime)]++;
+            }
+        });
+
+        // Each Session changes every sum by at most its clamping bound
+        double share = epsilon / SUMS;
+        double[] averages = new double[weeks.length];
+        for (int i = 0; i < weeks.length; i++) {
+            double count = counts[i] + laplace(1.0 / share);
+            double sum = heartrates[i] + laplace(MAX_HEARTRATE / share);
+            averages[i] = count >= 1 ? clamp(sum / count, 0, MAX_HEARTRATE) : Double.NaN;
+            distances[i] = Math.max(distances[i] + laplace(MAX_DISTANCE / share), 0);
+        }
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = Math.max(histogram[i] + laplace(1.0 / share), 0);
+        }
+
+        return new PrivateStatistics(weeks, averages, distances, histogram, epsilon);
+    }
+
+
+    private static int getBin(long millis) {
+        long minutes = millis / 60_000L;
+        int bin = 0;
+        while (bin + 1 < ACTIVE_TIME_BINS.length && minutes >= ACTIVE_TIME_BINS[bin + 1]) {
+            bin++;
+        }
+        return bin;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static double laplace(double scale) {
+        return laplace(scale, RANDOM);
+    }
+
+    /*
+     * Inverse transform sampling of the Laplace distribution centered at zero
+     */
+    static double laplace(double scale, Random random) {
+        double u;
+        do {
+            u = random.nextDouble() - 0.5;
+        } while (u == -0.5);
+
+        return -scale * Math.signum(u) * Math.log(1 - 2 * Math.abs(u));
+    }
+
+
+    // No Javadoc
+    @Override
+    public String toString() {
+        return "PrivateStatistics{epsilon=" + epsilon
+                + ", weeks=" + weeks.length
+                + ", averageHeartrates=" + Arrays.toString(averageHeartrates)
+                + ", distances=" + Arrays.toString(distances)
+                + ", activeTimeHistogram=" + Arrays.toString(activeTimeHistogram) + "}";
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import java.util.Set;
+
+import de.haukesomm.healthdemo.data.MeasurementColumn;
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This stage replaces all values of columns which must not be shared with zero.
+ * </p>
+ */
+public class SuppressionStage extends PrivacyStage {
+
+    private final boolean mTimestamps;
+
+    private final boolean mUtcOffsets;
+
+    private final boolean mLocations;
+
+    private final boolean mHeartrates;
+
+
+    /**
+     * Creates a new SuppressionStage.
+     *
+     * @param columns   Columns to keep
+     * @param next      Stage or consumer receiving the output of this stage
+     */
+    public SuppressionStage(Set<MeasurementColumn> columns, MeasurementVisitor next) {
+        super(next);
+        mTimestamps = columns.contains(MeasurementColumn.TIMESTAMP);
+        mUtcOffsets = columns.contains(MeasurementColumn.UTC_OFFSET);
+        mLocations = columns.contains(MeasurementColumn.LOCATION);
+        mHeartrates = columns.contains(MeasurementColumn.HEARTRATE);
+    }
+
+
+    // No Javadoc
+    @Override
+    public void visit(long timestamp, int utcOffset, double latitude, double longitude,
+                      int heartrate) {
+        mNext.visit(
+                mTimestamps ? timestamp : 0L,
+                mUtcOffsets ? utcOffset : 0,
+                mLocations ? latitude : 0.0,
+                mLocations ? longitude : 0.0,
+                mHeartrates ? heartrate : 0);
+    }
+}
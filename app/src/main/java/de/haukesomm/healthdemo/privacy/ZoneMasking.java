@@ -0,0 +1,98 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * This strategy removes all measurements at the start and at the end of a Session which are
+ * within a zone around its first and last location, usually the user's home. The radius of each
+ * zone is chosen between the configured radius and one and a half times of it using the seed, so
+ * the edge of the remaining route does not reveal the distance to its center.
+ * </p>
+ */
+public class ZoneMasking implements ObfuscationStrategy {
+
+    private static final long START = 0x5354415254L;
+
+    private static final long END = 0x454e44L;
+
+
+    private final double mRadius;
+
+
+    /**
+     * Creates a new ZoneMasking strategy.
+     *
+     * @param radius    Minimum radius of the zones in meters
+     */
+    public ZoneMasking(double radius) {
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("Radius must not be negative: " + radius);
+        }
+        mRadius = radius;
+    }
+
+
+    // No Javadoc
+    @Override
+    public int apply(long[] timestamps, double[] latitudes, double[] longitudes, int count,
+                     long seed) {
+        if (count == 0) {
+            return 0;
+        }
+
+        int first = 0;
+        double startRadius = getRadius(seed ^ START);
+        double startCos = Math.cos(Math.toRadians(latitudes[0]));
+        while (first < count && isWithin(latitudes[first], longitudes[first], latitudes[0],
+                longitudes[0], startCos, startRadius)) {
+            first++;
+        }
+
+        int last = count - 1;
+        double endLatitude = latitudes[count - 1];
+        double endLongitude = longitudes[count - 1];
+        double endRadius = getRadius(seed ^ END);
+        double endCos = Math.cos(Math.toRadians(endLatitude));
+        while (last >= first && isWithin(latitudes[last], longitudes[last], endLatitude,
+                endLongitude, endCos, endRadius)) {
+            last--;
+        }
+
+        int remaining = last - first + 1;
+        if (first > 0 && remaining > 0) {
+            System.arraycopy(timestamps, first, timestamps, 0, remaining);
+            System.arraycopy(latitudes, first, latitudes, 0, remaining);
+            System.arraycopy(longitudes, first, longitudes, 0, remaining);
+        }
+
+        return remaining;
+    }
+
+
+    private double getRadius(long seed) {
+        double radius = mRadius * (1.0 + 0.5 * ObfuscationEngine.toUnit(
+                ObfuscationEngine.mix(seed)));
+        return radius / ObfuscationEngine.METERS_PER_DEGREE;
+    }
+
+    /*
+     * Equirectangular approximation, precise enough for zones of a few kilometers
+     */
+    private static boolean isWithin(double latitude, double longitude, double centerLatitude,
+                                    double centerLongitude, double centerCos, double radius) {
+        double dLat = latitude - centerLatitude;
+        double dLon = (longitude - centerLongitude) * centerCos;
+        return dLat * dLat + dLon * dLon <= radius * radius;
+    }
+}
@@ -11,15 +11,19 @@
 
 package de.haukesomm.healthdemo.ui;
 
+import android.content.DialogInterface;
 import android.graphics.Paint;
 import android.location.Address;
 import android.location.Geocoder;
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -29,24 +33,34 @@ import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 import com.jjoe64.graphview.series.DataPoint;
 import com.jjoe64.graphview.series.LineGraphSeries;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.haukesomm.healthdemo.R;
-import de.haukesomm.healthdemo.data.Measurement;
+import de.haukesomm.healthdemo.data.MeasurementColumn;
+import de.haukesomm.healthdemo.data.MeasurementSeries;
+import de.haukesomm.healthdemo.data.PagedSession;
 import de.haukesomm.healthdemo.data.Session;
 import de.haukesomm.healthdemo.data.SessionDatabase;
 
 /**
  * Created on 09.12.17
  * <p>
- * This Activity displays detailed information about a {@link Session}.
+ * This Activity displays detailed information about a {@link Session}.<br>
+ * Only the first page of measurements is loaded before the Activity is shown. The remaining pages
+ * are read on a background thread and added to the graph and map as they arrive.<br>
+ * The map and the graph are hidden if the privacy settings do not permit reading the locations or
+ * the heartrates.
  *
  * @author Hauke Sommerfeld
  */
@@ -74,6 +88,9 @@ public class DataActivity extends AppCompatActivity {
 
 
         initData();
+        if (mSession == null) {
+            return;
+        }
 
         setSupportActionBar(mToolbar);
         if (getSupportActionBar() != null) {
@@ -84,6 +101,22 @@ public class DataActivity extends AppCompatActivity {
         initMap();
         initRoute();
         initGraphs();
+
+        loadRemainingPages();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDestroy() {
+        mExecutor.shutdownNow();
+        mPageHandler.removeCallbacksAndMessages(null);
+        if (mDatabase != null) {
+            mDatabase.close();
+        }
+        super.onDestroy();
     }
 
 
@@ -109,9 +142,7 @@ public class DataActivity extends AppCompatActivity {
                 return true;
 
             case R.id.activity_data_menuAction_delete:
-                // TODO Implement
-                Toast.makeText(getApplicationContext(), "This feature was not yet implemented.",
-                        Toast.LENGTH_LONG).show();
+                confirmRemove();
                 return true;
         }
 
@@ -119,6 +150,51 @@ public class DataActivity extends AppCompatActivity {
     }
 
 
+    private void confirmRemove() {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.data_delete_title)
+                .setMessage(R.string.data_delete_message)
+                .setPositiveButton(R.string.data_delete, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        remove();
+                    }
+                })
+                .setNegativeButton(R.string.cancel, null)
+                .show();
+    }
+
+
+    /*
+     * Runs after the pages being loaded, which are not needed anymore. The Activity is only
+     * finished afterwards since onDestroy() closes the database.
+     */
+    private void remove() {
+        if (mRemoving) {
+            return;
+        }
+        mRemoving = true;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mDatabase.remove(mSession.id);
+                } catch (IllegalStateException e) {
+                    // The database has been closed because the Activity was destroyed
+                    return;
+                }
+
+                mPageHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish();
+                    }
+                });
+            }
+        });
+    }
+
+
 
     private Toolbar mToolbar;
 
@@ -143,9 +219,21 @@ public class DataActivity extends AppCompatActivity {
 
 
 
-    private Session mSession;
+    /*
+     * Number of measurements read at once. The first page is read on the UI thread.
+     */
+    private static final int PAGE_SIZE = 2000;
+
+
+    private SessionDatabase mDatabase;
+
+    private PagedSession mSession;
 
-    private List<Measurement> mMeasurements;
+    private MeasurementSeries mMeasurements;
+
+    private boolean mHasLocation;
+
+    private boolean mHasHeartrate;
 
 
     private void initData() {
@@ -159,63 +247,175 @@ public class DataActivity extends AppCompatActivity {
         }
 
 
-        try (SessionDatabase database = new SessionDatabase(this)) {
-            mSession = database.get(id);
-            mMeasurements = mSession.getMeasurements();
+        mDatabase = SessionDatabase.acquire(this);
+        try {
+            mSession = mDatabase.getPaged(id, PAGE_SIZE);
+        } catch (IllegalArgumentException e) {
+            // The Session has been removed while a list still showed it
+            Log.e("DataActivity", "There is no Session with ID " + id + "!");
+            Toast.makeText(this, R.string.data_notAvailable, Toast.LENGTH_SHORT).show();
+            finish();
+            return;
         }
+        mMeasurements = mSession.nextPage();
+        mHasLocation = mMeasurements.contains(MeasurementColumn.LOCATION);
+        mHasHeartrate = mMeasurements.contains(MeasurementColumn.HEARTRATE);
     }
 
 
 
-    private GoogleMap mMap;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
 
 
-    private void initMap() {
-        final List<LatLng> positions = new LinkedList<>();
+    private final Handler mPageHandler = new Handler();
+
+    private volatile boolean mRemoving;
+
+
+    private void loadRemainingPages() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (mSession.hasNextPage() && !mRemoving
+                            && !Thread.currentThread().isInterrupted()) {
+                        final MeasurementSeries page = mSession.nextPage();
+                        mPageHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                appendPage(page);
+                            }
+                        });
+                    }
+                } catch (IllegalStateException e) {
+                    // The database has been closed because the Activity was destroyed
+                    return;
+                }
+                if (mRemoving) {
+                    return;
+                }
+
+                mPageHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onAllPagesLoaded();
+                    }
+                });
+            }
+        });
+    }
+
+
+    private void appendPage(MeasurementSeries page) {
+        if (page.isEmpty()) {
+            return;
+        }
 
-        for (Measurement measurement : mMeasurements) {
-            LatLng position = new LatLng(measurement.latitude, measurement.longitude);
-            positions.add(position);
+        for (int i = 0; i < page.size(); i++) {
+            if (mHasLocation) {
+                mPositions.add(new LatLng(page.getLatitude(i), page.getLongitude(i)));
+            }
+            if (mHasHeartrate) {
+                mPoints.add(new DataPoint(mPoints.size(), page.getHeartrate(i)));
+            }
         }
 
+        if (mHasHeartrate) {
+            mHeartrateValues.resetData(mPoints.toArray(new DataPoint[mPoints.size()]));
+            mGraphSpeed.setData(mHeartrateValues);
+        }
 
-        LatLngBounds.Builder builder = LatLngBounds.builder();
-        for (LatLng position : positions) {
-            builder.include(position);
+        if (mPath != null && !mPositions.isEmpty()) {
+            mPath.setPoints(mPositions);
+            mDestinationMarker.setPosition(mPositions.get(mPositions.size() - 1));
         }
-        final LatLngBounds bounds = builder.build();
+    }
+
+
+    private void onAllPagesLoaded() {
+        if (mPositions.isEmpty()) {
+            return;
+        }
+
+        LatLng destination = mPositions.get(mPositions.size() - 1);
+        mRouteDestination.setText(getAddressFromLatLng(destination.latitude, destination.longitude));
+        storePlaces();
+
+        if (mMap != null) {
+            mMap.moveCamera(CameraUpdateFactory.newLatLngBounds(getBounds(), 1000, 1000, 200));
+        }
+    }
 
 
+
+    private GoogleMap mMap;
+
+
+    private Polyline mPath;
+
+
+    private Marker mDestinationMarker;
+
+
+    private final List<LatLng> mPositions = new ArrayList<>();
+
+
+    private void initMap() {
         SupportMapFragment map = (SupportMapFragment) getSupportFragmentManager().findFragmentById(R.id.activity_data_map);
+
+        if (!mHasLocation) {
+            if (map.getView() != null) {
+                map.getView().setVisibility(View.GONE);
+            }
+            return;
+        }
+
+        for (int i = 0; i < mMeasurements.size(); i++) {
+            LatLng position = new LatLng(mMeasurements.getLatitude(i), mMeasurements.getLongitude(i));
+            mPositions.add(position);
+        }
+
+
         map.getMapAsync(new OnMapReadyCallback() {
             @Override
             public void onMapReady(GoogleMap googleMap) {
                 mMap = googleMap;
                 mMap.getUiSettings().setAllGesturesEnabled(false);
-                initMapMarkers(bounds, positions);
+                initMapMarkers();
             }
         });
     }
 
 
-    private void initMapMarkers(LatLngBounds bounds, List<LatLng> positions) {
+    private void initMapMarkers() {
+        if (mPositions.isEmpty()) {
+            return;
+        }
+
         PolylineOptions path = new PolylineOptions()
                 .color(getColor(R.color.colorAccent))
                 .width(20f);
 
         // Starting position
         mMap.addMarker(
-                new MarkerOptions().position(positions.get(0)));
-        // Destination marker
-        mMap.addMarker(
-                new MarkerOptions().position(positions.get(positions.size() - 1)));
+                new MarkerOptions().position(mPositions.get(0)));
+        // Destination marker, moved along while further pages are loaded
+        mDestinationMarker = mMap.addMarker(
+                new MarkerOptions().position(mPositions.get(mPositions.size() - 1)));
 
-        for (LatLng position : positions) {
-            path.add(position);
-        }
+        path.addAll(mPositions);
+
+        mMap.moveCamera(CameraUpdateFactory.newLatLngBounds(getBounds(), 1000, 1000, 200));
+        mPath = mMap.addPolyline(path);
+    }
 
-        mMap.moveCamera(CameraUpdateFactory.newLatLngBounds(bounds, 1000, 1000, 200));
-        mMap.addPolyline(path);
+
+    private LatLngBounds getBounds() {
+        LatLngBounds.Builder builder = LatLngBounds.builder();
+        for (LatLng position : mPositions) {
+            builder.include(position);
+        }
+        return builder.build();
     }
 
 
@@ -226,13 +426,46 @@ public class DataActivity extends AppCompatActivity {
     private void initRoute() {
         mGeocoder = new Geocoder(this);
 
-        double startLat = mMeasurements.get(0).latitude;
-        double startLng = mMeasurements.get(0).longitude;
-        double destLat = mMeasurements.get(mMeasurements.size() - 1).latitude;
-        double destLng = mMeasurements.get(mMeasurements.size() - 1).longitude;
+        if (!mHasLocation || mMeasurements.isEmpty()) {
+            mRouteStart.setText(R.string.unknown);
+            mRouteDestination.setText(R.string.unknown);
+            return;
+        }
+
+        double startLat = mMeasurements.getLatitude(0);
+        double startLng = mMeasurements.getLongitude(0);
 
+        // The destination is resolved once the last page has been loaded
         mRouteStart.setText(getAddressFromLatLng(startLat, startLng));
-        mRouteDestination.setText(getAddressFromLatLng(destLat, destLng));
+    }
+
+
+    /*
+     * Adds the resolved addresses to the search index, so the Session can be found by them.
+     */
+    private void storePlaces() {
+        final List<String> places = new ArrayList<>();
+        for (TextView address : new TextView[] { mRouteStart, mRouteDestination }) {
+            String text = address.getText().toString();
+            if (!text.equals(getString(R.string.unknown))) {
+                places.add(text);
+            }
+        }
+
+        if (places.isEmpty()) {
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mDatabase.setPlaces(mSession.id, places);
+                } catch (IllegalStateException e) {
+                    // The database has been closed because the Activity was destroyed
+                }
+            }
+        });
     }
 
 
@@ -250,20 +483,29 @@ public class DataActivity extends AppCompatActivity {
     private static final int GRAPH_DEFAULT_THICKNESS = 7;
 
 
+    private final List<DataPoint> mPoints = new ArrayList<>();
+
+
+    private LineGraphSeries<DataPoint> mHeartrateValues;
+
+
     private void initGraphs() {
-        LineGraphSeries<DataPoint> speedValues = new LineGraphSeries<>();
+        if (!mHasHeartrate) {
+            mGraphSpeed.setVisibility(View.GONE);
+            return;
+        }
+
+        for (int i = 0; i < mMeasurements.size(); i++) {
+            mPoints.add(new DataPoint(i, mMeasurements.getHeartrate(i)));
+        }
+
+        mHeartrateValues = new LineGraphSeries<>(mPoints.toArray(new DataPoint[mPoints.size()]));
 
         Paint color = new Paint();
         color.setColor(getColor(R.color.colorAccent));
         color.setStrokeWidth((float) GRAPH_DEFAULT_THICKNESS);
-        speedValues.setCustomPaint(color);
-
-        for (int i = 0; i < mMeasurements.size(); i++) {
-            Measurement data = mMeasurements.get(i);
-            double speed = data.heartrate;
-            speedValues.appendData(new DataPoint(i, speed), true, mMeasurements.size(), true);
-        }
+        mHeartrateValues.setCustomPaint(color);
 
-        mGraphSpeed.setData(speedValues);
+        mGraphSpeed.setData(mHeartrateValues);
     }
 }
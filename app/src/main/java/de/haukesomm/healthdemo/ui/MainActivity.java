@@ -11,6 +11,7 @@
 
 package de.haukesomm.healthdemo.ui;
 
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
@@ -21,14 +22,27 @@ import android.support.design.widget.TabLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentStatePagerAdapter;
 import android.support.v4.view.ViewPager;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.Toast;
+import android.view.WindowManager;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.haukesomm.healthdemo.R;
+import de.haukesomm.healthdemo.data.SessionDatabase;
+import de.haukesomm.healthdemo.data.SessionDescriptionAdapter;
+import de.haukesomm.healthdemo.data.SessionSummary;
 import de.haukesomm.healthdemo.privacy.PrivacyModeView;
 
 /**
@@ -36,7 +50,9 @@ import de.haukesomm.healthdemo.privacy.PrivacyModeView;
  * <p>
  * This Activity provides the main interface of the app where the user can select multiple sets of
  * data and see his current {@link de.haukesomm.healthdemo.privacy.PrivacyMode} settings.<br>
- * It mainly consists of multiple Fragments for future compatibility.
+ * It mainly consists of multiple Fragments for future compatibility.<br>
+ * It holds a reference to the shared {@link SessionDatabase} while it exists, so the Fragments can
+ * acquire and release it without reopening the database every time.
  *
  * @see OverviewFragment
  * @see TimelineFragment
@@ -51,6 +67,9 @@ public class MainActivity extends AppCompatActivity {
     private SharedPreferences mPrefs;
 
 
+    private SessionDatabase mDatabase;
+
+
     /**
      * {@inheritDoc}
      */
@@ -59,6 +78,7 @@ public class MainActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
 
         mPrefs = PreferenceManager.getDefaultSharedPreferences(this);
+        mDatabase = SessionDatabase.acquire(this);
 
         bindActivity();
 
@@ -69,6 +89,18 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDestroy() {
+        mSearchHandler.removeCallbacksAndMessages(null);
+        mSearchExecutor.shutdownNow();
+        mDatabase.close();
+        super.onDestroy();
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -242,8 +274,116 @@ public class MainActivity extends AppCompatActivity {
         mSearchButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                Toast.makeText(getApplicationContext(), "This feature is not yet implemented.",
-                        Toast.LENGTH_LONG).show();
+                showSearchDialog();
+            }
+        });
+    }
+
+
+    /*
+     * Time after the last keystroke before searching, so fast typing does not queue up queries
+     */
+    private static final long SEARCH_DELAY = 150L;
+
+
+    private static final int SEARCH_LIMIT = 50;
+
+
+    private final ExecutorService mSearchExecutor = Executors.newSingleThreadExecutor();
+
+
+    private final Handler mSearchHandler = new Handler();
+
+
+    /*
+     * Incremented for every search, results of older searches are dropped
+     */
+    private volatile int mSearchGeneration;
+
+
+    private void showSearchDialog() {
+        View content = getLayoutInflater().inflate(R.layout.dialog_search, null);
+        final EditText query = content.findViewById(R.id.dialog_search_query);
+        final ListView results = content.findViewById(R.id.dialog_search_results);
+        final TextView empty = content.findViewById(R.id.dialog_search_empty);
+
+        final Runnable search = new Runnable() {
+            @Override
+            public void run() {
+                search(query.getText().toString(), results, empty);
+            }
+        };
+
+        query.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                // Do nothing
+            }
+
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                // Do nothing
+            }
+
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mSearchHandler.removeCallbacks(search);
+                mSearchHandler.postDelayed(search, SEARCH_DELAY);
+            }
+        });
+
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.search_title)
+                .setView(content)
+                .setNegativeButton(R.string.cancel, null)
+                .create();
+        dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                mSearchHandler.removeCallbacks(search);
+                mSearchGeneration++;
+            }
+        });
+        if (dialog.getWindow() != null) {
+            dialog.getWindow().setSoftInputMode(
+                    WindowManager.LayoutParams.SOFT_INPUT_STATE_VISIBLE);
+        }
+        dialog.show();
+    }
+
+
+    private void search(final String query, final ListView results, final TextView empty) {
+        final int generation = ++mSearchGeneration;
+
+        mSearchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mSearchGeneration) {
+                    return;
+                }
+
+                final List<SessionSummary> matches;
+                try {
+                    matches = mDatabase.search(query, SEARCH_LIMIT);
+                } catch (IllegalStateException e) {
+                    // The database has been closed because the Activity was destroyed
+                    return;
+                }
+
+                mSearchHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mSearchGeneration) {
+                            return;
+                        }
+                        results.setAdapter(
+                                new SessionDescriptionAdapter(MainActivity.this, matches));
+                        empty.setVisibility(matches.isEmpty() && !query.trim().isEmpty()
+                                ? View.VISIBLE : View.GONE);
+                    }
+                });
             }
         });
     }
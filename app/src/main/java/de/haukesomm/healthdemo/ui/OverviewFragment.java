@@ -22,14 +22,13 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ListView;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import de.haukesomm.healthdemo.R;
 import de.haukesomm.healthdemo.data.SessionDatabase;
-import de.haukesomm.healthdemo.data.SessionDescription;
 import de.haukesomm.healthdemo.data.SessionDescriptionAdapter;
+import de.haukesomm.healthdemo.data.SessionQuery;
+import de.haukesomm.healthdemo.data.SessionSummary;
 import de.haukesomm.healthdemo.privacy.PrivacyMode;
 import de.haukesomm.healthdemo.privacy.PrivacyModeView;
 
@@ -74,23 +73,43 @@ public class OverviewFragment extends Fragment {
         updatePrivacyMode();
 
 
-        ListView recents = view.findViewById(R.id.fragment_overview_list);
+        mRecents = view.findViewById(R.id.fragment_overview_list);
 
-        try (SessionDatabase database = new SessionDatabase(getContext())) {
-            List<SessionDescription> descriptions = database.listSessions();
 
-            List<SessionDescription> newest = new ArrayList<>();
-            for (int i = 0; i < descriptions.size() && i < 5; i++) {
-                newest.add(descriptions.get(i));
-            }
-            Collections.reverse(newest);
+        return view;
+    }
 
-            SessionDescriptionAdapter adapter = new SessionDescriptionAdapter(getContext(), newest);
-            recents.setAdapter(adapter);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onResume() {
+        super.onResume();
+        updateRecents();
+    }
+
+
+
+    private ListView mRecents;
+
+
+    /*
+     * Sessions may have been added or removed while another Activity was shown
+     */
+    private void updateRecents() {
+        if (mRecents == null || getContext() == null) {
+            return;
         }
 
+        try (SessionDatabase database = SessionDatabase.acquire(getContext())) {
+            List<SessionSummary> newest = database.query(new SessionQuery()
+                    .orderBy(SessionQuery.Order.NEWEST_FIRST)
+                    .limit(MAX_PREVIEWS));
 
-        return view;
+            SessionDescriptionAdapter adapter = new SessionDescriptionAdapter(getContext(), newest);
+            mRecents.setAdapter(adapter);
+        }
     }
 
 
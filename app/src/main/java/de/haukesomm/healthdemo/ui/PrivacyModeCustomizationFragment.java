@@ -12,16 +12,20 @@
 package de.haukesomm.healthdemo.ui;
 
 import android.os.Bundle;
+import android.preference.Preference;
 import android.preference.PreferenceFragment;
 
 import de.haukesomm.healthdemo.R;
+import de.haukesomm.healthdemo.data.SessionDatabase;
+import de.haukesomm.healthdemo.data.StorageFormat;
 import de.haukesomm.healthdemo.privacy.PrivacyMode;
 
 /**
  * Created on 30.12.17
  * <p>
  * This Fragment provides a SettingsFragment used to customize the {@link PrivacyMode#USER_DEFINED}
- * privacy mode.
+ * privacy mode.<br>
+ * It also contains the storage settings, which apply to all privacy modes.
  *
  * @author Hauke Sommerfeld
  */
@@ -35,18 +39,35 @@ public class PrivacyModeCustomizationFragment extends PreferenceFragment {
     {
         super.onCreate(savedInstanceState);
         addPreferencesFromResource(R.xml.fragment_privacymode_custom);
+
+        findPreference(getString(R.string.pref_bool_privacy_storage_encrypted))
+                .setOnPreferenceChangeListener(new Preference.OnPreferenceChangeListener() {
+            @Override
+            public boolean onPreferenceChange(Preference preference, Object newValue) {
+                try (SessionDatabase database = SessionDatabase.acquire(getActivity())) {
+                    database.setStorageFormat((Boolean) newValue
+                            ? StorageFormat.ENCRYPTED : StorageFormat.ROWS);
+                }
+                return true;
+            }
+        });
     }
 
 
 
     /**
-     * This method enables or disables all Preferences of this PreferenceFragment
+     * This method enables or disables all Preferences of this PreferenceFragment except the
+     * storage settings
      *
      * @param enabled   true to enable all Preferences
      */
     public void setEnabled(boolean enabled) {
+        String storage = getString(R.string.pref_category_privacy_storage);
         for (int i = 0; i < getPreferenceScreen().getPreferenceCount(); i++) {
-            getPreferenceScreen().getPreference(i).setEnabled(enabled);
+            Preference preference = getPreferenceScreen().getPreference(i);
+            if (!storage.equals(preference.getKey())) {
+                preference.setEnabled(enabled);
+            }
         }
     }
 }
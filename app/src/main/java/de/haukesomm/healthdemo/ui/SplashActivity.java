@@ -14,20 +14,37 @@ package de.haukesomm.healthdemo.ui;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+import android.widget.ProgressBar;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.haukesomm.healthdemo.R;
+import de.haukesomm.healthdemo.data.PlaceIndexJobService;
+import de.haukesomm.healthdemo.data.RetentionJobService;
 import de.haukesomm.healthdemo.data.SessionDatabase;
 
 /**
  * Created on 03.12.17
  * <p>
- * This Activity shows a splash screen on each start of the application.
+ * This Activity shows a splash screen on each start of the application.<br>
+ * While it is visible the {@link SessionDatabase} is warmed up on a background thread. The
+ * MainActivity is launched as soon as the database is ready, but not before a minimum duration.
+ * The reference to the shared database is held until this Activity is destroyed, so it stays open
+ * while the MainActivity takes over.<br>
+ * If the database has been upgraded, the progress of the remaining data migrations is shown.
  *
  * @author Hauke Sommerfeld
  */
 public class SplashActivity extends AppCompatActivity {
 
+    /*
+     * Minimum time the splash screen is shown even if the database is ready earlier
+     */
     private static final long DURATION = 1500L;
 
 
@@ -35,11 +52,8 @@ public class SplashActivity extends AppCompatActivity {
     private final Runnable mLaunchRunnable = new Runnable() {
         @Override
         public void run() {
-            initSessionDatabase();
-
-            Intent mainActivity = new Intent(getApplicationContext(), MainActivity.class);
-            startActivity(mainActivity);
-            overridePendingTransition(android.R.anim.fade_in, R.anim.none);
+            mMinimumDurationElapsed = true;
+            launchIfReady();
         }
     };
 
@@ -66,21 +80,50 @@ public class SplashActivity extends AppCompatActivity {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
+        mMigrationProgress = findViewById(R.id.activity_splash_migrationProgress);
 
+        mCreateTime = SystemClock.elapsedRealtime();
+
+        initSessionDatabase();
+        RetentionJobService.schedule(this);
+        PlaceIndexJobService.schedule(this);
         startDelayedLaunch();
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onDestroy() {
+        cancelDelayedLaunch();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mDatabase != null) {
+                    mDatabase.close();
+                }
+            }
+        });
+        mExecutor.shutdown();
+        super.onDestroy();
+    }
+
+
 
     private boolean mFirstLaunch = true;
 
 
+    private boolean mResumed;
+
+
 
     /**
      * Cancels the delayed application launch on Activity pause.
      */
     @Override
     public void onPause() {
+        mResumed = false;
         cancelDelayedLaunch();
         super.onPause();
     }
@@ -91,18 +134,102 @@ public class SplashActivity extends AppCompatActivity {
      */
     @Override
     public void onResume() {
+        mResumed = true;
         if (mFirstLaunch) {
             mFirstLaunch = false;
-        } else {
+        } else if (!mMinimumDurationElapsed) {
             startDelayedLaunch();
+        } else {
+            launchIfReady();
         }
         super.onResume();
     }
 
 
 
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+
+    private volatile SessionDatabase mDatabase;
+
+
+    private ProgressBar mMigrationProgress;
+
+
+    private long mCreateTime;
+
+
+    private long mDatabaseReadyTime;
+
+
+    private boolean mDatabaseReady;
+
+
+    private boolean mMinimumDurationElapsed;
+
+
+    private boolean mLaunched;
+
+
+    /*
+     * Opens the database on a background thread right away. This creates or upgrades the schema,
+     * migrates its data and imports the mockup data if necessary, so none of that happens on the UI
+     * thread.
+     */
     private void initSessionDatabase() {
-        SessionDatabase database = new SessionDatabase(getApplicationContext());
-        database.close();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mDatabase = SessionDatabase.acquire(getApplicationContext(),
+                            mMigrationListener);
+                } catch (RuntimeException e) {
+                    Log.e("SplashActivity", "Unable to initialize database: " + e.getMessage());
+                }
+
+                mLaunchHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mDatabaseReady = true;
+                        mDatabaseReadyTime = SystemClock.elapsedRealtime();
+                        launchIfReady();
+                    }
+                });
+            }
+        });
+    }
+
+
+    private final SessionDatabase.MigrationListener mMigrationListener =
+            new SessionDatabase.MigrationListener() {
+        @Override
+        public void onMigrationProgress(final int version, final int done, final int total) {
+            mLaunchHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mMigrationProgress.setVisibility(View.VISIBLE);
+                    // Steps without units, e.g. a VACUUM, cannot report any progress
+                    mMigrationProgress.setIndeterminate(total == 0);
+                    mMigrationProgress.setMax(total);
+                    mMigrationProgress.setProgress(done);
+                }
+            });
+        }
+    };
+
+
+    private void launchIfReady() {
+        if (mLaunched || !mResumed || !mDatabaseReady || !mMinimumDurationElapsed) {
+            return;
+        }
+        mLaunched = true;
+
+        Intent mainActivity = new Intent(getApplicationContext(), MainActivity.class);
+        startActivity(mainActivity);
+        overridePendingTransition(android.R.anim.fade_in, R.anim.none);
+
+        long now = SystemClock.elapsedRealtime();
+        Log.i("SplashActivity", "Time to MainActivity: " + (now - mCreateTime)
+                + " ms (database warm-up: " + (mDatabaseReadyTime - mCreateTime) + " ms)");
     }
 }
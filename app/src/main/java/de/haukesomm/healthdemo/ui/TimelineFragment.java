@@ -24,8 +24,8 @@ import java.util.List;
 
 import de.haukesomm.healthdemo.R;
 import de.haukesomm.healthdemo.data.SessionDatabase;
-import de.haukesomm.healthdemo.data.SessionDescription;
 import de.haukesomm.healthdemo.data.SessionDescriptionAdapter;
+import de.haukesomm.healthdemo.data.SessionSummary;
 
 /**
  * Created on 27.11.17
@@ -51,16 +51,40 @@ public class TimelineFragment extends Fragment {
         }
 
 
-        ListView recents = view.findViewById(R.id.fragment_timeline_list);
-
-        try (SessionDatabase database = new SessionDatabase(getContext())) {
-            List<SessionDescription> descriptions = database.listSessions();
-            SessionDescriptionAdapter adapter = new SessionDescriptionAdapter(getContext(), descriptions);
-            recents.setAdapter(adapter);
-        }
+        mSessions = view.findViewById(R.id.fragment_timeline_list);
 
 
         return view;
     }
 
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onResume() {
+        super.onResume();
+        updateSessions();
+    }
+
+
+
+    private ListView mSessions;
+
+
+    /*
+     * Sessions may have been added or removed while another Activity was shown
+     */
+    private void updateSessions() {
+        if (mSessions == null || getContext() == null) {
+            return;
+        }
+
+        try (SessionDatabase database = SessionDatabase.acquire(getContext())) {
+            List<SessionSummary> summaries = database.listSummaries();
+            SessionDescriptionAdapter adapter = new SessionDescriptionAdapter(getContext(), summaries);
+            mSessions.setAdapter(adapter);
+        }
+    }
+
 }
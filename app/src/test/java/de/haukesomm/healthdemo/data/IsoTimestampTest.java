@@ -0,0 +1,185 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.OffsetDateTime;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Tests of the {@link IsoTimestamp} parser using <code>java.time</code> as reference.
+ * </p>
+ */
+public class IsoTimestampTest {
+
+    private IsoTimestamp mParser;
+
+
+    @Before
+    public void setUp() {
+        mParser = new IsoTimestamp();
+    }
+
+
+    @Test
+    public void parsesNegativeOffset() {
+        assertParsed("2018-12-07T06:12:32-08:00");
+        assertEquals(-480, mParser.getOffsetMinutes());
+    }
+
+    @Test
+    public void parsesPositiveOffset() {
+        assertParsed("2018-03-25T01:59:59+05:45");
+        assertEquals(345, mParser.getOffsetMinutes());
+    }
+
+    @Test
+    public void parsesUtc() {
+        assertParsed("1970-01-01T00:00:00Z");
+        assertEquals(0, mParser.getOffsetMinutes());
+    }
+
+    @Test
+    public void treatsMissingZoneAsUtc() {
+        assertEquals(OffsetDateTime.parse("2018-12-07T06:12:32Z").toInstant().toEpochMilli(),
+                mParser.parse("2018-12-07T06:12:32"));
+        assertEquals(0, mParser.getOffsetMinutes());
+    }
+
+    @Test
+    public void parsesFractionOfSecond() {
+        assertParsed("2018-12-07T06:12:32.5+01:00");
+        assertParsed("2018-12-07T06:12:32.123Z");
+        // Digits beyond milliseconds are ignored
+        assertEquals(OffsetDateTime.parse("2018-12-07T06:12:32.123Z").toInstant().toEpochMilli(),
+                mParser.parse("2018-12-07T06:12:32.123999Z"));
+    }
+
+    @Test
+    public void parsesDatesBeforeEpoch() {
+        assertParsed("1969-12-31T23:59:59Z");
+        assertParsed("1900-02-28T12:00:00+01:00");
+    }
+
+    @Test
+    public void parsesLeapDays() {
+        assertParsed("2016-02-29T10:00:00Z");
+        assertParsed("2000-02-29T10:00:00Z");
+    }
+
+    @Test
+    public void parsesLastDayOfMonth() {
+        assertParsed("2018-01-31T10:00:00Z");
+        assertParsed("2018-04-30T10:00:00Z");
+        assertParsed("2018-12-31T23:59:59Z");
+    }
+
+    @Test
+    public void keepsOffsetsApartWhenCached() {
+        assertParsed("2018-12-07T06:12:32-08:00");
+        assertParsed("2018-12-07T06:12:32+08:00");
+        assertEquals(480, mParser.getOffsetMinutes());
+        assertParsed("2018-12-08T06:12:32+08:00");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFebruary29InCommonYear() {
+        mParser.parse("2018-02-29T10:00:00Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFebruary29InCentury() {
+        mParser.parse("2100-02-29T10:00:00Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDay31InShortMonth() {
+        mParser.parse("2018-04-31T10:00:00Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDayZero() {
+        mParser.parse("2018-04-00T10:00:00Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMonth13() {
+        mParser.parse("2018-13-01T10:00:00Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsHour24() {
+        mParser.parse("2018-12-07T24:00:00Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOffsetOutOfRange() {
+        mParser.parse("2018-12-07T06:12:32+19:00");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOffsetWithoutColon() {
+        mParser.parse("2018-12-07T06:12:32+0800");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTrailingCharacters() {
+        mParser.parse("2018-12-07T06:12:32Zx");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingSeparator() {
+        mParser.parse("2018-12-07 06:12:32Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLetters() {
+        mParser.parse("2018-1a-07T06:12:32Z");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedTimestamp() {
+        mParser.parse("2018-12-07T06:12");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNull() {
+        mParser.parse(null);
+    }
+
+    @Test
+    public void formatsWhatItParses() {
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long millis = (random.nextLong() % 4_000_000_000_000L) / 1000L * 1000L;
+            int offset = (random.nextInt(57) - 24) * 15;
+
+            String text = IsoTimestamp.format(millis, offset);
+            assertEquals(text, millis, mParser.parse(text));
+            assertEquals(text, offset, mParser.getOffsetMinutes());
+        }
+    }
+
+
+    private void assertParsed(String text) {
+        assertEquals(text, OffsetDateTime.parse(text).toInstant().toEpochMilli(),
+                mParser.parse(text));
+        assertEquals(text, OffsetDateTime.parse(text).getOffset().getTotalSeconds() / 60,
+                mParser.getOffsetMinutes());
+    }
+}
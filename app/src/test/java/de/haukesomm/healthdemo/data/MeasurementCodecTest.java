@@ -0,0 +1,148 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Round-trip tests of the {@link MeasurementCodec}.
+ * </p>
+ */
+public class MeasurementCodecTest {
+
+    private static final double COORDINATE_PRECISION = 0.5e-7;
+
+
+    @Test
+    public void roundTripsRecordedSeries() {
+        MeasurementSeries series = new MeasurementSeries();
+        Random random = new Random(42);
+        long timestamp = 1_544_191_952_000L;
+        double latitude = 53.55;
+        double longitude = 9.99;
+        for (int i = 0; i < 1000; i++) {
+            timestamp += 1000 + random.nextInt(50);
+            latitude += random.nextGaussian() * 1e-4;
+            longitude += random.nextGaussian() * 1e-4;
+            series.add(timestamp, 60, latitude, longitude, 60 + random.nextInt(120));
+        }
+
+        assertSeriesEquals(series, 0, series.size(), roundTrip(series, 0, series.size()));
+    }
+
+    @Test
+    public void roundTripsExtremeValues() {
+        MeasurementSeries series = new MeasurementSeries();
+        series.add(0L, -720, -90d, -180d, 0);
+        series.add(Long.MAX_VALUE / 2, 840, 90d, 180d, Integer.MAX_VALUE);
+        series.add(-1L, 0, 0d, -0.0000001, Integer.MIN_VALUE);
+        series.add(4_102_444_800_000L, -1, 45.1234567, 179.9999999, -1);
+
+        assertSeriesEquals(series, 0, series.size(), roundTrip(series, 0, series.size()));
+    }
+
+    @Test
+    public void roundTripsEmptyRange() {
+        MeasurementSeries series = new MeasurementSeries();
+        series.add(1000L, 0, 1d, 2d, 3);
+
+        assertEquals(0, roundTrip(series, 1, 1).size());
+    }
+
+    @Test
+    public void encodesRangeOfSeries() {
+        MeasurementSeries series = createSeries(20);
+
+        assertSeriesEquals(series, 5, 15, roundTrip(series, 5, 15));
+    }
+
+    @Test
+    public void decodesTimeWindow() {
+        MeasurementSeries series = createSeries(20);
+        byte[] data = MeasurementCodec.encode(series, 0, series.size());
+
+        MeasurementSeries out = new MeasurementSeries();
+        int added = MeasurementCodec.decode(data, series.getTimestamp(3), series.getTimestamp(8),
+                Integer.MAX_VALUE, out);
+
+        assertEquals(5, added);
+        assertSeriesEquals(series, 3, 8, out);
+    }
+
+    @Test
+    public void decodesUpToLimit() {
+        MeasurementSeries series = createSeries(20);
+        byte[] data = MeasurementCodec.encode(series, 0, series.size());
+
+        MeasurementSeries out = new MeasurementSeries();
+        int added = MeasurementCodec.decode(data, Long.MIN_VALUE, Long.MAX_VALUE, 7, out);
+
+        assertEquals(7, added);
+        assertSeriesEquals(series, 0, 7, out);
+    }
+
+    @Test
+    public void appendsToSeries() {
+        MeasurementSeries series = createSeries(10);
+        MeasurementSeries out = new MeasurementSeries();
+        MeasurementCodec.decode(MeasurementCodec.encode(series, 0, 5), out);
+        MeasurementCodec.decode(MeasurementCodec.encode(series, 5, 10), out);
+
+        assertSeriesEquals(series, 0, 10, out);
+    }
+
+    @Test
+    public void storesOneHertzRecordingsCompactly() {
+        MeasurementSeries series = createSeries(1000);
+
+        // Two bytes for the timestamp and heartrate, one for the offset, three per coordinate
+        assertTrue(MeasurementCodec.encode(series, 0, series.size()).length <= 1000 * 11);
+    }
+
+
+    private static MeasurementSeries createSeries(int size) {
+        MeasurementSeries series = new MeasurementSeries();
+        for (int i = 0; i < size; i++) {
+            series.add(1_500_000_000_000L + i * 1000L, 120, 53.5 + i * 1e-5, 9.9 - i * 1e-5,
+                    100 + i % 7);
+        }
+        return series;
+    }
+
+    private static MeasurementSeries roundTrip(MeasurementSeries series, int from, int to) {
+        MeasurementSeries out = new MeasurementSeries();
+        MeasurementCodec.decode(MeasurementCodec.encode(series, from, to), out);
+        return out;
+    }
+
+    private static void assertSeriesEquals(MeasurementSeries expected, int from, int to,
+                                           MeasurementSeries actual) {
+        assertEquals(to - from, actual.size());
+        for (int i = from; i < to; i++) {
+            int j = i - from;
+            assertEquals("timestamp " + i, expected.getTimestamp(i), actual.getTimestamp(j));
+            assertEquals("offset " + i, expected.getUtcOffset(i), actual.getUtcOffset(j));
+            assertEquals("latitude " + i, expected.getLatitude(i), actual.getLatitude(j),
+                    COORDINATE_PRECISION);
+            assertEquals("longitude " + i, expected.getLongitude(i), actual.getLongitude(j),
+                    COORDINATE_PRECISION);
+            assertEquals("heartrate " + i, expected.getHeartrate(i), actual.getHeartrate(j));
+        }
+    }
+}
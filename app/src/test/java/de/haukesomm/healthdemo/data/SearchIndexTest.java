@@ -0,0 +1,110 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Tests of the query conversion and the BM25 ranking of the {@link SearchIndex}.
+ * </p>
+ */
+public class SearchIndexTest {
+
+    private static final int COLUMNS = 3;
+
+
+    @Test
+    public void matchesEveryWordAsPrefix() {
+        assertEquals("morning* run*", SearchIndex.toQuery("Morning run"));
+    }
+
+    @Test
+    public void treatsQuerySyntaxAsSeparator() {
+        assertEquals("a* b* c*", SearchIndex.toQuery("a\"b* -c"));
+        // Operators are only recognized in upper case
+        assertEquals("near* 2* or*", SearchIndex.toQuery("NEAR/2 (OR)"));
+    }
+
+    @Test
+    public void keepsNonAsciiCharacters() {
+        // Only ASCII is folded, just like the tokenizer does
+        assertEquals("stra\u00dfe* \u00dcber*", SearchIndex.toQuery("Stra\u00dfe \u00dcber"));
+    }
+
+    @Test
+    public void returnsNullWithoutWords() {
+        assertNull(SearchIndex.toQuery(""));
+        assertNull(SearchIndex.toQuery(" *-\"() "));
+    }
+
+    @Test
+    public void scoresNothingWithoutHits() {
+        assertEquals(0.0, SearchIndex.score(matchinfo(100, new int[] { 0, 0, 0 }, 10)), 0.0);
+    }
+
+    @Test
+    public void prefersMoreHits() {
+        assertTrue(SearchIndex.score(matchinfo(100, new int[] { 2, 0, 0 }, 10))
+                > SearchIndex.score(matchinfo(100, new int[] { 1, 0, 0 }, 10)));
+    }
+
+    @Test
+    public void prefersRareTerms() {
+        assertTrue(SearchIndex.score(matchinfo(100, new int[] { 1, 0, 0 }, 5))
+                > SearchIndex.score(matchinfo(100, new int[] { 1, 0, 0 }, 50)));
+    }
+
+    @Test
+    public void weightsDescriptionAbovePlacesAboveType() {
+        double description = SearchIndex.score(matchinfo(100, new int[] { 1, 0, 0 }, 10));
+        double type = SearchIndex.score(matchinfo(100, new int[] { 0, 1, 0 }, 10));
+        double places = SearchIndex.score(matchinfo(100, new int[] { 0, 0, 1 }, 10));
+
+        assertTrue(description > places);
+        assertTrue(places > type);
+    }
+
+    @Test
+    public void keepsTermsInMostRowsPositive() {
+        assertTrue(SearchIndex.score(matchinfo(100, new int[] { 1, 0, 0 }, 100)) > 0);
+    }
+
+
+    /*
+     * Builds a 'pcnalx' matchinfo blob for a single phrase with rows of four tokens per column
+     */
+    private static byte[] matchinfo(int rows, int[] hits, int rowsWithHits) {
+        ByteBuffer info = ByteBuffer.allocate(4 * (3 + 2 * COLUMNS + 3 * COLUMNS))
+                .order(ByteOrder.nativeOrder());
+        info.putInt(1).putInt(COLUMNS).putInt(rows);
+        for (int column = 0; column < COLUMNS; column++) {
+            info.putInt(4);
+        }
+        for (int column = 0; column < COLUMNS; column++) {
+            info.putInt(4);
+        }
+        for (int column = 0; column < COLUMNS; column++) {
+            info.putInt(hits[column]).putInt(hits[column] * rowsWithHits)
+                    .putInt(hits[column] > 0 ? rowsWithHits : 0);
+        }
+        return info.array();
+    }
+}
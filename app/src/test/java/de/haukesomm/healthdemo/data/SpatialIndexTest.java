@@ -0,0 +1,254 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Tests of the {@link SpatialIndex} against a linear scan over the same segments.
+ * </p>
+ */
+public class SpatialIndexTest {
+
+    // Each segment: session, sequence, min/max latitude, min/max longitude
+    private final List<double[]> mSegments = new ArrayList<>();
+
+
+    @Test
+    public void findsNothingInEmptyIndex() {
+        assertEquals(0, build().query(-90d, -180d, 90d, 180d).size());
+    }
+
+    @Test
+    public void findsSingleSegment() {
+        add(1, 0, 53.5, 53.6, 9.9, 10.0);
+
+        List<AreaMatch> matches = build().query(53.55, 9.95, 53.56, 9.96);
+        assertEquals(1, matches.size());
+        assertMatch(matches.get(0), 1, 0, 0);
+        assertEquals(0, build().query(53.7, 9.95, 53.8, 9.96).size());
+    }
+
+    @Test
+    public void includesTouchingBorders() {
+        add(1, 0, 10d, 20d, 30d, 40d);
+
+        assertEquals(1, build().query(20d, 40d, 25d, 45d).size());
+        assertEquals(1, build().query(5d, 25d, 10d, 30d).size());
+        assertEquals(0, build().query(20.000001, 40d, 25d, 45d).size());
+    }
+
+    @Test
+    public void mergesConsecutiveSegments() {
+        for (int sequence = 0; sequence < 5; sequence++) {
+            add(7, sequence, 0d, 1d, sequence, sequence + 1d);
+        }
+
+        // Hits segments 1 and 2
+        List<AreaMatch> matches = build().query(0d, 1.5, 1d, 2.5);
+        assertEquals(1, matches.size());
+        assertMatch(matches.get(0), 7, 1, 2);
+    }
+
+    @Test
+    public void splitsRangesAtGaps() {
+        for (int sequence = 0; sequence < 5; sequence++) {
+            add(7, sequence, 0d, 1d, sequence % 2 == 0 ? 0d : 10d, sequence % 2 == 0 ? 1d : 11d);
+        }
+
+        List<AreaMatch> matches = build().query(0d, 0d, 1d, 1d);
+        assertEquals(3, matches.size());
+        assertMatch(matches.get(0), 7, 0, 0);
+        assertMatch(matches.get(1), 7, 2, 2);
+        assertMatch(matches.get(2), 7, 4, 4);
+    }
+
+    @Test
+    public void ordersMatchesBySession() {
+        add(3, 0, 0d, 1d, 0d, 1d);
+        add(1, 0, 0d, 1d, 0d, 1d);
+        add(2, 0, 0d, 1d, 0d, 1d);
+
+        List<AreaMatch> matches = build().query(0d, 0d, 1d, 1d);
+        assertEquals(3, matches.size());
+        assertEquals(1, matches.get(0).sessionId);
+        assertEquals(2, matches.get(1).sessionId);
+        assertEquals(3, matches.get(2).sessionId);
+    }
+
+    @Test
+    public void queriesAcrossAntimeridian() {
+        add(1, 0, 0d, 1d, 179d, 179.5);
+        add(2, 0, 0d, 1d, -179.5, -179d);
+        add(3, 0, 0d, 1d, 0d, 1d);
+
+        List<AreaMatch> matches = build().query(0d, 178d, 1d, -178d);
+        assertEquals(2, matches.size());
+        assertEquals(1, matches.get(0).sessionId);
+        assertEquals(2, matches.get(1).sessionId);
+    }
+
+    @Test
+    public void matchesLinearScanAtNodeBoundaries() {
+        // Exactly full leaves, one more, and several levels
+        for (int size : new int[] { 15, 16, 17, 256, 257, 4097 }) {
+            mSegments.clear();
+            addRandomSessions(new Random(size), size);
+            assertMatchesLinearScan(new Random(-size), 200);
+        }
+    }
+
+    @Test
+    public void matchesLinearScanAcrossAntimeridian() {
+        Random random = new Random(7);
+        addRandomSessions(random, 2000);
+        SpatialIndex index = build();
+
+        for (int i = 0; i < 200; i++) {
+            double minLatitude = random.nextDouble() * 170 - 85;
+            double maxLatitude = minLatitude + random.nextDouble() * 5;
+            double minLongitude = 180 - random.nextDouble() * 5;
+            double maxLongitude = -180 + random.nextDouble() * 5;
+
+            assertMatchesEqual(merge(minLatitude, minLongitude, maxLatitude, 180d,
+                    minLatitude, -180d, maxLatitude, maxLongitude),
+                    index.query(minLatitude, minLongitude, maxLatitude, maxLongitude));
+        }
+    }
+
+
+    private void add(int session, int sequence, double minLatitude, double maxLatitude,
+                     double minLongitude, double maxLongitude) {
+        mSegments.add(new double[] {
+                session, sequence, minLatitude, maxLatitude, minLongitude, maxLongitude });
+    }
+
+    /*
+     * Random walks, one segment per step, spread over the whole globe
+     */
+    private void addRandomSessions(Random random, int segments) {
+        int session = 0;
+        int sequence = 0;
+        double latitude = 0;
+        double longitude = 0;
+        for (int i = 0; i < segments; i++) {
+            if (i % 50 == 0) {
+                session++;
+                sequence = 0;
+                latitude = random.nextDouble() * 170 - 85;
+                longitude = random.nextDouble() * 360 - 180;
+            }
+            double nextLatitude = Math.max(-90, Math.min(90, latitude + random.nextGaussian()));
+            double nextLongitude = Math.max(-180, Math.min(180,
+                    longitude + random.nextGaussian()));
+            add(session, sequence++, Math.min(latitude, nextLatitude),
+                    Math.max(latitude, nextLatitude), Math.min(longitude, nextLongitude),
+                    Math.max(longitude, nextLongitude));
+            latitude = nextLatitude;
+            longitude = nextLongitude;
+        }
+    }
+
+    private void assertMatchesLinearScan(Random random, int queries) {
+        SpatialIndex index = build();
+        assertEquals(mSegments.size(), index.size());
+
+        for (int i = 0; i < queries; i++) {
+            double minLatitude = random.nextDouble() * 180 - 90;
+            double maxLatitude = Math.min(90, minLatitude + random.nextDouble() * 30);
+            double minLongitude = random.nextDouble() * 360 - 180;
+            double maxLongitude = Math.min(180, minLongitude + random.nextDouble() * 60);
+
+            assertMatchesEqual(merge(minLatitude, minLongitude, maxLatitude, maxLongitude),
+                    index.query(minLatitude, minLongitude, maxLatitude, maxLongitude));
+        }
+    }
+
+    private SpatialIndex build() {
+        SpatialIndex.Builder builder = new SpatialIndex.Builder(0);
+        for (double[] segment : mSegments) {
+            // The first and last timestamp are derived from the sequence
+            builder.add((int) segment[0], (int) segment[1], (long) segment[1] * 1000L,
+                    (long) segment[1] * 1000L + 999L, segment[2], segment[3], segment[4],
+                    segment[5]);
+        }
+        return builder.build();
+    }
+
+    /*
+     * Linear scan over one or more areas (minimum latitude, minimum longitude, maximum latitude,
+     * maximum longitude each), merged the way the index does it.
+     */
+    private List<AreaMatch> merge(double... areas) {
+        List<AreaMatch> matches = new ArrayList<>();
+
+        List<double[]> sorted = new ArrayList<>(mSegments);
+        Collections.sort(sorted, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] a, double[] b) {
+                int bySession = Double.compare(a[0], b[0]);
+                return bySession != 0 ? bySession : Double.compare(a[1], b[1]);
+            }
+        });
+
+        double[] last = null;
+        long first = 0L;
+        for (double[] segment : sorted) {
+            if (!hits(segment, areas)) {
+                continue;
+            }
+            if (last == null || last[0] != segment[0] || last[1] + 1 != segment[1]) {
+                if (last != null) {
+                    matches.add(new AreaMatch((int) last[0], first, (long) last[1] * 1000L + 999L));
+                }
+                first = (long) segment[1] * 1000L;
+            }
+            last = segment;
+        }
+        if (last != null) {
+            matches.add(new AreaMatch((int) last[0], first, (long) last[1] * 1000L + 999L));
+        }
+
+        return matches;
+    }
+
+    private static boolean hits(double[] segment, double[] areas) {
+        for (int i = 0; i < areas.length; i += 4) {
+            if (segment[2] <= areas[i + 2] && segment[3] >= areas[i]
+                    && segment[4] <= areas[i + 3] && segment[5] >= areas[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertMatch(AreaMatch match, int session, int firstSequence,
+                                    int lastSequence) {
+        assertEquals(session, match.sessionId);
+        assertEquals(firstSequence * 1000L, match.fromTimestamp);
+        assertEquals(lastSequence * 1000L + 999L, match.toTimestamp);
+    }
+
+    private static void assertMatchesEqual(List<AreaMatch> expected, List<AreaMatch> actual) {
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.haukesomm.healthdemo.data.MeasurementVisitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Tests of the {@link PrivacyPipeline} in {@link PrivacyMode#OBFUSCATION}.
+ * </p>
+ */
+public class PrivacyPipelineTest {
+
+    private static final long START = 1_500_000_000_000L;
+
+    /*
+     * One measurement per second for two hours, moving about 3 meters per second
+     */
+    private static final int MEASUREMENTS = 7200;
+
+    private static final double STEP = 3.0 / ObfuscationEngine.METERS_PER_DEGREE;
+
+
+    @Test
+    public void sharesObfuscatedLocations() {
+        List<double[]> output = share(7L);
+
+        assertFalse(output.isEmpty());
+        assertTrue(output.size() <= 5);
+
+        double previous = Double.NEGATIVE_INFINITY;
+        for (double[] measurement : output) {
+            long timestamp = (long) measurement[0];
+            int index = (int) ((timestamp - START) / 1000L);
+
+            // Chronological, one per interval, time and offset kept, no heartrate
+            assertTrue(timestamp > previous);
+            previous = timestamp;
+            assertEquals(60.0, measurement[1], 0.0);
+            assertEquals(0.0, measurement[4], 0.0);
+
+            // Not the raw location, but a nearby one
+            assertFalse(measurement[2] == 53.55 + index * STEP);
+            assertEquals(53.55 + index * STEP, measurement[2], 0.05);
+            assertEquals(9.99, measurement[3], 0.05);
+        }
+    }
+
+    @Test
+    public void hidesStartAndEnd() {
+        for (double[] measurement : share(7L)) {
+            long timestamp = (long) measurement[0];
+            assertTrue(timestamp >= START + 60_000L);
+            assertTrue(timestamp < START + (MEASUREMENTS - 60) * 1000L);
+        }
+    }
+
+    @Test
+    public void isDeterministicPerSeed() {
+        List<double[]> first = share(7L);
+        List<double[]> second = share(7L);
+        List<double[]> other = share(8L);
+
+        assertEquals(first.size(), second.size());
+        boolean differs = false;
+        for (int i = 0; i < first.size(); i++) {
+            for (int c = 0; c < 5; c++) {
+                assertEquals(first.get(i)[c], second.get(i)[c], 0.0);
+            }
+            if (i < other.size() && first.get(i)[2] != other.get(i)[2]) {
+                differs = true;
+            }
+        }
+        assertTrue(differs);
+    }
+
+
+    private static List<double[]> share(long seed) {
+        final List<double[]> output = new ArrayList<>();
+        MeasurementVisitor pipeline = PrivacyPipeline.create(PrivacyMode.OBFUSCATION, 1, false,
+                false, false, seed, new MeasurementVisitor() {
+                    @Override
+                    public void visit(long timestamp, int utcOffset, double latitude,
+                                      double longitude, int heartrate) {
+                        output.add(new double[] {
+                                timestamp, utcOffset, latitude, longitude, heartrate
+                        });
+                    }
+                });
+
+        for (int i = 0; i < MEASUREMENTS; i++) {
+            pipeline.visit(START + i * 1000L, 60, 53.55 + i * STEP, 9.99, 120);
+        }
+        assertTrue(output.isEmpty());
+
+        PrivacyPipeline.finish(pipeline);
+        return output;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of the "eHealth-Demo" project, formerly known as
+ * "Telematics App Mockup".
+ * Copyright 2017-2018, Hauke Sommerfeld and Sarah Schulz-Mukisa
+ *
+ * Licensed under the MIT license.
+ *
+ * For more information and/or a copy of the license visit the following
+ * GitHub repository: https://github.com/haukesomm/eHealth-Demo
+ */
+
+package de.haukesomm.healthdemo.privacy;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 18.10.26
+ * <p>
+ * Tests of the Laplace sampler of {@link PrivateStatistics}.
+ * </p>
+ */
+public class PrivateStatisticsTest {
+
+    private static final int SAMPLES = 200_000;
+
+
+    @Test
+    public void samplesLaplaceDistribution() {
+        Random random = new Random(42);
+        double scale = 4.0;
+
+        double sum = 0;
+        double absoluteSum = 0;
+        double squareSum = 0;
+        int beyondScale = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            double x = PrivateStatistics.laplace(scale, random);
+            assertTrue(!Double.isNaN(x) && !Double.isInfinite(x));
+
+            sum += x;
+            absoluteSum += Math.abs(x);
+            squareSum += x * x;
+            if (Math.abs(x) > scale) {
+                beyondScale++;
+            }
+        }
+
+        // Mean 0, mean absolute deviation b, variance 2 b^2, P(|x| > b) = 1 / e
+        assertEquals(0.0, sum / SAMPLES, 0.05);
+        assertEquals(scale, absoluteSum / SAMPLES, 0.05);
+        assertEquals(2 * scale * scale, squareSum / SAMPLES, 0.5);
+        assertEquals(Math.exp(-1), (double) beyondScale / SAMPLES, 0.005);
+    }
+
+    @Test
+    public void scalesWithParameter() {
+        Random random = new Random(7);
+
+        double absoluteSum = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            absoluteSum += Math.abs(PrivateStatistics.laplace(0.25, random));
+        }
+
+        assertEquals(0.25, absoluteSum / SAMPLES, 0.005);
+    }
+}